@@ -0,0 +1,115 @@
+package info.ejava.examples.app.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.sun.net.httpserver.HttpServer;
+
+import info.ejava.examples.app.common.web.RestTemplateLoggingFilter;
+
+/*
+ * Client throughput of a RestTemplate GET with and without exchange
+ * logging, against an in-process JDK HttpServer that answers every
+ * request with the same body.
+ *
+ * - none: no interceptor
+ * - off: RestTemplateLoggingFilter with DEBUG off
+ * - on: RestTemplateLoggingFilter logging every exchange, with the
+ *   formatted messages discarded rather than written to an appender
+ *
+ * The client and server share the host, so compare the modes with each
+ * other rather than reading the absolute figures as the cost of a request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+// client, server and the compiler share the CPUs, so warm up for longer
+@Warmup(iterations=5, time=3)
+@Measurement(iterations=5, time=2)
+// without TCP_NODELAY the server's response waits on the client's delayed ACK
+@Fork(value=1, jvmArgsAppend={"-Xms1g", "-Xmx1g", "-Dsun.net.httpserver.nodelay=true"})
+public class ClientLoggingBenchmark {
+
+    @Param({"none", "off", "on"})
+    private String logging;
+
+    @Param({"16", "16384"})
+    private int responseSize;
+
+    private HttpServer server;
+    private RestTemplate restTemplate;
+    private URI uri;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] body = new byte[responseSize];
+        Arrays.fill(body, (byte)'a');
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/api/gestures/hello");
+
+        restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+        restTemplate.setInterceptors(interceptors());
+    }
+
+    private List<ClientHttpRequestInterceptor> interceptors() {
+        switch (logging) {
+            case "none": return List.of();
+            case "off": return List.of(new RestTemplateLoggingFilter() {
+                @Override
+                protected boolean isLogging() {
+                    return false;
+                }
+            });
+            case "on": return List.of(new RestTemplateLoggingFilter() {
+                @Override
+                protected boolean isLogging() {
+                    return true;
+                }
+                @Override
+                protected void write(String message) {
+                }
+            });
+            default: throw new IllegalArgumentException("unknown logging: " + logging);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public String get() {
+        return restTemplate.getForObject(uri, String.class);
+    }
+}
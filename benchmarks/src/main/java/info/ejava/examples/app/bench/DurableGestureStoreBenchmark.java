@@ -0,0 +1,144 @@
+package info.ejava.examples.app.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import info.ejava.examples.app.svc.DurableGestureStore;
+
+/*
+ * Measures the durable store: how long it takes after startup to answer
+ * the first lookup of a keyCount dataset -- recovered from a snapshot
+ * plus a short log -- and how many durable writes per second it sustains.
+ * Run the write benchmarks with -t N to see group commit amortize each
+ * force across N concurrent writers. Results depend heavily on the
+ * storage device; -Dbench.dir selects where the data is written.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value=1, jvmArgsAppend={"-Xms8g", "-Xmx8g"})
+public class DurableGestureStoreBenchmark {
+
+    private static final long SNAPSHOT_LOG_BYTES = 64L << 20;
+    // small enough that the dataset is mostly in a snapshot when loaded
+    private static final long DATASET_LOG_BYTES = 4L << 20;
+    private static final int BATCH = 10_000;
+
+    private static Path newDir() throws IOException {
+        Path parent = Path.of(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir")));
+        return Files.createTempDirectory(parent, "gestures-bench");
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Dataset {
+        @Param({"1000000", "10000000"})
+        private int keyCount;
+
+        @Param({"16"})
+        private int valueSize;
+
+        private Path dir;
+        private GestureData data;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = newDir();
+            data = new GestureData(keyCount, valueSize);
+            try (DurableGestureStore store = new DurableGestureStore(dir, DATASET_LOG_BYTES, 4096, keyCount)) {
+                Map<String, String> batch = new LinkedHashMap<>();
+                for (int i=0; i<keyCount; i++) {
+                    batch.put(data.key(i), data.randomValue());
+                    if (batch.size() == BATCH || i == keyCount - 1) {
+                        store.putAll(batch, (gestureType, previous) -> {});
+                        batch.clear();
+                    }
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(dir);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class OpenStore {
+        @Param({"16"})
+        private int valueSize;
+
+        private Path dir;
+        private GestureData data;
+        private DurableGestureStore store;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = newDir();
+            data = new GestureData(100_000, valueSize);
+            store = new DurableGestureStore(dir, SNAPSHOT_LOG_BYTES, 4096, 100_000);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            store.close();
+            delete(dir);
+        }
+    }
+
+    @Benchmark
+    @Warmup(iterations=1)
+    @Measurement(iterations=3)
+    public void recover(Dataset dataset, Blackhole blackhole) throws IOException {
+        try (DurableGestureStore store = new DurableGestureStore(dataset.dir, SNAPSHOT_LOG_BYTES, 4096, dataset.keyCount)) {
+            blackhole.consume(store.get(dataset.data.randomKey()));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations=2, time=5)
+    @Measurement(iterations=3, time=10)
+    public String upsertGesture(OpenStore open) {
+        return open.store.put(open.data.randomKey(), open.data.randomValue());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations=2, time=5)
+    @Measurement(iterations=3, time=10)
+    public void upsertGestures(OpenStore open, Blackhole blackhole) {
+        Map<String, String> batch = new LinkedHashMap<>();
+        for (int i=0; i<100; i++) {
+            batch.put(open.data.randomKey(), open.data.randomValue());
+        }
+        open.store.putAll(batch, (gestureType, previous) -> blackhole.consume(previous));
+    }
+}
@@ -0,0 +1,83 @@
+package info.ejava.examples.app.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import info.ejava.examples.app.svc.ConcurrentGestureStore;
+import info.ejava.examples.app.svc.GestureDictionary;
+import info.ejava.examples.app.svc.GestureStore;
+import info.ejava.examples.app.svc.OffHeapGestureStore;
+import info.ejava.examples.app.svc.ShardedGestureStore;
+import info.ejava.examples.app.svc.SynchronizedGestureStore;
+
+/*
+ * Pre-built keys and values shared by the benchmarks so that the
+ * measured operations do not include the cost of generating their inputs.
+ */
+public class GestureData {
+
+    private static final int DISTINCT_VALUES = 1024;
+
+    private final String[] keys;
+    private final String[] values;
+
+    public GestureData(int keyCount, int valueSize) {
+        keys = new String[keyCount];
+        for (int i=0; i<keyCount; i++) {
+            keys[i] = "gesture-" + i;
+        }
+        values = new String[DISTINCT_VALUES];
+        for (int i=0; i<DISTINCT_VALUES; i++) {
+            char[] value = new char[valueSize];
+            Arrays.fill(value, (char)('a' + i % 26));
+            // ends with its index where it fits, so the values are distinct
+            String index = Integer.toString(i);
+            if (index.length() < valueSize) {
+                index.getChars(0, index.length(), value, valueSize - index.length());
+            }
+            values[i] = new String(value);
+        }
+    }
+
+    public static GestureStore newStore(String store, int keyCount) {
+        switch (store) {
+            case "concurrent": return new ConcurrentGestureStore(keyCount * 4 / 3 + 1);
+            case "interned": return new ConcurrentGestureStore(keyCount * 4 / 3 + 1, new GestureDictionary());
+            case "synchronized": return new SynchronizedGestureStore();
+            case "sharded": return new ShardedGestureStore(Runtime.getRuntime().availableProcessors(), keyCount);
+            case "offheap": return new OffHeapGestureStore(64, 1 << 20, keyCount);
+            default: throw new IllegalArgumentException("unknown store: " + store);
+        }
+    }
+
+    public GestureStore populate(GestureStore store) {
+        for (int i=0; i<keys.length; i++) {
+            store.put(keys[i], values[i % values.length]);
+        }
+        return store;
+    }
+
+    public String key(int index) {
+        return keys[index];
+    }
+
+    public String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    public String randomValue() {
+        return values[ThreadLocalRandom.current().nextInt(values.length)];
+    }
+
+    /*
+     * A value drawn log-uniformly, which is near a Zipf distribution: the
+     * first value is drawn about as often as the last half of them.
+     */
+    public String skewedValue() {
+        return values[(int)Math.pow(values.length, ThreadLocalRandom.current().nextDouble()) - 1];
+    }
+
+    public boolean isRead(int readPercent) {
+        return ThreadLocalRandom.current().nextInt(100) < readPercent;
+    }
+}
@@ -0,0 +1,150 @@
+package info.ejava.examples.app.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import info.ejava.examples.app.api.GestureBinary;
+import info.ejava.examples.app.controllers.GestureBinaryHttpMessageConverter;
+import info.ejava.examples.app.controllers.GestureBodyHttpMessageConverter;
+import info.ejava.examples.app.svc.GestureService.GestureBody;
+
+/*
+ * Measures the CPU to write a response body, and prints the bytes it puts
+ * on the wire, for each encoding and compression.
+ *
+ * - allGestures: a getAllGesture body of gestureCount gestures of a few
+ *   words each, as JSON or application/x-gestures, uncompressed, gzipped
+ *   as Tomcat does (default level), or zstd at its default level 3.
+ * - singleGesture: a getGestureBody body as text/plain or
+ *   application/x-gestures. It is below the compression threshold.
+ *
+ * The bodies are written through the converters the controllers use, into
+ * a reused buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend={"-Xms1g", "-Xmx1g"})
+public class GestureEncodingBenchmark {
+
+    private static final Type STRING_LIST = new ParameterizedTypeReference<List<String>>() {}.getType();
+
+    @Param({"10000"})
+    private int gestureCount;
+
+    @Param({"json", "binary"})
+    private String encoding;
+
+    @Param({"identity", "gzip", "zstd"})
+    private String compression;
+
+    private List<String> gestures;
+    private GestureBody body;
+    private final MappingJackson2HttpMessageConverter json = new MappingJackson2HttpMessageConverter();
+    private final GestureBinaryHttpMessageConverter binary = new GestureBinaryHttpMessageConverter();
+    private final GestureBodyHttpMessageConverter text = new GestureBodyHttpMessageConverter();
+    private final Response response = new Response();
+
+    private static class Response implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream wire = new ByteArrayOutputStream(1 << 20);
+        private OutputStream body;
+
+        private Response reset(String compression) throws IOException {
+            headers.clear();
+            wire.reset();
+            switch (compression) {
+                case "gzip": body = new GZIPOutputStream(wire, 8192); break;
+                case "zstd": body = new ZstdOutputStream(wire); break;
+                default: body = wire;
+            }
+            return this;
+        }
+
+        private int finish() throws IOException {
+            body.close();
+            return wire.size();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        String[] words = new String[256];
+        for (int i=0; i<words.length; i++) {
+            char[] word = new char[3 + random.nextInt(6)];
+            for (int c=0; c<word.length; c++) {
+                word[c] = (char)('a' + random.nextInt(26));
+            }
+            words[i] = new String(word);
+        }
+        gestures = new ArrayList<>(gestureCount);
+        for (int i=0; i<gestureCount; i++) {
+            gestures.add(words[random.nextInt(256)] + " " + words[random.nextInt(256)] + " " + words[random.nextInt(256)]);
+        }
+        body = new GestureBody(gestures.get(0).getBytes(StandardCharsets.UTF_8), "jim".getBytes(StandardCharsets.UTF_8), 1);
+        System.out.printf("%n%s/%s: allGestures %d bytes, singleGesture %d bytes%n",
+                encoding, compression, allGestures(), singleGesture());
+    }
+
+    @Benchmark
+    public int allGestures() throws IOException {
+        response.reset(compression);
+        if (encoding.equals("json")) {
+            json.write(gestures, STRING_LIST, MediaType.APPLICATION_JSON, response);
+        } else {
+            binary.write(gestures, STRING_LIST, GestureBinary.GESTURES, response);
+        }
+        return response.finish();
+    }
+
+    @Benchmark
+    public int singleGesture() throws IOException {
+        response.reset("identity");
+        if (encoding.equals("json")) {
+            text.write(body, MediaType.TEXT_PLAIN, response);
+        } else {
+            binary.write(body, GestureBody.class, GestureBinary.GESTURES, response);
+        }
+        return response.finish();
+    }
+}
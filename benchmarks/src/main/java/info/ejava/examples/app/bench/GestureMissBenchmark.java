@@ -0,0 +1,92 @@
+package info.ejava.examples.app.bench;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import info.ejava.examples.app.svc.ClientErrorException.NotFoundException;
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+
+/*
+ * Measures the ways a lookup of an unknown gestureType can be reported,
+ * against an empty store so that every lookup misses.
+ *
+ * - eagerException: what each miss cost before -- a NotFoundException
+ *   formatted when created and carrying a stack trace depth frames deep,
+ *   standing in for the controller and container frames above the service.
+ * - stacklessException: getGestureBody as it now throws.
+ * - stacklessExceptionMessage: as above, with the message formatted the
+ *   way ExceptionAdvice asks for it.
+ * - optional: findGestureBody, as the controllers now call it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend={"-Xms1g", "-Xmx1g"})
+public class GestureMissBenchmark {
+
+    @Param({"10", "100"})
+    private int depth;
+
+    private GestureData data;
+    private GestureService gestures;
+
+    @Setup
+    public void setUp() {
+        data = new GestureData(1000, 16);
+        gestures = new GestureServiceImpl(GestureData.newStore("concurrent", 1000));
+    }
+
+    private NotFoundException eager(int frames, String gestureType) {
+        return frames == 0 ?
+                new NotFoundException("gesture type [%s] not found", gestureType) :
+                eager(frames - 1, gestureType);
+    }
+
+    private Object stackless(int frames, String gestureType) {
+        if (frames > 0) {
+            return stackless(frames - 1, gestureType);
+        }
+        try {
+            return gestures.getGestureBody(gestureType, null);
+        } catch (NotFoundException ex) {
+            return ex;
+        }
+    }
+
+    @Benchmark
+    public String eagerException() {
+        return eager(depth, data.randomKey()).getMessage();
+    }
+
+    @Benchmark
+    public Object stacklessException() {
+        return stackless(depth, data.randomKey());
+    }
+
+    @Benchmark
+    public String stacklessExceptionMessage() {
+        return ((NotFoundException)stackless(depth, data.randomKey())).getMessage();
+    }
+
+    @Benchmark
+    public void optional(Blackhole blackhole) {
+        Optional<GestureService.GestureBody> body = gestures.findGestureBody(data.randomKey(), null);
+        blackhole.consume(body.isPresent());
+    }
+}
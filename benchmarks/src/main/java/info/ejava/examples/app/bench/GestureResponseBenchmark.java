@@ -0,0 +1,103 @@
+package info.ejava.examples.app.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.StringHttpMessageConverter;
+
+import info.ejava.examples.app.controllers.GestureBodyHttpMessageConverter;
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+
+/*
+ * Compares producing a getGesture response body as a String -- built by
+ * the service, then encoded by StringHttpMessageConverter -- with writing
+ * the stored bytes and target through GestureBodyHttpMessageConverter.
+ * Both write into a reused buffer, so gc.alloc.rate.norm is the
+ * allocation per response of the lookup and body alone, without the
+ * rest of the web tier.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend={"-Xms2g", "-Xmx2g"})
+public class GestureResponseBenchmark {
+
+    @Param({"16", "1024"})
+    private int valueSize;
+
+    @Param({"concurrent", "offheap"})
+    private String store;
+
+    @Param({"", "jim"})
+    private String target;
+
+    private GestureData data;
+    private GestureService gestures;
+    private final StringHttpMessageConverter strings = new StringHttpMessageConverter();
+    private final GestureBodyHttpMessageConverter bodies = new GestureBodyHttpMessageConverter();
+    private final Response response = new Response();
+
+    private static class Response implements HttpOutputMessage {
+        private final HttpHeaders headers = new HttpHeaders();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+
+        private Response reset() {
+            headers.clear();
+            body.reset();
+            return this;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public OutputStream getBody() {
+            return body;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        data = new GestureData(10_000, valueSize);
+        gestures = new GestureServiceImpl(data.populate(GestureData.newStore(store, 10_000)));
+    }
+
+    private String target() {
+        return target.isEmpty() ? null : target;
+    }
+
+    @Benchmark
+    public int writeString() throws IOException {
+        String result = gestures.getGesture(data.randomKey(), target());
+        strings.write(result, MediaType.TEXT_PLAIN, response.reset());
+        return response.body.size();
+    }
+
+    @Benchmark
+    public int writeBytes() throws IOException {
+        GestureService.GestureBody result = gestures.getGestureBody(data.randomKey(), target());
+        bodies.write(result, MediaType.TEXT_PLAIN, response.reset());
+        return response.body.size();
+    }
+}
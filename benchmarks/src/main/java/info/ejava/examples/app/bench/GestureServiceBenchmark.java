@@ -0,0 +1,88 @@
+package info.ejava.examples.app.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+import info.ejava.examples.app.svc.GestureStore;
+import info.ejava.examples.app.svc.MeteredGestureService;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+
+/*
+ * Measures the per-call cost of the business service without any of the
+ * web tier. Run with -t N to measure contention between N threads.
+ * metered=true adds the cost of recording the service metrics into the
+ * Prometheus registry the application publishes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend={"-Xms4g", "-Xmx4g"})
+public class GestureServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int keyCount;
+
+    @Param({"16", "1024"})
+    private int valueSize;
+
+    @Param({"90", "50"})
+    private int readPercent;
+
+    @Param({"concurrent", "synchronized"})
+    private String store;
+
+    @Param({"false", "true"})
+    private boolean metered;
+
+    private GestureData data;
+    private GestureService gestures;
+
+    @Setup
+    public void setUp() {
+        data = new GestureData(keyCount, valueSize);
+        GestureStore gestureStore = data.populate(GestureData.newStore(store, keyCount));
+        gestures = new GestureServiceImpl(gestureStore);
+        if (metered) {
+            gestures = new MeteredGestureService(gestures, gestureStore,
+                    new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+        }
+    }
+
+    @Benchmark
+    public GestureService.UpsertResult upsertGesture() {
+        return gestures.upsertGesture(data.randomKey(), data.randomValue());
+    }
+
+    @Benchmark
+    public String getGesture() {
+        return gestures.getGesture(data.randomKey(), null);
+    }
+
+    @Benchmark
+    public String getGestureWithTarget() {
+        return gestures.getGesture(data.randomKey(), "jim");
+    }
+
+    @Benchmark
+    public Object mixed() {
+        return data.isRead(readPercent) ?
+                gestures.getGesture(data.randomKey(), null) :
+                gestures.upsertGesture(data.randomKey(), data.randomValue());
+    }
+}
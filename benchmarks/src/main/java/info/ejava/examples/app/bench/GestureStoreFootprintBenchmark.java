@@ -0,0 +1,91 @@
+package info.ejava.examples.app.bench;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+import info.ejava.examples.app.svc.GestureStore;
+
+/*
+ * Compares the heap-resident and off-heap stores holding keyCount
+ * gestures, whose values are skewed among a thousand distinct ones, with
+ * and without interning them (the interned store). After loading, the heap used after a full collection and the
+ * direct memory in use are printed; getGesture is then sampled so JMH
+ * reports its latency percentiles (p0.99 and beyond), which include any
+ * collection pauses made longer by a large live heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=2, time=5)
+@Measurement(iterations=5, time=5)
+@Fork(value=1, jvmArgsAppend={"-Xms8g", "-Xmx8g"})
+public class GestureStoreFootprintBenchmark {
+
+    @Param({"1000000", "10000000"})
+    private int keyCount;
+
+    @Param({"16"})
+    private int valueSize;
+
+    @Param({"concurrent", "interned", "offheap"})
+    private String store;
+
+    private GestureData data;
+    private GestureService gestures;
+
+    @Setup
+    public void setUp() {
+        data = new GestureData(keyCount, valueSize);
+        long before = heapUsedAfterGc();
+        GestureStore gestureStore = GestureData.newStore(store, keyCount);
+        for (int i=0; i<keyCount; i++) {
+            // copies, so the store is charged for its own keys and values as it would be in service
+            gestureStore.put(copy(data.key(i)), copy(data.skewedValue()));
+        }
+        gestures = new GestureServiceImpl(gestureStore);
+        long heap = heapUsedAfterGc() - before;
+        long direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> "direct".equals(pool.getName()))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+        System.out.printf("%n%s store, %d keys: heap %d MB (%d bytes/key), direct %d MB%n",
+                store, keyCount, heap >> 20, heap / keyCount, direct >> 20);
+    }
+
+    private static String copy(String value) {
+        return String.valueOf(value.toCharArray());
+    }
+
+    /*
+     * Sums what each heap pool held right after the collection, which is
+     * exact where MemoryMXBean's current usage is not.
+     */
+    private static long heapUsedAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null)
+                .mapToLong(pool -> pool.getCollectionUsage().getUsed())
+                .sum();
+    }
+
+    @Benchmark
+    public String getGesture() {
+        return gestures.getGesture(data.randomKey(), null);
+    }
+}
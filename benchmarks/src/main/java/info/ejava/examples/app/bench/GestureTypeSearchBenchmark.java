@@ -0,0 +1,117 @@
+package info.ejava.examples.app.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.ejava.examples.app.svc.GestureTypeIndex;
+
+/*
+ * Measures finding the first page of gestureTypes under a prefix, or
+ * matching a glob, in hierarchical gestureTypes such as g12.s34.k567 --
+ * 1000 under each gN.sN. and 100,000 under each gN.
+ *
+ * - indexPrefix, indexMatch: walking the GestureTypeIndex.
+ * - scanPrefix, scanMatch: what a store without one must do -- test every
+ *   key of a ConcurrentHashMap key set and sort the matches, since a page
+ *   is the first limit in gestureType order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=2, time=2)
+@Measurement(iterations=3, time=3)
+@Fork(value=1, jvmArgsAppend={"-Xms4g", "-Xmx4g"})
+public class GestureTypeSearchBenchmark {
+
+    private static final int LIMIT = 100;
+
+    @Param({"100000", "10000000"})
+    private int keyCount;
+
+    private GestureTypeIndex index;
+    private Set<String> keys;
+
+    @Setup
+    public void setUp() {
+        index = new GestureTypeIndex();
+        keys = ConcurrentHashMap.newKeySet(keyCount);
+        for (int i=0; i<keyCount; i++) {
+            String gestureType = "g" + (i / 100_000) + ".s" + (i / 1000 % 100) + ".k" + (i % 1000);
+            index.add(gestureType);
+            keys.add(gestureType);
+        }
+    }
+
+    private String randomPrefix() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return "g" + random.nextInt(Math.max(1, keyCount / 100_000)) + ".s" + random.nextInt(100) + ".";
+    }
+
+    // matches one gestureType under each gN.sN. of a gN.
+    private String randomGlob() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return "g" + random.nextInt(Math.max(1, keyCount / 100_000)) + ".*.k" + random.nextInt(1000);
+    }
+
+    private List<String> firstPage(List<String> matches) {
+        Collections.sort(matches);
+        return matches.subList(0, Math.min(LIMIT, matches.size()));
+    }
+
+    @Benchmark
+    public List<String> indexPrefix() {
+        List<String> page = new ArrayList<>(LIMIT);
+        index.visit(randomPrefix(), null, gestureType -> page.add(gestureType) && page.size() < LIMIT);
+        return page;
+    }
+
+    @Benchmark
+    public List<String> scanPrefix() {
+        String prefix = randomPrefix();
+        List<String> matches = new ArrayList<>();
+        for (String gestureType: keys) {
+            if (gestureType.startsWith(prefix)) {
+                matches.add(gestureType);
+            }
+        }
+        return firstPage(matches);
+    }
+
+    @Benchmark
+    public List<String> indexMatch() {
+        List<String> page = new ArrayList<>(LIMIT);
+        index.visitMatching(randomGlob(), null, gestureType -> page.add(gestureType) && page.size() < LIMIT);
+        return page;
+    }
+
+    @Benchmark
+    public List<String> scanMatch() {
+        String glob = randomGlob();
+        Pattern pattern = Pattern.compile(Pattern.quote(glob).replace("*", "\\E.*\\Q"));
+        List<String> matches = new ArrayList<>();
+        for (String gestureType: keys) {
+            if (pattern.matcher(gestureType).matches()) {
+                matches.add(gestureType);
+            }
+        }
+        return firstPage(matches);
+    }
+}
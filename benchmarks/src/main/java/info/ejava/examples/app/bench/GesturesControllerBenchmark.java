@@ -0,0 +1,97 @@
+package info.ejava.examples.app.bench;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.controllers.ExceptionAdvice;
+import info.ejava.examples.app.controllers.GestureBodyHttpMessageConverter;
+import info.ejava.examples.app.controllers.GesturesController;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+
+/*
+ * Measures the full Spring MVC request path -- DispatcherServlet, handler
+ * mapping, argument resolution, message conversion -- through MockMvc.
+ * The difference from GestureServiceBenchmark is the cost of the web tier.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend={"-Xms4g", "-Xmx4g"})
+public class GesturesControllerBenchmark {
+
+    @Param({"1000", "1000000"})
+    private int keyCount;
+
+    @Param({"16", "1024"})
+    private int valueSize;
+
+    @Param({"90", "50"})
+    private int readPercent;
+
+    private GestureData data;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        data = new GestureData(keyCount, valueSize);
+        GesturesController controller = new GesturesController(
+                new GestureServiceImpl(data.populate(GestureData.newStore("concurrent", keyCount))));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                                 .setControllerAdvice(new ExceptionAdvice())
+                                 .setMessageConverters(new GestureBodyHttpMessageConverter(),
+                                                       new StringHttpMessageConverter(),
+                                                       new MappingJackson2HttpMessageConverter())
+                                 .build();
+    }
+
+    @Benchmark
+    public MvcResult upsertGesture() throws Exception {
+        return mockMvc.perform(put("/" + GestureApi.GESTURE_PATH, data.randomKey())
+                                .contentType(MediaType.TEXT_PLAIN)
+                                .content(data.randomValue()))
+                      .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getGesture() throws Exception {
+        return mockMvc.perform(get("/" + GestureApi.GESTURE_PATH, data.randomKey())
+                                .accept(MediaType.TEXT_PLAIN))
+                      .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getGestureWithTarget() throws Exception {
+        return mockMvc.perform(get("/" + GestureApi.GESTURE_PATH, data.randomKey())
+                                .queryParam(GestureApi.target, "jim")
+                                .accept(MediaType.TEXT_PLAIN))
+                      .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult mixed() throws Exception {
+        return data.isRead(readPercent) ? getGesture() : upsertGesture();
+    }
+}
@@ -0,0 +1,172 @@
+package info.ejava.examples.app.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import info.ejava.examples.app.GuesturesApplication;
+import info.ejava.examples.app.api.GestureApi;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/*
+ * Closed-loop HTTP load comparison of the Spring MVC (Tomcat) and WebFlux
+ * (Reactor Netty) forms of the API. For each stack the application is
+ * started on a random port, loaded with gestures, and then driven by
+ * N connections that each issue GET requests back-to-back for a fixed
+ * duration. Reports throughput, latency percentiles, errors, peak platform
+ * thread count, heap used and process RSS per connection count.
+ *
+ * usage: GesturesLoadComparison [seconds] [connections ...]
+ *
+ * -Dstacks=servlet,virtual,reactive selects the stacks compared:
+ * servlet - Spring MVC on Tomcat's platform thread pool
+ * virtual - Spring MVC on Tomcat with a virtual thread per request (Java 21+)
+ * reactive - WebFlux on Reactor Netty
+ *
+ * Thread and memory figures are for the whole JVM, which includes the
+ * load generator's few event-loop threads.
+ *
+ * The load generator shares the host with the server; for numbers that
+ * reflect the server alone, run both on separate, otherwise idle machines.
+ */
+public class GesturesLoadComparison {
+
+    private static final int KEYS = 10_000;
+
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        List<Integer> connections = new ArrayList<>();
+        for (int i=1; i<args.length; i++) {
+            connections.add(Integer.parseInt(args[i]));
+        }
+        if (connections.isEmpty()) {
+            connections = List.of(100, 1_000, 5_000, 10_000);
+        }
+
+        List<String> stacks = Arrays.asList(System.getProperty("stacks", "servlet,virtual,reactive").split(","));
+        if (stacks.contains("virtual") && Runtime.version().feature() < 21) {
+            System.out.printf("skipping virtual: requires Java 21, running %s%n", Runtime.version());
+            stacks = stacks.stream().filter(stack -> !"virtual".equals(stack)).toList();
+        }
+
+        System.out.printf("%-9s %8s %12s %10s %10s %10s %10s %8s %8s %9s %9s%n",
+                "stack", "conns", "req/sec", "p50(ms)", "p99(ms)", "p99.9(ms)", "max(ms)", "errors",
+                "threads", "heap(MB)", "rss(MB)");
+        for (String stack: stacks) {
+            try (ConfigurableApplicationContext app = start(stack)) {
+                int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                preload(port);
+                for (int count: connections) {
+                    run(stack, port, count, Duration.ofSeconds(seconds));
+                }
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String stack) {
+        // Spring MVC on platform threads is the default; the profiles switch from it
+        return new SpringApplicationBuilder(GuesturesApplication.class)
+                .profiles("servlet".equals(stack) ? new String[0] : new String[] {stack})
+                .properties("server.port=0",
+                            "logging.level.root=WARN",
+                            "server.tomcat.max-connections=20000",
+                            "server.tomcat.accept-count=20000")
+                .run();
+    }
+
+    private static HttpClient client(int port, int connections) {
+        ConnectionProvider pool = ConnectionProvider.builder("load")
+                .maxConnections(connections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        return HttpClient.create(pool).baseUrl("http://localhost:" + port);
+    }
+
+    private static void preload(int port) {
+        HttpClient client = client(port, 64);
+        Flux.range(0, KEYS)
+            .flatMap(i -> client.put()
+                                .uri("/" + GestureApi.GESTURES_PATH + "/gesture-" + i)
+                                .send((request, out) -> {
+                                    request.header("Content-Type", "text/plain");
+                                    return out.send(ByteBufFlux.fromString(Mono.just("hi")));
+                                })
+                                .response(), 64)
+            .blockLast();
+    }
+
+    private static void run(String stack, int port, int connections, Duration duration) {
+        HttpClient client = client(port, connections);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        Recorder recorder = new Recorder(3);
+        AtomicLong errors = new AtomicLong();
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        Flux.range(0, connections)
+            .flatMap(c -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    String uri = "/" + GestureApi.GESTURES_PATH + "/gesture-" + ThreadLocalRandom.current().nextInt(KEYS);
+                    return client.get().uri(uri)
+                                .responseSingle((response, body) -> body.then(Mono.just(response.status())))
+                                .doOnNext(status -> {
+                                    recorder.recordValue(System.nanoTime() - start);
+                                    if (!HttpResponseStatus.OK.equals(status)) {
+                                        errors.incrementAndGet();
+                                    }
+                                })
+                                .onErrorResume(ex -> {
+                                    errors.incrementAndGet();
+                                    return Mono.empty();
+                                });
+                })
+                .repeat(() -> System.nanoTime() < deadline), connections)
+            .blockLast();
+
+        Histogram latency = recorder.getIntervalHistogram();
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%-9s %8d %12.0f %10.2f %10.2f %10.2f %10.2f %8d %8d %9d %9d%n",
+                stack, connections,
+                latency.getTotalCount() / (double)duration.toSeconds(),
+                latency.getValueAtPercentile(50) / 1e6,
+                latency.getValueAtPercentile(99) / 1e6,
+                latency.getValueAtPercentile(99.9) / 1e6,
+                latency.getMaxValue() / 1e6,
+                errors.get(),
+                threads.getPeakThreadCount(),
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20,
+                residentSetSize() >> 20);
+    }
+
+    // Linux only; reports 0 elsewhere
+    private static long residentSetSize() {
+        try {
+            for (String line: Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // not available on this platform
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,54 @@
+package info.ejava.examples.app.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+
+/*
+ * Measures the cost of listing every gesture. Kept apart from the
+ * point lookups because each call is proportional to keyCount.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend={"-Xms4g", "-Xmx4g"})
+public class GetAllGestureBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int keyCount;
+
+    @Param({"16", "1024"})
+    private int valueSize;
+
+    @Param({"concurrent", "synchronized"})
+    private String store;
+
+    private GestureService gestures;
+
+    @Setup
+    public void setUp() {
+        GestureData data = new GestureData(keyCount, valueSize);
+        gestures = new GestureServiceImpl(data.populate(GestureData.newStore(store, keyCount)));
+    }
+
+    @Benchmark
+    public List<String> getAllGesture() {
+        return gestures.getAllGesture();
+    }
+}
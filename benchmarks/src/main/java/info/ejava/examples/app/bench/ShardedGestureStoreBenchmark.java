@@ -0,0 +1,66 @@
+package info.ejava.examples.app.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+
+/*
+ * Measures the operations on the whole store that sharding changes.
+ * deleteAllGesture runs once per iteration on a freshly populated store,
+ * so it is timed as a single shot; the GC of what it dropped is not part
+ * of it. The point lookups of each store are measured by
+ * GestureServiceBenchmark with -p store=concurrent,sharded.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value=1, jvmArgsAppend={"-Xms4g", "-Xmx4g"})
+public class ShardedGestureStoreBenchmark {
+
+    @Param({"1000000"})
+    private int keyCount;
+
+    @Param({"concurrent", "sharded"})
+    private String store;
+
+    private GestureData data;
+    private GestureService gestures;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        if (data == null) {
+            data = new GestureData(keyCount, 16);
+        }
+        gestures = new GestureServiceImpl(data.populate(GestureData.newStore(store, keyCount)));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations=3)
+    @Measurement(iterations=10)
+    public void deleteAllGesture() {
+        gestures.deleteAllGesture();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations=3, time=2)
+    @Measurement(iterations=5, time=2)
+    public List<String> getAllGesture() {
+        return gestures.getAllGesture();
+    }
+}
@@ -0,0 +1,134 @@
+package info.ejava.examples.app.client;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * Coalesces reads of single gestures into batch reads. The first read of a
+ * target opens a batch that later reads of the same target join; the
+ * batch is sent window after it opened, or as soon as it holds maxSize
+ * distinct gestureTypes. Reads of the same gestureType within a batch share
+ * its one result.
+ *
+ * The sender is given the gestureTypes and target of a batch and returns
+ * the gesture of each gestureType that was found.
+ */
+@Slf4j
+class GestureBatcher {
+
+    private final Duration window;
+    private final int maxSize;
+    private final BiFunction<List<String>, String, Mono<Map<String, String>>> sender;
+    private final Scheduler scheduler;
+    private final Map<Optional<String>, Batch> open = new ConcurrentHashMap<>();
+
+    GestureBatcher(Duration window, int maxSize,
+                   BiFunction<List<String>, String, Mono<Map<String, String>>> sender) {
+        this(window, maxSize, sender, Schedulers.parallel());
+    }
+
+    GestureBatcher(Duration window, int maxSize,
+                   BiFunction<List<String>, String, Mono<Map<String, String>>> sender, Scheduler scheduler) {
+        this.window = window;
+        this.maxSize = maxSize;
+        this.sender = sender;
+        this.scheduler = scheduler;
+    }
+
+    /*
+     * @return the gesture, empty if it was not found, or the error the
+     * batch failed with
+     */
+    Mono<String> get(String gestureType, String target) {
+        return Mono.create(sink -> add(gestureType, target, sink));
+    }
+
+    private void add(String gestureType, String target, MonoSink<String> sink) {
+        Optional<String> key = Optional.ofNullable(target);
+        while (true) {
+            Batch batch = open.computeIfAbsent(key, k -> new Batch(target));
+            int size = batch.add(gestureType, sink);
+            if (size < 0) {
+                // sent while being installed or joined; open another
+                open.remove(key, batch);
+                continue;
+            }
+            if (size == 1 && batch.scheduled()) {
+                scheduler.schedule(() -> send(key, batch), window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            if (size >= maxSize) {
+                send(key, batch);
+            }
+            return;
+        }
+    }
+
+    private void send(Optional<String> key, Batch batch) {
+        open.remove(key, batch);
+        Map<String, List<MonoSink<String>>> waiters = batch.close();
+        if (waiters == null) {
+            return;
+        }
+        List<String> gestureTypes = new ArrayList<>(waiters.keySet());
+        log.trace("sending batch of {} gestureTypes for target {}", gestureTypes.size(), batch.target);
+        sender.apply(gestureTypes, batch.target).subscribe(
+                found -> waiters.forEach((gestureType, sinks) -> {
+                    String gesture = found.get(gestureType);
+                    for (MonoSink<String> sink: sinks) {
+                        if (gesture == null) {
+                            sink.success();
+                        } else {
+                            sink.success(gesture);
+                        }
+                    }
+                }),
+                ex -> waiters.values().forEach(sinks -> sinks.forEach(sink -> sink.error(ex))));
+    }
+
+    private static final class Batch {
+        private final String target;
+        private Map<String, List<MonoSink<String>>> waiters = new LinkedHashMap<>();
+        private boolean scheduled;
+
+        private Batch(String target) {
+            this.target = target;
+        }
+
+        // @return the distinct gestureTypes now waiting, or -1 if already sent
+        private synchronized int add(String gestureType, MonoSink<String> sink) {
+            if (waiters == null) {
+                return -1;
+            }
+            waiters.computeIfAbsent(gestureType, k -> new ArrayList<>(1)).add(sink);
+            return waiters.size();
+        }
+
+        // true for the one caller that is to schedule the send
+        private synchronized boolean scheduled() {
+            if (scheduled) {
+                return false;
+            }
+            scheduled = true;
+            return true;
+        }
+
+        private synchronized Map<String, List<MonoSink<String>>> close() {
+            Map<String, List<MonoSink<String>>> closed = waiters;
+            waiters = null;
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package info.ejava.examples.app.client;
+
+import org.springframework.http.ResponseEntity;
+
+import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.common.web.HttpClientFactory;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/*
+ * The GestureApi called over HTTP, blocking the caller on a
+ * ReactiveGestureClient. Calls made concurrently from many threads are
+ * batched, hedged and retried as that client's are; see
+ * ReactiveGestureClient.
+ *
+ * Error responses are thrown as WebClientResponseException. A read
+ * returns the server's own response, headers included, unless it was
+ * answered within a batch; see ReactiveGestureClient.getGestureEntity.
+ */
+@RequiredArgsConstructor
+public class GestureClient implements GestureApi {
+
+    @Getter
+    private final ReactiveGestureClient reactive;
+
+    public GestureClient(HttpClientFactory clients) {
+        this(new ReactiveGestureClient(clients));
+    }
+
+    public GestureClient(HttpClientFactory clients, GestureClientOptions options) {
+        this(new ReactiveGestureClient(clients, options));
+    }
+
+    @Override
+    public ResponseEntity<String> upsertGesture(String gestureType, String gesture) {
+        return reactive.upsertGesture(gestureType, gesture).block();
+    }
+
+    @Override
+    public ResponseEntity<String> getGesture(String gestureType, String target) {
+        return reactive.getGestureEntity(gestureType, target).block();
+    }
+
+    @Override
+    public ResponseEntity<Void> deleteGesture(String gestureType) {
+        return reactive.deleteGesture(gestureType).block();
+    }
+
+    @Override
+    public ResponseEntity<Void> deleteAllGesture() {
+        return reactive.deleteAllGesture().block();
+    }
+}
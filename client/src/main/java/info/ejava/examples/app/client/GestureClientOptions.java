@@ -0,0 +1,30 @@
+package info.ejava.examples.app.client;
+
+import java.time.Duration;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.With;
+
+/**
+ * This class is used to represent how a GestureClient calls the server,
+ * beyond the connection described by its ServerConfig.
+ */
+@Data
+@With
+@NoArgsConstructor
+@AllArgsConstructor
+public class GestureClientOptions {
+    // reads of the same target arriving within this window share one batch request; null to send each alone
+    private Duration batchWindow = Duration.ofMillis(1);
+    private int maxBatchSize = 256;
+    // a read not answered within this delay is sent again, and the first answer used; null to not hedge
+    private Duration hedgeDelay;
+    // attempts per call, including the first
+    private int maxAttempts = 3;
+    private Duration retryBackoff = Duration.ofMillis(20);
+    // retries and hedges allowed as a fraction of calls, beyond minRetriesPerSecond
+    private double retryBudgetRatio = 0.1;
+    private int minRetriesPerSecond = 10;
+}
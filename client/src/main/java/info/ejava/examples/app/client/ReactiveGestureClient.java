@@ -0,0 +1,274 @@
+package info.ejava.examples.app.client;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.common.web.HttpClientFactory;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/*
+ * The GestureApi called over HTTP without blocking. Build it from a
+ * long-lived HttpClientFactory so that calls share its pooled connections,
+ * which are multiplexed over HTTP/2 for https.
+ *
+ * - Concurrent reads of the same target are coalesced into one batch read,
+ *   for servers that offer it. A server answering the batch read with 404
+ *   or 405 is read one gesture at a time from then on.
+ * - A read not answered within hedgeDelay is sent a second time, and the
+ *   first answer is used.
+ * - Calls failing on a connection error, a timeout, or a 429, 502, 503 or
+ *   504 are retried up to maxAttempts, with backoff.
+ * - Hedges and retries share a RetryBudget, so they add only a fraction to
+ *   the calls made while the server is struggling.
+ *
+ * Error responses are reported as WebClientResponseException; an unknown
+ * gestureType as its 404 NotFound.
+ */
+@Slf4j
+public class ReactiveGestureClient {
+
+    private static final ParameterizedTypeReference<List<Map<String, String>>> BATCH_RESULTS =
+            new ParameterizedTypeReference<>() {};
+
+    private final WebClient webClient;
+    private final GestureClientOptions options;
+    private final RetryBudget budget;
+    private final GestureBatcher batcher;
+    private volatile boolean batching;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retriesDenied = new LongAdder();
+
+    public ReactiveGestureClient(HttpClientFactory clients) {
+        this(clients, new GestureClientOptions());
+    }
+
+    public ReactiveGestureClient(HttpClientFactory clients, GestureClientOptions options) {
+        this(clients.webClientBuilder(), options);
+    }
+
+    public ReactiveGestureClient(WebClient.Builder webClientBuilder, GestureClientOptions options) {
+        this.webClient = webClientBuilder
+                .filter((request, next) -> {
+                    requests.increment();
+                    return next.exchange(request);
+                })
+                .build();
+        this.options = options;
+        this.budget = new RetryBudget(options.getRetryBudgetRatio(), options.getMinRetriesPerSecond());
+        this.batching = options.getBatchWindow() != null && options.getMaxBatchSize() > 1;
+        this.batcher = batching ?
+                new GestureBatcher(options.getBatchWindow(), options.getMaxBatchSize(), this::getBatch) : null;
+    }
+
+    public Mono<ResponseEntity<String>> upsertGesture(String gestureType, String gesture) {
+        return call(() -> webClient.put()
+                .uri("/" + GestureApi.GESTURE_PATH, gestureType)
+                .contentType(MediaType.TEXT_PLAIN)
+                .accept(MediaType.TEXT_PLAIN)
+                .bodyValue(gesture)
+                .retrieve()
+                .toEntity(String.class));
+    }
+
+    /*
+     * @return the gesture, or an error of WebClientResponseException.NotFound
+     * for an unknown gestureType
+     */
+    public Mono<String> getGesture(String gestureType, String target) {
+        return getGestureEntity(gestureType, target).map(entity -> entity.hasBody() ? entity.getBody() : "");
+    }
+
+    /*
+     * getGesture as the server answered it: the status, headers -- ETag,
+     * Last-Modified, Content-Type -- and body of the read. A read answered
+     * within a batch has no response of its own, and is given as 200 with
+     * only the gesture.
+     */
+    public Mono<ResponseEntity<String>> getGestureEntity(String gestureType, String target) {
+        return call(() -> hedge(() -> read(gestureType, target)));
+    }
+
+    public Mono<ResponseEntity<Void>> deleteGesture(String gestureType) {
+        return call(() -> webClient.delete()
+                .uri("/" + GestureApi.GESTURE_PATH, gestureType)
+                .retrieve()
+                .toBodilessEntity());
+    }
+
+    public Mono<ResponseEntity<Void>> deleteAllGesture() {
+        return call(() -> webClient.delete()
+                .uri("/" + GestureApi.GESTURES_PATH)
+                .retrieve()
+                .toBodilessEntity());
+    }
+
+    private Mono<ResponseEntity<String>> read(String gestureType, String target) {
+        if (!batching) {
+            return getOne(gestureType, target);
+        }
+        return batcher.get(gestureType, target)
+                .map(ResponseEntity::ok)
+                .switchIfEmpty(Mono.error(() -> notFound(gestureType)))
+                .onErrorResume(BatchUnsupportedException.class, ex -> getOne(gestureType, target));
+    }
+
+    private Mono<ResponseEntity<String>> getOne(String gestureType, String target) {
+        return webClient.get()
+                .uri(uri -> uri.path("/" + GestureApi.GESTURE_PATH)
+                               .queryParamIfPresent(GestureApi.target, Optional.ofNullable(target))
+                               .build(gestureType))
+                .accept(MediaType.TEXT_PLAIN)
+                .retrieve()
+                .toEntity(String.class);
+    }
+
+    private Mono<Map<String, String>> getBatch(List<String> gestureTypes, String target) {
+        batches.increment();
+        return webClient.post()
+                .uri(uri -> uri.path("/" + GestureApi.GESTURES_BATCH_PATH + "/get")
+                               .queryParamIfPresent(GestureApi.target, Optional.ofNullable(target))
+                               .build())
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(gestureTypes)
+                .retrieve()
+                .bodyToMono(BATCH_RESULTS)
+                .map(results -> {
+                    Map<String, String> found = new HashMap<>(results.size() * 2);
+                    for (Map<String, String> result: results) {
+                        if ("FOUND".equals(result.get("status"))) {
+                            found.put(result.get("gestureType"), result.get("value"));
+                        }
+                    }
+                    return found;
+                })
+                .onErrorMap(WebClientResponseException.class, ex -> {
+                    int status = ex.getStatusCode().value();
+                    if (status == HttpStatus.NOT_FOUND.value() || status == HttpStatus.METHOD_NOT_ALLOWED.value()) {
+                        if (batching) {
+                            log.info("server does not offer batch reads, reading one at a time: {}", status);
+                            batching = false;
+                        }
+                        return new BatchUnsupportedException();
+                    }
+                    return ex;
+                });
+    }
+
+    /*
+     * Sends the read again if the first has not answered within hedgeDelay,
+     * and the budget allows. The first answer, or the first error of the
+     * original, is used; the other is cancelled.
+     */
+    private <T> Mono<T> hedge(Supplier<Mono<T>> read) {
+        Duration delay = options.getHedgeDelay();
+        if (delay == null) {
+            return read.get();
+        }
+        Mono<T> hedged = Mono.delay(delay)
+                .filter(tick -> budget.tryRetry())
+                .flatMap(tick -> {
+                    hedges.increment();
+                    return read.get().onErrorResume(ex -> Mono.never());
+                })
+                .switchIfEmpty(Mono.never());
+        return Mono.firstWithSignal(read.get(), hedged);
+    }
+
+    private <T> Mono<T> call(Supplier<Mono<T>> call) {
+        calls.increment();
+        budget.deposit();
+        Mono<T> mono = Mono.defer(call);
+        if (options.getMaxAttempts() <= 1) {
+            return mono;
+        }
+        return mono.retryWhen(Retry.backoff(options.getMaxAttempts() - 1, options.getRetryBackoff())
+                .filter(ex -> {
+                    if (!isRetryable(ex)) {
+                        return false;
+                    }
+                    if (!budget.tryRetry()) {
+                        retriesDenied.increment();
+                        return false;
+                    }
+                    retries.increment();
+                    return true;
+                })
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    static boolean isRetryable(Throwable ex) {
+        if (ex instanceof WebClientRequestException || ex instanceof TimeoutException) {
+            return true;
+        }
+        if (ex instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == HttpStatus.TOO_MANY_REQUESTS.value() ||
+                   status == HttpStatus.BAD_GATEWAY.value() ||
+                   status == HttpStatus.SERVICE_UNAVAILABLE.value() ||
+                   status == HttpStatus.GATEWAY_TIMEOUT.value();
+        }
+        return false;
+    }
+
+    private static WebClientResponseException notFound(String gestureType) {
+        return WebClientResponseException.create(HttpStatus.NOT_FOUND.value(), "Not Found", HttpHeaders.EMPTY,
+                ("gesture type [" + gestureType + "] not found").getBytes(), null);
+    }
+
+    // calls made through this client, each counted once however many requests it took
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    // HTTP requests sent, including batches, hedges and retries
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getRetriesDenied() {
+        return retriesDenied.sum();
+    }
+
+    // the batch read is not offered by the server; its callers read one at a time
+    private static final class BatchUnsupportedException extends RuntimeException {
+        private BatchUnsupportedException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package info.ejava.examples.app.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Limits retries, and hedged requests, to a fraction of the calls made, so
+ * that a struggling server is not sent a multiple of its normal load.
+ *
+ * - Each call deposits ratio of a retry into the budget, up to a balance
+ *   of ratio x MAX_BALANCE_CALLS retries.
+ * - Each retry withdraws one. minPerSecond retries a second are allowed
+ *   without a balance, so a client making few calls can still retry.
+ *
+ * Both are counted with CAS on a single AtomicLong each, without locks.
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+    private static final int MAX_BALANCE_CALLS = 100;
+    private static final long MAX_PER_SECOND = 0xFFFFFF;
+
+    private final long deposit;
+    private final long maxBalance;
+    private final int minPerSecond;
+    private final AtomicLong balance = new AtomicLong();
+    // the current second << 24 | the retries allowed within it by minPerSecond
+    private final AtomicLong window = new AtomicLong();
+
+    public RetryBudget(double ratio, int minPerSecond) {
+        this.deposit = Math.round(ratio * SCALE);
+        this.maxBalance = Math.max(SCALE, deposit * MAX_BALANCE_CALLS);
+        this.minPerSecond = (int)Math.min(minPerSecond, MAX_PER_SECOND);
+    }
+
+    // called once for each call made
+    public void deposit() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= maxBalance) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(maxBalance, current + deposit)));
+    }
+
+    /*
+     * @return true, having withdrawn one retry, if the budget allows one
+     */
+    public boolean tryRetry() {
+        if (withinMinimum()) {
+            return true;
+        }
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    private boolean withinMinimum() {
+        if (minPerSecond <= 0) {
+            return false;
+        }
+        long second = System.currentTimeMillis() / 1000;
+        while (true) {
+            long current = window.get();
+            long count = current >>> 24 == second ? current & MAX_PER_SECOND : 0;
+            if (count >= minPerSecond) {
+                return false;
+            }
+            if (window.compareAndSet(current, second << 24 | (count + 1))) {
+                return true;
+            }
+        }
+    }
+}
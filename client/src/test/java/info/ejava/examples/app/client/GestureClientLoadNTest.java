@@ -0,0 +1,164 @@
+package info.ejava.examples.app.client;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowableOfType;
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import info.ejava.examples.app.GuesturesApplication;
+import info.ejava.examples.app.common.web.HttpClientFactory;
+import info.ejava.examples.app.common.web.ServerConfig;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+/*
+ * This class is an example of a load test, driving a locally started
+ * server from many concurrent callers of the blocking and reactive
+ * clients, and reporting the throughput reached and the requests saved.
+ */
+@Tag("springboot")
+@DisplayName("Gesture client load test")
+@Slf4j
+public class GestureClientLoadNTest {
+
+    private static final int GESTURES = 100;
+    private static final int THREADS = 16;
+    private static final Duration RUN = Duration.ofSeconds(3);
+
+    private static ConfigurableApplicationContext server;
+    private static HttpClientFactory clients;
+
+    @BeforeAll
+    public static void startServer() {
+        server = new SpringApplicationBuilder(GuesturesApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN", "logging.level.info.ejava.examples.app.client=INFO",
+                            "spring.main.banner-mode=off")
+                .run();
+        int port = Integer.parseInt(server.getEnvironment().getProperty("local.server.port"));
+        clients = new HttpClientFactory(new ServerConfig().withPort(port).build());
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        clients.close();
+        server.close();
+    }
+
+    @BeforeEach
+    public void preload() {
+        GestureClient client = new GestureClient(clients, new GestureClientOptions().withBatchWindow(null));
+        client.deleteAllGesture();
+        for (int i=0; i<GESTURES; i++) {
+            client.upsertGesture("gesture" + i, "hi" + i);
+        }
+    }
+
+    @Test
+    public void blocking_callers_are_batched() throws Exception {
+        // given - a client shared by many threads, hedging slow reads
+        GestureClient client = new GestureClient(clients,
+                new GestureClientOptions().withHedgeDelay(Duration.ofMillis(50)));
+        ReactiveGestureClient stats = client.getReactive();
+        AtomicLong reads = new AtomicLong();
+
+        // when - the threads read as fast as they can
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        long deadline = System.nanoTime() + RUN.toNanos();
+        List<Future<?>> callers = new ArrayList<>();
+        for (int t=0; t<THREADS; t++) {
+            int offset = t;
+            callers.add(threads.submit(() -> {
+                for (int i=offset; System.nanoTime() < deadline; i++) {
+                    int gesture = i % GESTURES;
+                    then(client.getGesture("gesture" + gesture, "jim").getBody()).isEqualTo("hi" + gesture + ", jim");
+                    reads.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> caller: callers) {
+            caller.get();
+        }
+        threads.shutdown();
+
+        // then - every read was answered, in fewer requests than reads
+        log.info("blocking: {} reads/s, {} requests in {} batches, {} hedges, {} retries",
+                reads.get() / RUN.toSeconds(), stats.getRequests(), stats.getBatches(),
+                stats.getHedges(), stats.getRetries());
+        then(reads.get()).isPositive();
+        then(stats.getCalls()).isEqualTo(reads.get());
+        then(stats.getBatches()).isPositive();
+        then(stats.getRequests()).isLessThan(stats.getCalls());
+    }
+
+    @Test
+    public void reactive_callers_are_batched() {
+        // given - a reactive client
+        ReactiveGestureClient client = new ReactiveGestureClient(clients, new GestureClientOptions());
+        long deadline = System.nanoTime() + RUN.toNanos();
+
+        // when - reads are kept 256 in flight
+        long reads = Flux.range(0, Integer.MAX_VALUE)
+                .takeWhile(i -> System.nanoTime() < deadline)
+                .flatMap(i -> client.getGesture("gesture" + (i % GESTURES), null)
+                                    .doOnNext(gesture -> then(gesture).isEqualTo("hi" + (i % GESTURES))),
+                         256)
+                .count()
+                .block();
+
+        // then - every read was answered, in fewer requests than reads
+        log.info("reactive: {} reads/s, {} requests in {} batches, {} retries",
+                reads / RUN.toSeconds(), client.getRequests(), client.getBatches(), client.getRetries());
+        then(reads).isPositive();
+        then(client.getCalls()).isEqualTo(reads);
+        then(client.getRequests()).isLessThan(client.getCalls() / 4);
+    }
+
+    @Test
+    public void unknown_gesture_is_not_found_within_batch() {
+        // given - a client batching reads
+        GestureClient client = new GestureClient(clients, new GestureClientOptions());
+
+        // when - an unknown gesture is read
+        WebClientResponseException ex = catchThrowableOfType(() -> client.getGesture("unknown", null),
+                WebClientResponseException.class);
+
+        // then - it is reported as not found, without a retry
+        then(ex.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        then(client.getReactive().getBatches()).isEqualTo(1);
+        then(client.getReactive().getRetries()).isZero();
+    }
+
+    @Test
+    public void unbatched_read_keeps_response_headers() {
+        // given - a client reading one gesture at a time
+        GestureClient client = new GestureClient(clients, new GestureClientOptions().withBatchWindow(null));
+
+        // when - a gesture is read
+        ResponseEntity<String> response = client.getGesture("gesture1", null);
+
+        // then - the server's response is returned, headers included
+        then(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        then(response.getBody()).isEqualTo("hi1");
+        then(response.getHeaders().getETag()).isNotNull();
+        then(response.getHeaders().getContentType().isCompatibleWith(MediaType.TEXT_PLAIN)).isTrue();
+    }
+}
@@ -3,12 +3,13 @@ package info.ejava.examples.app;
 import java.util.Arrays;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
-import org.springframework.web.filter.CommonsRequestLoggingFilter;
 
+import info.ejava.examples.app.common.web.AsyncRequestLoggingFilter;
 import jakarta.servlet.Filter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,16 +28,17 @@ public class GuesturesApplication {
      @Bean
      // activate if client side logging is not defined
      @ConditionalOnProperty(value="logging.level.info.ejava.examples.app", havingValue="OFF", matchIfMissing=true)
-     public Filter logFilter(){
-        final List<String> headers = Arrays.asList("accept host content-length Content-Type     accept-encoding".toLowerCase().split(","));
-        CommonsRequestLoggingFilter filter = new CommonsRequestLoggingFilter();
+     public Filter logFilter(
+             @Value("${gestures.request-log.sample-percent:100}") double samplePercent,
+             @Value("${gestures.request-log.max-per-second:0}") int maxPerSecond){
+        final List<String> headers = Arrays.asList("accept,host,content-length,content-type,accept-encoding".split(","));
+        AsyncRequestLoggingFilter filter = new AsyncRequestLoggingFilter();
         filter.setIncludeQueryString(true);
         filter.setIncludePayload(true);
         filter.setMaxPayloadLength(1000);
-        filter.setBeforeMessagePrefix(System.lineSeparator());
-        filter.setAfterMessagePrefix(System.lineSeparator());
-        filter.setIncludeHeaders(true);
-        filter.setHeaderPredicate(h -> headers.contains(h));
+        filter.setHeaderMatcher(AsyncRequestLoggingFilter.HeaderMatcher.including(headers));
+        filter.setSamplePercent(samplePercent);
+        filter.setMaxPerSecond(maxPerSecond);
         return filter;
 
      }
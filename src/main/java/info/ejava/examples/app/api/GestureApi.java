@@ -11,7 +11,16 @@ public interface GestureApi {
 
     public static final String GESTURES_PATH = "api/gestures";
     public static final String GESTURE_PATH = "api/gestures/{gestureType}";
+    public static final String GESTURES_BATCH_PATH = "api/gestures/batch";
+    public static final String GESTURE_CHANGES_PATH = "api/gestures/changes";
+    public static final String GESTURE_TOMBSTONES_PATH = "api/gestures/tombstones";
     public static final String target = "target";
+    public static final String limit = "limit";
+    public static final String continuation = "continue";
+    public static final String prefix = "prefix";
+    public static final String match = "match";
+    public static final String after = "after";
+    public static final String timeout = "timeout";
 
     public ResponseEntity<String> upsertGesture(String gestureType, String gesture);
 
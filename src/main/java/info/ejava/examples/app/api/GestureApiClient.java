@@ -0,0 +1,64 @@
+package info.ejava.examples.app.api;
+
+import java.util.Optional;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClient;
+
+import info.ejava.examples.app.common.web.HttpClientFactory;
+import lombok.RequiredArgsConstructor;
+
+/*
+ * The GestureApi called over HTTP. Build it from a long-lived
+ * HttpClientFactory so that calls share its pooled connections. Error
+ * responses are thrown as RestClientResponseException, as for any
+ * RestClient.
+ */
+@RequiredArgsConstructor
+public class GestureApiClient implements GestureApi {
+
+    private final RestClient restClient;
+
+    public GestureApiClient(HttpClientFactory clients) {
+        this(clients.restClient());
+    }
+
+    @Override
+    public ResponseEntity<String> upsertGesture(String gestureType, String gesture) {
+        return restClient.put()
+                .uri("/" + GESTURE_PATH, gestureType)
+                .contentType(MediaType.TEXT_PLAIN)
+                .accept(MediaType.TEXT_PLAIN)
+                .body(gesture)
+                .retrieve()
+                .toEntity(String.class);
+    }
+
+    @Override
+    public ResponseEntity<String> getGesture(String gestureType, String target) {
+        return restClient.get()
+                .uri(uri -> uri.path("/" + GESTURE_PATH)
+                               .queryParamIfPresent(GestureApi.target, Optional.ofNullable(target))
+                               .build(gestureType))
+                .accept(MediaType.TEXT_PLAIN)
+                .retrieve()
+                .toEntity(String.class);
+    }
+
+    @Override
+    public ResponseEntity<Void> deleteGesture(String gestureType) {
+        return restClient.delete()
+                .uri("/" + GESTURE_PATH, gestureType)
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    @Override
+    public ResponseEntity<Void> deleteAllGesture() {
+        return restClient.delete()
+                .uri("/" + GESTURES_PATH)
+                .retrieve()
+                .toBodilessEntity();
+    }
+}
@@ -0,0 +1,96 @@
+package info.ejava.examples.app.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.MediaType;
+
+/*
+ * The application/x-gestures media type: a sequence of gestures, each
+ * written as its UTF-8 length in an unsigned LEB128 varint followed by
+ * its UTF-8 bytes. A gesture of up to 127 bytes costs one byte more than
+ * its text, against JSON's quotes, commas and escapes, and a reader
+ * knows each length before reading it. A single gesture is a sequence of
+ * one.
+ */
+public final class GestureBinary {
+
+    public static final String GESTURES_VALUE = "application/x-gestures";
+    public static final MediaType GESTURES = MediaType.parseMediaType(GESTURES_VALUE);
+
+    private GestureBinary() {}
+
+    public static void writeLength(OutputStream out, int length) throws IOException {
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+    }
+
+    public static void write(OutputStream out, String gesture) throws IOException {
+        byte[] bytes = gesture.getBytes(StandardCharsets.UTF_8);
+        writeLength(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static byte[] encode(List<String> gestures) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            for (String gesture: gestures) {
+                write(out, gesture);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    // @return every gesture until the end of in
+    public static List<String> readAll(InputStream in) throws IOException {
+        return readAll(in, Long.MAX_VALUE);
+    }
+
+    /*
+     * @param limit the most bytes to read, lengths included
+     * @return every gesture until the end of in
+     * @throws EOFException if a length is invalid or claims more than
+     * remains of limit -- checked before any of it is read -- or if a
+     * gesture is cut short
+     */
+    public static List<String> readAll(InputStream in, long limit) throws IOException {
+        List<String> gestures = new ArrayList<>();
+        long remaining = limit;
+        int first;
+        while ((first = in.read()) != -1) {
+            remaining -= 1;
+            int length = first & 0x7F;
+            for (int shift = 7; (first & 0x80) != 0; shift += 7) {
+                first = in.read();
+                if (first == -1 || shift > 28) {
+                    throw new EOFException("truncated or invalid gesture length");
+                }
+                remaining -= 1;
+                // a fifth byte of 8 or more overflows into the sign bit, rejected below
+                length |= (first & 0x7F) << shift;
+            }
+            if (length < 0 || length > remaining) {
+                throw new EOFException(String.format("invalid gesture length %d, %d bytes remain",
+                        Integer.toUnsignedLong(length), Math.max(remaining, 0)));
+            }
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length != length) {
+                throw new EOFException("truncated gesture");
+            }
+            remaining -= length;
+            gestures.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return gestures;
+    }
+}
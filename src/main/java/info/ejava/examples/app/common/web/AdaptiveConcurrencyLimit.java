@@ -0,0 +1,127 @@
+package info.ejava.examples.app.common.web;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/*
+ * Limits the requests in flight to a limit found the way TCP Vegas finds
+ * its congestion window. The server's response time without load
+ * (rttNoLoad) is taken as the lowest seen. The requests queued in the
+ * server are then estimated as limit * (1 - rttNoLoad / rtt) from the
+ * lowest response time of each window.
+ * - Fewer than alpha queued: the limit grows by log10(limit).
+ * - More than beta queued: the limit shrinks by log10(limit).
+ * alpha and beta are 3 and 6 times log10(limit).
+ *
+ * The limit only grows while at least half of it was in use. rttNoLoad is
+ * re-measured every PROBE_WINDOWS windows, so that it follows a baseline
+ * that has risen.
+ *
+ * Acquiring is one increment of the in-flight count. Each sample is one
+ * compare-and-set of the window's lowest time. The update at the end of a
+ * window is made by whichever release gets the lock; the others skip it.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    public static final int PROBE_WINDOWS = 300;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+    private final LongSupplier clock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    private final AtomicLong windowMinRtt = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final ReentrantLock updating = new ReentrantLock();
+    private volatile long windowEnd;
+    // guarded by updating
+    private long rttNoLoad;
+    private int windowsToProbe = PROBE_WINDOWS;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long windowNanos) {
+        this(initialLimit, minLimit, maxLimit, windowNanos, System::nanoTime);
+    }
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long windowNanos, LongSupplier clock) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("limits must be 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = windowNanos;
+        this.clock = clock;
+        this.windowEnd = clock.getAsLong() + windowNanos;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    // @return true if admitted, to be followed by one release
+    public boolean tryAcquire() {
+        int current = inFlight.incrementAndGet();
+        if (current > limit) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        if (current > windowMaxInFlight.get()) {
+            windowMaxInFlight.accumulateAndGet(current, Math::max);
+        }
+        return true;
+    }
+
+    // releases a request that completed in rttNanos
+    public void release(long rttNanos) {
+        inFlight.decrementAndGet();
+        if (rttNanos < windowMinRtt.get()) {
+            windowMinRtt.accumulateAndGet(rttNanos, Math::min);
+        }
+        long now = clock.getAsLong();
+        if (now - windowEnd >= 0 && updating.tryLock()) {
+            try {
+                if (now - windowEnd >= 0) {
+                    windowEnd = now + windowNanos;
+                    update(windowMinRtt.getAndSet(Long.MAX_VALUE), windowMaxInFlight.getAndSet(0));
+                }
+            } finally {
+                updating.unlock();
+            }
+        }
+    }
+
+    // releases a request whose time says nothing of the server's load
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    private void update(long rtt, int maxInFlight) {
+        if (rtt == Long.MAX_VALUE) {
+            return;
+        }
+        if (--windowsToProbe <= 0 || rttNoLoad == 0 || rtt < rttNoLoad) {
+            rttNoLoad = rtt;
+            windowsToProbe = PROBE_WINDOWS;
+        }
+        int current = limit;
+        int step = Math.max(1, (int)Math.log10(current));
+        int queued = (int)Math.ceil(current * (1 - (double)rttNoLoad / rtt));
+        int next = current;
+        if (queued <= 3 * step) {
+            if (maxInFlight * 2 >= current) {
+                next = current + step;
+            }
+        } else if (queued >= 6 * step) {
+            next = current - step;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
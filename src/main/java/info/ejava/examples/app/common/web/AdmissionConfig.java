@@ -0,0 +1,33 @@
+package info.ejava.examples.app.common.web;
+
+import java.time.Duration;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.With;
+
+/**
+ * This class is used to represent how requests to the API are admitted,
+ * bound from gestures.admission.*. See AdmissionControlFilter.
+ */
+@Data
+@With
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdmissionConfig {
+    // requests per second refilled into each client's bucket
+    private double ratePerSecond = 100;
+    // requests a client may make at once after being idle
+    private int burst = 200;
+    // header naming the client, set by a trusted proxy; the client address when absent
+    private String clientHeader;
+    // how long an idle client's bucket is kept
+    private Duration idleTimeout = Duration.ofMinutes(5);
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    // kept below the server's request threads, so that rejecting never waits for one
+    private int maxLimit = 180;
+    // how often the concurrency limit is adjusted
+    private Duration window = Duration.ofMillis(100);
+}
@@ -0,0 +1,59 @@
+package info.ejava.examples.app.common.web;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import info.ejava.examples.app.common.web.AdmissionControlFilter.Rejection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/*
+ * Places an AdmissionControlFilter in front of api/* when
+ * gestures.admission.enabled=true, ahead of the other filters so that a
+ * rejection costs as little as possible.
+ *
+ * Meters: gestures.admission.rejected counts rejections, tagged with the
+ * reason, and gestures.admission.limit and gestures.admission.inflight
+ * follow the concurrency limit.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name="gestures.admission.enabled", havingValue="true")
+public class AdmissionControlConfiguration {
+
+    public static final String REJECTED = "gestures.admission.rejected";
+    public static final String LIMIT = "gestures.admission.limit";
+    public static final String IN_FLIGHT = "gestures.admission.inflight";
+
+    @Bean
+    @ConfigurationProperties("gestures.admission")
+    public AdmissionConfig admissionConfig() {
+        return new AdmissionConfig();
+    }
+
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilter(AdmissionConfig config,
+                                                                                 MeterRegistry registry) {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(
+                config.getRatePerSecond(), config.getBurst(), config.getIdleTimeout().toNanos());
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(
+                config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit(), config.getWindow().toNanos());
+        Gauge.builder(LIMIT, concurrencyLimit, AdaptiveConcurrencyLimit::getLimit).register(registry);
+        Gauge.builder(IN_FLIGHT, concurrencyLimit, AdaptiveConcurrencyLimit::getInFlight).register(registry);
+        Counter rateLimited = Counter.builder(REJECTED).tag("reason", "rate").register(registry);
+        Counter overloaded = Counter.builder(REJECTED).tag("reason", "concurrency").register(registry);
+
+        AdmissionControlFilter filter = new AdmissionControlFilter(rateLimiter, concurrencyLimit);
+        filter.setClientHeader(config.getClientHeader());
+        filter.setRejectionListener((rejection, client) ->
+                (rejection == Rejection.RATE_LIMITED ? rateLimited : overloaded).increment());
+        FilterRegistrationBean<AdmissionControlFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
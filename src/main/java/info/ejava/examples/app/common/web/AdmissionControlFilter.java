@@ -0,0 +1,98 @@
+package info.ejava.examples.app.common.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.Getter;
+import lombok.Setter;
+
+/*
+ * Turns requests away before they take a request thread for long:
+ * - 429 Too Many Requests when the client's token bucket is empty, with
+ *   Retry-After the seconds until it has a token.
+ * - 503 Service Unavailable when the AdaptiveConcurrencyLimit is reached,
+ *   with Retry-After of a second.
+ * Rejections are written at once, rather than queued.
+ *
+ * Clients are told apart by clientHeader when set and present -- to be
+ * set by a proxy in front, never trusted from clients -- and otherwise by
+ * their address. A request that continues asynchronously hands back its
+ * request thread, so it is released from the concurrency limit when its
+ * first dispatch returns, without a response time sample.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    public enum Rejection { RATE_LIMITED, OVERLOADED }
+
+    public interface RejectionListener {
+        void rejected(Rejection rejection, String client);
+    }
+
+    private final TokenBucketRateLimiter rateLimiter;
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    @Getter @Setter
+    private String clientHeader;
+    @Getter @Setter
+    private RejectionListener rejectionListener = (rejection, client) -> {};
+
+    public AdmissionControlFilter(TokenBucketRateLimiter rateLimiter, AdaptiveConcurrencyLimit concurrencyLimit) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String client = client(request);
+        long wait = rateLimiter.tryAcquire(client);
+        if (wait > 0) {
+            rejectionListener.rejected(Rejection.RATE_LIMITED, client);
+            reject(response, HttpStatus.TOO_MANY_REQUESTS,
+                    Math.max(1, (wait + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1)),
+                    "request rate of client exceeded");
+            return;
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            rejectionListener.rejected(Rejection.OVERLOADED, client);
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, "server is busy");
+            return;
+        }
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = !isAsyncStarted(request);
+        } finally {
+            if (completed) {
+                concurrencyLimit.release(System.nanoTime() - start);
+            } else {
+                concurrencyLimit.release();
+            }
+        }
+    }
+
+    private String client(HttpServletRequest request) {
+        String client = clientHeader == null ? null : request.getHeader(clientHeader);
+        return client == null || client.isEmpty() ? request.getRemoteAddr() : client;
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, String message)
+            throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,310 @@
+package info.ejava.examples.app.common.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Logs requests like CommonsRequestLoggingFilter, but does almost none of
+ * the work on the request thread.
+ *
+ * - Requests are sampled before anything else is done: samplePercent of
+ *   them, and no more than maxPerSecond. An unsampled request passes
+ *   straight through, without its payload being cached.
+ * - Header names are matched by a HeaderMatcher, whose patterns are
+ *   compiled once and whose answer for each name is remembered.
+ * - A sampled request only copies references to what it will log into a
+ *   record and adds it to a lock-free queue. A single writer thread
+ *   formats and logs the records. When queueCapacity records are waiting,
+ *   further records are dropped and counted rather than block a request.
+ *
+ * Requests that continue asynchronously are logged after their final
+ * dispatch, with the status they completed with.
+ */
+@Slf4j
+public class AsyncRequestLoggingFilter extends OncePerRequestFilter {
+
+    private static final String RECORD_ATTRIBUTE = AsyncRequestLoggingFilter.class.getName() + ".RECORD";
+    private static final long WRITER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int MAX_PER_SECOND = 0xFFFFFF;
+
+    @Getter @Setter
+    private HeaderMatcher headerMatcher = HeaderMatcher.excluding(List.of());
+    @Getter @Setter
+    private boolean includeQueryString = true;
+    @Getter @Setter
+    private boolean includePayload;
+    @Getter @Setter
+    private int maxPayloadLength = 1000;
+    @Getter @Setter
+    private double samplePercent = 100;
+    // 0 for no limit
+    @Getter
+    private int maxPerSecond;
+    @Getter @Setter
+    private int queueCapacity = 10_000;
+
+    private final Queue<RequestRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    // the current second << 24 | the number sampled within it
+    private final AtomicLong window = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public AsyncRequestLoggingFilter() {
+        writer = new Thread(this::drain, "request-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void setMaxPerSecond(int maxPerSecond) {
+        this.maxPerSecond = Math.min(maxPerSecond, MAX_PER_SECOND);
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // async dispatches are filtered to log a request once it has completed
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (isAsyncDispatch(request)) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                RequestRecord record = (RequestRecord)request.getAttribute(RECORD_ATTRIBUTE);
+                if (record != null && !isAsyncStarted(request)) {
+                    request.removeAttribute(RECORD_ATTRIBUTE);
+                    complete(record, response);
+                }
+            }
+            return;
+        }
+
+        if (!isLogging() || !sampled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        RequestRecord record = new RequestRecord(request, System.nanoTime());
+        HttpServletRequest requestToUse = includePayload ?
+                new ContentCachingRequestWrapper(request, maxPayloadLength) : request;
+        try {
+            chain.doFilter(requestToUse, response);
+        } finally {
+            if (includePayload) {
+                record.payload = ((ContentCachingRequestWrapper)requestToUse).getContentAsByteArray();
+            }
+            if (isAsyncStarted(requestToUse)) {
+                requestToUse.setAttribute(RECORD_ATTRIBUTE, record);
+            } else {
+                complete(record, response);
+            }
+        }
+    }
+
+    /*
+     * Whether requests are to be logged at all, checked before sampling.
+     */
+    protected boolean isLogging() {
+        return log.isDebugEnabled();
+    }
+
+    /*
+     * Called on the writer thread with each formatted record.
+     */
+    protected void write(String message) {
+        log.debug(message);
+    }
+
+    private boolean sampled() {
+        if (samplePercent < 100 && ThreadLocalRandom.current().nextDouble(100) >= samplePercent) {
+            return false;
+        }
+        if (maxPerSecond <= 0) {
+            return true;
+        }
+        long second = System.currentTimeMillis() / 1000;
+        while (true) {
+            long current = window.get();
+            long count = current >>> 24 == second ? current & MAX_PER_SECOND : 0;
+            if (count >= maxPerSecond) {
+                return false;
+            }
+            if (window.compareAndSet(current, second << 24 | (count + 1))) {
+                return true;
+            }
+        }
+    }
+
+    private void complete(RequestRecord record, HttpServletResponse response) {
+        record.nanos = System.nanoTime() - record.nanos;
+        record.status = response.getStatus();
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        queue.offer(record);
+    }
+
+    private void drain() {
+        long reportedDropped = 0;
+        while (running || !queue.isEmpty()) {
+            RequestRecord record = queue.poll();
+            if (record == null) {
+                long dropped = this.dropped.get();
+                if (dropped != reportedDropped) {
+                    log.warn("request log queue full, dropped {} records", dropped - reportedDropped);
+                    reportedDropped = dropped;
+                }
+                LockSupport.parkNanos(WRITER_IDLE_NANOS);
+                continue;
+            }
+            queued.decrementAndGet();
+            try {
+                write(record.format());
+            } catch (RuntimeException ex) {
+                log.warn("error writing request log record", ex);
+            }
+        }
+    }
+
+    // stops the writer once it has written what is queued
+    @Override
+    public void destroy() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * What is read from the request on the request thread: references to
+     * the request's strings, kept for the writer to format.
+     */
+    private final class RequestRecord {
+        private final String method;
+        private final String uri;
+        private final String queryString;
+        private final String client;
+        private final List<String> headers;
+        private byte[] payload;
+        private long nanos;
+        private int status;
+
+        private RequestRecord(HttpServletRequest request, long start) {
+            this.method = request.getMethod();
+            this.uri = request.getRequestURI();
+            this.queryString = includeQueryString ? request.getQueryString() : null;
+            this.client = request.getRemoteAddr();
+            this.headers = new ArrayList<>();
+            for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements(); ) {
+                String name = names.nextElement();
+                if (headerMatcher.test(name)) {
+                    headers.add(name);
+                    headers.add(request.getHeader(name));
+                }
+            }
+            this.nanos = start;
+        }
+
+        private String format() {
+            StringBuilder text = new StringBuilder(128)
+                    .append(method).append(' ').append(uri);
+            if (queryString != null) {
+                text.append('?').append(queryString);
+            }
+            text.append(", status=").append(status)
+                .append(", client=").append(client);
+            if (!headers.isEmpty()) {
+                text.append(", headers=[");
+                for (int i=0; i<headers.size(); i+=2) {
+                    text.append(i==0 ? "" : ", ").append(headers.get(i)).append(":\"").append(headers.get(i+1)).append('"');
+                }
+                text.append(']');
+            }
+            if (payload != null && payload.length > 0) {
+                text.append(", payload=").append(new String(payload, StandardCharsets.UTF_8));
+            }
+            return text.append(", ").append(TimeUnit.NANOSECONDS.toMicros(nanos)).append(" us").toString();
+        }
+    }
+
+    /*
+     * Selects header names using a single case-insensitive pattern compiled
+     * from the names or regular expressions given. The answer for each
+     * distinct name is cached, up to MAX_CACHED names.
+     */
+    public static final class HeaderMatcher implements Predicate<String> {
+        private static final int MAX_CACHED = 1024;
+
+        private final Pattern pattern;
+        private final boolean include;
+        private final Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+
+        private HeaderMatcher(Collection<String> patterns, boolean include) {
+            this.pattern = patterns.isEmpty() ? null :
+                    Pattern.compile(patterns.stream().map(p -> "(?:" + p + ")").collect(Collectors.joining("|")),
+                                    Pattern.CASE_INSENSITIVE);
+            this.include = include;
+        }
+
+        public static HeaderMatcher including(Collection<String> patterns) {
+            return new HeaderMatcher(patterns, true);
+        }
+
+        public static HeaderMatcher excluding(Collection<String> patterns) {
+            return new HeaderMatcher(patterns, false);
+        }
+
+        @Override
+        public boolean test(String name) {
+            Boolean decision = decisions.get(name);
+            if (decision == null) {
+                boolean matches = pattern != null && pattern.matcher(name).matches();
+                decision = matches == include;
+                if (decisions.size() < MAX_CACHED) {
+                    decisions.put(name, decision);
+                }
+            }
+            return decision;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package info.ejava.examples.app.common.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.ResourceUtils;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import reactor.netty.http.Http2SslContextSpec;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.tcp.SslProvider;
+
+/*
+ * Builds RestClient and WebClient instances for the server a ServerConfig
+ * describes. Create one factory per server and keep it: the clients it
+ * builds share its connection pools, so calls reuse kept-alive connections
+ * instead of paying a TCP and TLS handshake each.
+ *
+ * - RestClient runs on a single JDK HttpClient, which pools connections
+ *   and negotiates HTTP/2 over TLS, falling back to HTTP/1.1.
+ * - WebClient runs on a Reactor Netty ConnectionProvider of up to
+ *   maxConnections, negotiating HTTP/2 over TLS in the same way. Idle
+ *   connections are closed after IDLE_TIMEOUT.
+ * - For https, the trustStore is loaded once into a TrustManagerFactory
+ *   used by both; without one the JVM's default trust is used.
+ *
+ * Plain http is always HTTP/1.1, since servers rarely accept h2c.
+ */
+@Slf4j
+public class HttpClientFactory implements AutoCloseable {
+
+    public static final Duration IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+    @Getter
+    private final ServerConfig serverConfig;
+    private final TrustManagerFactory trust;
+    private final HttpClient httpClient;
+    private final ConnectionProvider connections;
+    private final reactor.netty.http.client.HttpClient nettyClient;
+
+    public HttpClientFactory(ServerConfig serverConfig) {
+        this.serverConfig = serverConfig.build();
+        this.trust = serverConfig.isHttps() && serverConfig.getTrustStore() != null ?
+                loadTrustStore(serverConfig.getTrustStore(), serverConfig.getTrustStorePassword()) : null;
+        this.httpClient = buildHttpClient();
+        this.connections = ConnectionProvider.builder("gestures-" + serverConfig.getHost() + "-" + serverConfig.getPort())
+                .maxConnections(serverConfig.getMaxConnections())
+                .maxIdleTime(IDLE_TIMEOUT)
+                .pendingAcquireTimeout(serverConfig.getConnectTimeout())
+                .build();
+        this.nettyClient = buildNettyClient();
+    }
+
+    private static TrustManagerFactory loadTrustStore(String trustStore, char[] password) {
+        try (InputStream in = ResourceUtils.getURL(trustStore).openStream()) {
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(in, password);
+            TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trust.init(keyStore);
+            log.debug("loaded trustStore {}", trustStore);
+            return trust;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("unable to read trustStore " + trustStore, ex);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("unable to load trustStore " + trustStore, ex);
+        }
+    }
+
+    private HttpClient buildHttpClient() {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(serverConfig.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .version(serverConfig.isHttps() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+        if (trust != null) {
+            try {
+                SSLContext sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, trust.getTrustManagers(), null);
+                builder.sslContext(sslContext);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("unable to create TLS context", ex);
+            }
+        }
+        return builder.build();
+    }
+
+    private reactor.netty.http.client.HttpClient buildNettyClient() {
+        reactor.netty.http.client.HttpClient client = reactor.netty.http.client.HttpClient.create(connections)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int)serverConfig.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(serverConfig.getResponseTimeout())
+                .keepAlive(true);
+        if (!serverConfig.isHttps()) {
+            return client.protocol(HttpProtocol.HTTP11);
+        }
+        Http2SslContextSpec tls = Http2SslContextSpec.forClient();
+        if (trust != null) {
+            tls = tls.configure(builder -> builder.trustManager(trust));
+        }
+        // typed as the generic spec, as the ProtocolSslContextSpec overload of sslContext is deprecated
+        SslProvider.GenericSslContextSpec<?> spec = tls;
+        return client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                     .secure(ssl -> ssl.sslContext(spec));
+    }
+
+    /*
+     * A builder for further configuration, with the base URL, pooled
+     * connections and response timeout already set.
+     */
+    public RestClient.Builder restClientBuilder() {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(serverConfig.getResponseTimeout());
+        return RestClient.builder()
+                .baseUrl(serverConfig.getBaseUrl().toString())
+                .requestFactory(requestFactory);
+    }
+
+    public RestClient restClient() {
+        return restClientBuilder().build();
+    }
+
+    public WebClient.Builder webClientBuilder() {
+        return WebClient.builder()
+                .baseUrl(serverConfig.getBaseUrl().toString())
+                .clientConnector(new ReactorClientHttpConnector(nettyClient));
+    }
+
+    public WebClient webClient() {
+        return webClientBuilder().build();
+    }
+
+    // closes the WebClient connections; the JDK client's close with the JVM
+    @Override
+    public void close() {
+        connections.dispose();
+    }
+}
@@ -1,72 +1,227 @@
 package info.ejava.examples.app.common.web;
 
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpRequest;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.client.ClientHttpRequestExecution;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.ClientHttpResponse;
 
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Logs each exchange at DEBUG without reading the response for the caller.
+ * The response body is teed: the first maxBodyLength bytes the caller
+ * reads are copied into a pooled buffer, and the exchange is logged once
+ * the caller reaches the end of the body or closes the response. A body
+ * the caller does not read is logged as not read, and is left for the
+ * caller to read -- even from a request factory that does not buffer.
+ *
+ * With DEBUG off the response is returned as executed, without a wrapper.
+ */
 @Slf4j
 public class RestTemplateLoggingFilter  implements ClientHttpRequestInterceptor {
 
+    public static final int DEFAULT_MAX_BODY_LENGTH = 1024;
+    private static final int MAX_POOLED = 64;
+
+    private final int maxBodyLength;
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public RestTemplateLoggingFilter() {
+        this(DEFAULT_MAX_BODY_LENGTH);
+    }
+
+    public RestTemplateLoggingFilter(int maxBodyLength) {
+        this.maxBodyLength = maxBodyLength;
+    }
+
     @Override
-    public ClientHttpResponse intercept(HttpRequest request, byte[] body,  
-                                       ClientHttpRequestExecution execution) throws IOException 
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                       ClientHttpRequestExecution execution) throws IOException
     {
         ClientHttpResponse response = execution.execute(request, body);
-        if(log.isDebugEnabled()){
-            HttpMethod method = request.getMethod();
-            URI uri = request.getURI();
-            HttpStatusCode statusCode = response.getStatusCode();
-            String requestBody = new String(body);
-            String responseBody = getResponseBody(response);
-
-            // //https://stackoverflow.com/q/1883345
-            String message = String.format("%n%s %s, returned %s / %s%n sent: %s%n%s%n received: %s%n%s", method, uri, HttpStatus.resolve(statusCode.value()), statusCode.value(),
-            request.getHeaders(), requestBody, response.getHeaders(), responseBody);
-
-            log.debug(message);
-            
+        return isLogging() ? new TeeResponse(request, body, response) : response;
+    }
+
+    /*
+     * Whether exchanges are logged, checked once per exchange.
+     */
+    protected boolean isLogging() {
+        return log.isDebugEnabled();
+    }
+
+    protected void write(String message) {
+        log.debug(message);
+    }
+
+    private byte[] takeBuffer() {
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            return new byte[maxBodyLength];
         }
-        return response;
+        pooled.decrementAndGet();
+        return buffer;
     }
 
-    protected String getResponseBody(ClientHttpResponse response){
-        try{
-            return readString(response.getBody());
-        } catch(Exception ex){
-            // may fail if having trouble reading stream
-            return "";
+    private void releaseBuffer(byte[] buffer) {
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
         }
     }
 
+    private static void appendBody(StringBuilder text, byte[] body, int length, long total) {
+        text.append(new String(body, 0, length, StandardCharsets.UTF_8));
+        if (total > length) {
+            text.append("... (").append(total).append(" bytes)");
+        }
+    }
 
-    /**
-     * @see https://stackoverflow.com/questions/309424/how-do-i-read-convert-an-inputstream-into-a-string-in-java
-     * @param inputStream
-     * @return input stream as one string
-     */
+    private final class TeeResponse implements ClientHttpResponse {
+        private final HttpRequest request;
+        private final byte[] requestBody;
+        private final ClientHttpResponse response;
+        private byte[] captured;
+        private int capturedLength;
+        private long received;
+        private boolean read;
+        private boolean logged;
+        private InputStream body;
+
+        private TeeResponse(HttpRequest request, byte[] requestBody, ClientHttpResponse response) {
+            this.request = request;
+            this.requestBody = requestBody;
+            this.response = response;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                read = true;
+                captured = takeBuffer();
+                body = new TeeInputStream(response.getBody());
+            }
+            return body;
+        }
 
-     @SneakyThrows
-     private String readString(InputStream inputStream){
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        byte[] buffer =new byte[1024];
-        int length;
-        while((length = inputStream.read(buffer)) != -1)
-        {
-            result.write(buffer,0,length);
+        @Override
+        public void close() {
+            try {
+                log();
+            } finally {
+                response.close();
+            }
         }
-        return result.toString("UTF-8");
-     }
 
+        private void capture(byte[] bytes, int offset, int length) {
+            int copy = Math.min(length, captured.length - capturedLength);
+            if (copy > 0) {
+                System.arraycopy(bytes, offset, captured, capturedLength, copy);
+                capturedLength += copy;
+            }
+            received += length;
+        }
+
+        private void log() {
+            if (logged) {
+                return;
+            }
+            logged = true;
+            try {
+                StringBuilder text = new StringBuilder(256).append(System.lineSeparator())
+                        .append(request.getMethod()).append(' ').append(request.getURI());
+                try {
+                    text.append(", returned ").append(response.getStatusCode().value());
+                } catch (IOException ex) {
+                    text.append(", returned ").append(ex);
+                }
+                text.append(System.lineSeparator()).append(" sent: ").append(request.getHeaders())
+                    .append(System.lineSeparator());
+                appendBody(text, requestBody, Math.min(requestBody.length, maxBodyLength), requestBody.length);
+                text.append(System.lineSeparator()).append(" received: ").append(response.getHeaders())
+                    .append(System.lineSeparator());
+                if (read) {
+                    appendBody(text, captured, capturedLength, received);
+                } else {
+                    text.append("(body not read)");
+                }
+                write(text.toString());
+            } finally {
+                if (captured != null) {
+                    releaseBuffer(captured);
+                    captured = null;
+                }
+            }
+        }
+
+        private final class TeeInputStream extends FilterInputStream {
+            private TeeInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                if (value < 0) {
+                    log();
+                } else if (!logged) {
+                    if (capturedLength < captured.length) {
+                        captured[capturedLength++] = (byte)value;
+                    }
+                    received += 1;
+                }
+                return value;
+            }
 
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int count = super.read(bytes, offset, length);
+                if (count < 0) {
+                    log();
+                } else if (!logged) {
+                    capture(bytes, offset, count);
+                }
+                return count;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                received += skipped;
+                return skipped;
+            }
+
+            // a mark/reset would count bytes twice
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        }
+    }
 }
@@ -8,10 +8,13 @@ import lombok.With;
 import jakarta.annotation.PostConstruct;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
 
 /**
  * This class is used to represent a configuration of an external
- * connection that defaults to http://localhost:8080
+ * connection that defaults to http://localhost:8080. HttpClientFactory
+ * builds pooled clients from it, using the timeouts and connection limit
+ * given here.
  */
 @Data
 @With
@@ -24,9 +27,19 @@ public class ServerConfig {
     private URI baseUrl;
     private String trustStore;
     private char[] trustStorePassword;
+    private Duration connectTimeout;
+    private Duration responseTimeout;
+    private int maxConnections;
+
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_RESPONSE_TIMEOUT = Duration.ofSeconds(30);
+    public static final int DEFAULT_MAX_CONNECTIONS = 100;
 
     @PostConstruct
     public ServerConfig build() {
+        connectTimeout = connectTimeout == null ? DEFAULT_CONNECT_TIMEOUT : connectTimeout;
+        responseTimeout = responseTimeout == null ? DEFAULT_RESPONSE_TIMEOUT : responseTimeout;
+        maxConnections = maxConnections == 0 ? DEFAULT_MAX_CONNECTIONS : maxConnections;
         if (baseUrl==null) {
             scheme = scheme == null ? "http" : scheme.toLowerCase();
             host = host == null ? "localhost" : host;
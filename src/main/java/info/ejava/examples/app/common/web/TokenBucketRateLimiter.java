@@ -0,0 +1,91 @@
+package info.ejava.examples.app.common.web;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+ * A token bucket per key, refilled at ratePerSecond up to burst tokens.
+ *
+ * Each bucket is a single AtomicLong holding the time its tokens will all
+ * have been refilled (the generic cell rate algorithm). Taking a token is
+ * one compare-and-set pushing that time one token's interval later, so
+ * buckets need no locks and no refill task. A bucket is full once that
+ * time has passed.
+ *
+ * Buckets left full for idleTimeout are evicted by a sweep made by one of
+ * the calls every idleTimeout / 2. A call racing with the eviction of its
+ * bucket may go uncharged, allowing that key at most one extra burst.
+ */
+public class TokenBucketRateLimiter {
+
+    private final long tokenNanos;
+    // how far ahead of now the refill time may be while a token remains
+    private final long burstNanos;
+    private final long idleNanos;
+    private final LongSupplier clock;
+    private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+
+    public TokenBucketRateLimiter(double ratePerSecond, int burst, long idleTimeoutNanos) {
+        this(ratePerSecond, burst, idleTimeoutNanos, System::nanoTime);
+    }
+
+    public TokenBucketRateLimiter(double ratePerSecond, int burst, long idleTimeoutNanos, LongSupplier clock) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("ratePerSecond and burst must be positive");
+        }
+        this.tokenNanos = Math.max(1, (long)(TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.burstNanos = (burst - 1) * tokenNanos;
+        this.idleNanos = idleTimeoutNanos;
+        this.clock = clock;
+        this.nextSweep = new AtomicLong(clock.getAsLong() + idleNanos / 2);
+    }
+
+    /**
+     * Takes a token from the bucket of key.
+     * @return 0 if a token was taken, otherwise the nanos until one will be
+     * available
+     */
+    public long tryAcquire(String key) {
+        long now = clock.getAsLong();
+        sweep(now);
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            AtomicLong added = new AtomicLong(now);
+            bucket = buckets.putIfAbsent(key, added);
+            if (bucket == null) {
+                bucket = added;
+            }
+        }
+        while (true) {
+            long refilled = bucket.get();
+            long wait = refilled - burstNanos - now;
+            if (wait > 0) {
+                return wait;
+            }
+            long next = (refilled - now < 0 ? now : refilled) + tokenNanos;
+            if (bucket.compareAndSet(refilled, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public int getKeys() {
+        return buckets.size();
+    }
+
+    private void sweep(long now) {
+        long sweepAt = nextSweep.get();
+        if (now - sweepAt < 0 || !nextSweep.compareAndSet(sweepAt, now + idleNanos / 2)) {
+            return;
+        }
+        buckets.forEach((key, bucket) -> {
+            if (now - bucket.get() > idleNanos) {
+                buckets.remove(key, bucket);
+            }
+        });
+    }
+}
@@ -0,0 +1,28 @@
+package info.ejava.examples.app.common.web;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Spring Boot silently ignores spring.threads.virtual.enabled on a JVM
+ * older than 21 and keeps the platform thread pool. This makes asking for
+ * virtual threads on such a JVM a startup failure instead, so a deployment
+ * never runs in a different execution mode than it was configured for.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name="spring.threads.virtual.enabled", havingValue="true")
+@Slf4j
+public class VirtualThreadsConfiguration {
+
+    public static final int MIN_JAVA_VERSION = 21;
+
+    public VirtualThreadsConfiguration() {
+        if (Runtime.version().feature() < MIN_JAVA_VERSION) {
+            throw new IllegalStateException(String.format(
+                    "virtual threads require Java %d or later, running %s", MIN_JAVA_VERSION, Runtime.version()));
+        }
+        log.info("request handling will run on virtual threads");
+    }
+}
@@ -4,8 +4,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import org.springframework.web.filter.CommonsRequestLoggingFilter;
-
 import jakarta.servlet.Filter;
 
 public class WebLoggingFilter {
@@ -19,16 +17,11 @@ public class WebLoggingFilter {
             return logFilter(DEFAULT_EXCLUDES);
         }
         public static Filter logFilter(List<String> excludes) {
-            CommonsRequestLoggingFilter filter = new CommonsRequestLoggingFilter();
+            AsyncRequestLoggingFilter filter = new AsyncRequestLoggingFilter();
             filter.setIncludeQueryString(true);
             filter.setIncludePayload(true);
             filter.setMaxPayloadLength(2000);
-            filter.setBeforeMessagePrefix(System.lineSeparator());
-            filter.setAfterMessagePrefix(System.lineSeparator());
-            filter.setIncludeHeaders(true);
-            filter.setHeaderPredicate(h->{
-                return !excludes.stream().filter(e->h.matches(e)).findFirst().isPresent();
-            });
+            filter.setHeaderMatcher(AsyncRequestLoggingFilter.HeaderMatcher.excluding(excludes));
             return filter;
         }
     
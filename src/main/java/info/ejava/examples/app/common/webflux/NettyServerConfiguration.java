@@ -0,0 +1,21 @@
+package info.ejava.examples.app.common.webflux;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * Tomcat is on the classpath for the Spring MVC API and would otherwise
+ * be chosen to host WebFlux as well. This places reactive mode on
+ * Reactor Netty's event loop.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.REACTIVE)
+public class NettyServerConfiguration {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
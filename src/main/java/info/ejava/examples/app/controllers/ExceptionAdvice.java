@@ -1,13 +1,19 @@
 package info.ejava.examples.app.controllers;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import info.ejava.examples.app.svc.ClientErrorException.GoneException;
 import info.ejava.examples.app.svc.ClientErrorException.InvalidInputException;
 import info.ejava.examples.app.svc.ClientErrorException.NotFoundException;
+import info.ejava.examples.app.svc.ClientErrorException.PreconditionFailedException;
 import info.ejava.examples.app.svc.ServerErrorException.InternalErrorException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 
 
@@ -17,30 +23,78 @@ import lombok.extern.slf4j.Slf4j;
  * primarily because we retain full control over the response and response headers 
  * returned to the caller
  * 
+ * Each handler counts what it handles in gestures.errors, tagged with the
+ * exception handled and the status returned. The counters are registered
+ * up front so that handling an error does not look them up.
  */
 
 @RestControllerAdvice(basePackageClasses=GesturesController.class)
 @Slf4j
 public class ExceptionAdvice {
+    public static final String ERRORS = "gestures.errors";
+
+    private final Counter notFound;
+    private final Counter invalidInput;
+    private final Counter gone;
+    private final Counter preconditionFailed;
+    private final Counter internalError;
+    private final Counter unexpected;
+
+    public ExceptionAdvice() {
+        this(new SimpleMeterRegistry());
+    }
+
+    @Autowired
+    public ExceptionAdvice(MeterRegistry registry) {
+        notFound = counter(registry, NotFoundException.class, HttpStatus.NOT_FOUND);
+        invalidInput = counter(registry, InvalidInputException.class, HttpStatus.UNPROCESSABLE_ENTITY);
+        gone = counter(registry, GoneException.class, HttpStatus.GONE);
+        preconditionFailed = counter(registry, PreconditionFailedException.class, HttpStatus.PRECONDITION_FAILED);
+        internalError = counter(registry, InternalErrorException.class, HttpStatus.INTERNAL_SERVER_ERROR);
+        unexpected = counter(registry, RuntimeException.class, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private static Counter counter(MeterRegistry registry, Class<? extends Exception> exception, HttpStatus status) {
+        return Counter.builder(ERRORS)
+                      .tag("exception", exception.getSimpleName())
+                      .tag("status", Integer.toString(status.value()))
+                      .register(registry);
+    }
 
     @ExceptionHandler(NotFoundException.class)
     public ResponseEntity<String> handle(NotFoundException ex){
+        notFound.increment();
             return buildResponse(HttpStatus.NOT_FOUND, ex.getMessage());
     }
 
     @ExceptionHandler(InvalidInputException.class)
-    public ResponseEntity<String> handle(InvalidInputException ex){        
+    public ResponseEntity<String> handle(InvalidInputException ex){
+        invalidInput.increment();
         return buildResponse(HttpStatus.UNPROCESSABLE_ENTITY, ex.getMessage());
     }
 
+    @ExceptionHandler(GoneException.class)
+    public ResponseEntity<String> handle(GoneException ex){
+        gone.increment();
+        return buildResponse(HttpStatus.GONE, ex.getMessage());
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<String> handle(PreconditionFailedException ex){
+        preconditionFailed.increment();
+        return buildResponse(HttpStatus.PRECONDITION_FAILED, ex.getMessage());
+    }
+
     @ExceptionHandler(InternalErrorException.class)
     public ResponseEntity<String> handle(InternalErrorException ex){
+        internalError.increment();
         log.warn("{}", ex.getMessage(), ex);
         return buildResponse(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
     }
 
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<String> handle(RuntimeException ex){
+        unexpected.increment();
         log.warn("{}", ex.getMessage(), ex);
         String text = String.format("unexpected error executing request : %s",ex.toString());
         return buildResponse(HttpStatus.INTERNAL_SERVER_ERROR, text);
@@ -0,0 +1,102 @@
+package info.ejava.examples.app.controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import info.ejava.examples.app.api.GestureBinary;
+import info.ejava.examples.app.svc.GestureService;
+
+/*
+ * Writes a GestureBody, or a List<String> of gestures, as
+ * application/x-gestures (see GestureBinary). A GestureBody is written
+ * from its parts as one gesture, like GestureBodyHttpMessageConverter.
+ */
+@Component
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.SERVLET)
+public class GestureBinaryHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public GestureBinaryHttpMessageConverter() {
+        super(GestureBinary.GESTURES);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return GestureService.GestureBody.class == clazz;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return (supports(clazz) || isStringList(type)) && canWrite(mediaType);
+    }
+
+    private static boolean isStringList(Type type) {
+        return type instanceof ParameterizedType parameterized
+                && parameterized.getRawType() instanceof Class<?> raw && List.class.isAssignableFrom(raw)
+                && parameterized.getActualTypeArguments()[0] == String.class;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("gestures are only written as " + GestureBinary.GESTURES_VALUE, inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("gestures are only written as " + GestureBinary.GESTURES_VALUE, inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(Object value, MediaType contentType) {
+        if (value instanceof GestureService.GestureBody body) {
+            int length = body.getContentLength();
+            return (long)(length + varintSize(length));
+        }
+        return null;
+    }
+
+    private static int varintSize(int length) {
+        return (32 - Integer.numberOfLeadingZeros(length | 1) + 6) / 7;
+    }
+
+    @Override
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        OutputStream out = outputMessage.getBody();
+        if (value instanceof GestureService.GestureBody body) {
+            GestureBinary.writeLength(out, body.getContentLength());
+            out.write(body.getGesture());
+            if (body.getTarget() != null) {
+                out.write(GestureService.GestureBody.SEPARATOR);
+                out.write(body.getTarget());
+            }
+        } else {
+            // the length bytes are written one at a time, so are gathered before a compressing stream
+            BufferedOutputStream buffered = new BufferedOutputStream(out, 8192);
+            for (Object gesture: (List<?>)value) {
+                GestureBinary.write(buffered, (String)gesture);
+            }
+            buffered.flush();
+        }
+    }
+}
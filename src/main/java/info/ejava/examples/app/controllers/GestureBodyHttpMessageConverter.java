@@ -0,0 +1,61 @@
+package info.ejava.examples.app.controllers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import info.ejava.examples.app.svc.GestureService;
+
+/*
+ * Writes a GestureBody as text/plain by copying each of its parts straight
+ * into the response buffer. Spring Boot adds HttpMessageConverter beans
+ * ahead of its defaults. Other media types are left to their own
+ * converters, such as GestureBinaryHttpMessageConverter.
+ */
+@Component
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.SERVLET)
+public class GestureBodyHttpMessageConverter extends AbstractHttpMessageConverter<GestureService.GestureBody> {
+
+    public GestureBodyHttpMessageConverter() {
+        super(StandardCharsets.UTF_8, MediaType.TEXT_PLAIN);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return GestureService.GestureBody.class == clazz;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected GestureService.GestureBody readInternal(Class<? extends GestureService.GestureBody> clazz,
+                                                      HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("gesture bodies are only written", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(GestureService.GestureBody body, MediaType contentType) {
+        return (long)body.getContentLength();
+    }
+
+    @Override
+    protected void writeInternal(GestureService.GestureBody body, HttpOutputMessage outputMessage) throws IOException {
+        OutputStream out = outputMessage.getBody();
+        out.write(body.getGesture());
+        if (body.getTarget() != null) {
+            out.write(GestureService.GestureBody.SEPARATOR);
+            out.write(body.getTarget());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package info.ejava.examples.app.controllers;
+
+import java.time.Duration;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.svc.ClientErrorException;
+import info.ejava.examples.app.svc.GestureChangeFeed;
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureTombstones;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Lets clients follow changes to the gestures rather than re-reading them.
+ * Both forms start after a change sequence; without one they start from
+ * now. A sequence that has fallen out of the feed is answered with 410,
+ * and the client should re-read the store and follow from the latest
+ * sequence.
+ *
+ * - application/json long-polls: the changes after the sequence are
+ *   returned as soon as there is one, or an empty page after the timeout.
+ * - text/event-stream sends each change as an event whose id is its
+ *   sequence, so a reconnecting EventSource resumes from Last-Event-ID.
+ *   A subscriber that falls too far behind receives an "expired" event and
+ *   the stream ends.
+ *
+ * The tombstones of recent deletes (see GestureTombstones) are listed in
+ * pages, for a replicating peer to compare with its own gestures.
+ *
+ * Spring MVC and WebFlux both adapt the Mono/Flux results, so this
+ * controller serves either stack. Under Spring MVC a stream is also ended
+ * by the container's async request timeout, and the client reconnects.
+ */
+@RestController
+@RequiredArgsConstructor
+public class GestureChangesController {
+
+    public static final int MAX_CHANGES = 1000;
+    // kept below Tomcat's default 30 second async request timeout
+    public static final int MAX_TIMEOUT_SECONDS = 25;
+    public static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private final GestureChangeFeed changes;
+    private final GestureTombstones tombstones;
+
+    @RequestMapping(path=GestureApi.GESTURE_CHANGES_PATH,
+                    method=RequestMethod.GET,
+                    produces={MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<GestureService.GestureChangePage>> pollChanges(
+                                @RequestParam(name="after", defaultValue="-1") long after,
+                                @RequestParam(name="limit", defaultValue="100") int limit,
+                                @RequestParam(name="timeout", defaultValue="20") int timeout) {
+        if (limit < 1 || limit > MAX_CHANGES) {
+            throw new ClientErrorException.InvalidInputException("limit [%d] must be between 1 and %d", limit, MAX_CHANGES);
+        }
+        if (timeout < 0 || timeout > MAX_TIMEOUT_SECONDS) {
+            throw new ClientErrorException.InvalidInputException("timeout [%d] must be between 0 and %d seconds",
+                    timeout, MAX_TIMEOUT_SECONDS);
+        }
+        return changes.poll(after, limit, Duration.ofSeconds(timeout))
+                .map(page -> ResponseEntity.status(HttpStatus.OK).body(page));
+    }
+
+    @RequestMapping(path=GestureApi.GESTURE_TOMBSTONES_PATH,
+                    method=RequestMethod.GET,
+                    produces={MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<GestureService.GesturePage> getTombstones(
+                                @RequestParam(name="limit", defaultValue="100") int limit,
+                                @RequestParam(name="continue", required=false) String continuation) {
+        return ResponseEntity.status(HttpStatus.OK)
+                                .body(tombstones.page(continuation, limit));
+    }
+
+    @RequestMapping(path=GestureApi.GESTURE_CHANGES_PATH,
+                    method=RequestMethod.GET,
+                    produces={MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<ServerSentEvent<GestureService.GestureChange>> followChanges(
+                                @RequestParam(name="after", defaultValue="-1") long after,
+                                @RequestHeader(name=LAST_EVENT_ID, required=false) Long lastEventId) {
+        return changes.follow(lastEventId != null ? lastEventId : after)
+                .map(change -> ServerSentEvent.builder(change)
+                                    .id(Long.toString(change.getSequence()))
+                                    .event(change.getType().name())
+                                    .build())
+                .onErrorResume(ClientErrorException.GoneException.class,
+                        ex -> Mono.just(ServerSentEvent.<GestureService.GestureChange>builder()
+                                    .event("expired")
+                                    .comment(ex.getMessage())
+                                    .build()));
+    }
+}
@@ -0,0 +1,115 @@
+package info.ejava.examples.app.controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeTypeUtils;
+
+import info.ejava.examples.app.api.GestureBinary;
+import info.ejava.examples.app.svc.ClientErrorException;
+import info.ejava.examples.app.svc.GestureVersion;
+
+/*
+ * Evaluates conditional request headers against the version of a gesture,
+ * for both forms of the API. The version is the gesture's strong ETag and,
+ * truncated to whole seconds, its Last-Modified time. An unknown gesture
+ * has version 0 and matches nothing.
+ *
+ * A gesture served as application/x-gestures has other bytes than as
+ * text, so its ETag carries a -gestures suffix: a tag of one
+ * representation never validates the other for a GET. If-Match, which
+ * guards changes to the gesture rather than a representation, accepts
+ * either.
+ */
+final class GesturePreconditions {
+
+    private GesturePreconditions() {
+    }
+
+    private static final String GESTURES_SUFFIX = "-gestures";
+
+    static String eTag(long version) {
+        return "\"" + Long.toHexString(version) + "\"";
+    }
+
+    static String eTag(long version, MediaType representation) {
+        return GestureBinary.GESTURES.equalsTypeAndSubtype(representation) ?
+                "\"" + Long.toHexString(version) + GESTURES_SUFFIX + "\"" : eTag(version);
+    }
+
+    /*
+     * The representation that content negotiation will write for the
+     * request's Accept, selected the way Spring MVC selects it: the more
+     * specific of each compatible pair, by quality and then specificity.
+     * @return the first of producible when nothing else is preferred
+     */
+    static MediaType representation(HttpHeaders request, MediaType... producible) {
+        List<MediaType> accept = request.getAccept();
+        List<MediaType> compatible = new ArrayList<>();
+        for (MediaType acceptable: accept) {
+            for (MediaType candidate: producible) {
+                if (acceptable.isCompatibleWith(candidate)) {
+                    compatible.add(acceptable.isWildcardType() || acceptable.isWildcardSubtype() ?
+                            candidate.copyQualityValue(acceptable) : acceptable);
+                }
+            }
+        }
+        MimeTypeUtils.sortBySpecificity(compatible);
+        for (MediaType selected: compatible) {
+            if (selected.isConcrete() && selected.getQualityValue() > 0) {
+                return new MediaType(selected.getType(), selected.getSubtype());
+            }
+        }
+        return producible[0];
+    }
+
+    static long lastModified(long version) {
+        return GestureVersion.toEpochMilli(version);
+    }
+
+    /*
+     * If-None-Match, using weak comparison, or If-Modified-Since when no
+     * If-None-Match was sent.
+     */
+    static boolean notModified(HttpHeaders request, long version) {
+        return notModified(request, version, MediaType.TEXT_PLAIN);
+    }
+
+    static boolean notModified(HttpHeaders request, long version, MediaType representation) {
+        if (version == 0) {
+            return false;
+        }
+        List<String> ifNoneMatch = request.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            String eTag = eTag(version, representation);
+            for (String tag: ifNoneMatch) {
+                if ("*".equals(tag) || tag.equals(eTag) || tag.equals("W/" + eTag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = request.getIfModifiedSince();
+        return ifModifiedSince >= 0 && lastModified(version) / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /*
+     * If-Match, using strong comparison.
+     * @return version, when it matches
+     */
+    static long ifMatch(HttpHeaders request, String gestureType, long version) {
+        if (version != 0) {
+            String eTag = eTag(version);
+            String gesturesETag = eTag(version, GestureBinary.GESTURES);
+            for (String tag: request.getIfMatch()) {
+                if ("*".equals(tag) || tag.equals(eTag) || tag.equals(gesturesETag)) {
+                    return version;
+                }
+            }
+        }
+        throw ClientErrorException.PreconditionFailedException.stackless(
+                "gesture type [%s] does not match %s", gestureType, request.getIfMatch());
+    }
+}
@@ -1,21 +1,33 @@
 package info.ejava.examples.app.controllers;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
 import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.api.GestureBinary;
 import info.ejava.examples.app.svc.GestureService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,10 +40,17 @@ import lombok.extern.slf4j.Slf4j;
  * The Web MVC mappings have been assigned to the interface
  */
 @RestController
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.SERVLET)
 @Slf4j
 @RequiredArgsConstructor
 public class GesturesController implements  GestureApi {
 
+    // lines are terminated explicitly rather than separated by Jackson's default space
+    private static final JsonFactory JSON = new JsonFactoryBuilder()
+                                            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+                                            .rootValueSeparator((String)null)
+                                            .build();
+
     // Simplistic business service
     private final GestureService gestures;
 
@@ -59,13 +78,36 @@ public class GesturesController implements  GestureApi {
         return response.body(result.getPreviousValue());
     }
 
-    @RequestMapping(path=GESTURE_PATH, 
-                    method=RequestMethod.GET, 
+    /*
+     * Replaces the gesture only if it still matches If-Match, reporting its
+     * new ETag. A client that lost the race receives 412 rather than
+     * silently overwriting the other change.
+     */
+    @RequestMapping(path=GESTURE_PATH,
+                    method={RequestMethod.POST,RequestMethod.PUT},
+                    headers=HttpHeaders.IF_MATCH,
+                    consumes={MediaType.TEXT_PLAIN_VALUE},
                     produces={MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<String> replaceGesture(@PathVariable(name="gestureType") String gestureType,
+                                                 @RequestBody String gesture,
+                                                 @RequestHeader HttpHeaders headers) {
+        long expectedVersion = GesturePreconditions.ifMatch(headers, gestureType, gestures.getGestureVersion(gestureType));
+
+        // business method
+        long version = gestures.replaceGesture(gestureType, gesture, expectedVersion);
+
+        return ResponseEntity.noContent()
+                            .eTag(GesturePreconditions.eTag(version))
+                            .lastModified(GesturePreconditions.lastModified(version))
+                            .build();
+    }
+
+    /*
+     * The GestureApi form, for callers within the application. Requests
+     * are served by getGestureBody, which returns the same text.
+     */
     @Override
-    public ResponseEntity<String> getGesture(@PathVariable(name="gestureType")String gestureType,
-                                             @RequestParam(name="target", required=false)
-                                             String target) {
+    public ResponseEntity<String> getGesture(String gestureType, String target) {
         // business method
         String result = gestures.getGesture(gestureType, target);
 
@@ -76,12 +118,157 @@ public class GesturesController implements  GestureApi {
                             .body(result);
     }
 
-    @RequestMapping(path=GESTURES_PATH+"/all" , method=RequestMethod.GET)
+    /*
+     * Returns the gesture as its stored bytes, written together with the
+     * target by GestureBodyHttpMessageConverter, rather than as a String
+     * that is built for the request and then encoded again. A request whose
+     * If-None-Match/If-Modified-Since is still current is answered with 304
+     * from the version alone, without reading the value. An unknown
+     * gestureType is answered with 404 directly rather than by throwing
+     * NotFoundException to ExceptionAdvice. Also produced as
+     * application/x-gestures when asked for, under its own ETag (see
+     * GesturePreconditions), and so Vary: Accept.
+     */
+    @RequestMapping(path=GESTURE_PATH,
+                    method=RequestMethod.GET,
+                    produces={MediaType.TEXT_PLAIN_VALUE, GestureBinary.GESTURES_VALUE})
+    public ResponseEntity<?> getGestureBody(
+                                             @PathVariable(name="gestureType")String gestureType,
+                                             @RequestParam(name="target", required=false)
+                                             String target,
+                                             @RequestHeader HttpHeaders headers) {
+        String location = ServletUriComponentsBuilder.fromCurrentRequest().build().toUriString();
+        MediaType representation = GesturePreconditions.representation(headers, MediaType.TEXT_PLAIN, GestureBinary.GESTURES);
+
+        long version = gestures.getGestureVersion(gestureType);
+        if (GesturePreconditions.notModified(headers, version, representation)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                .header(HttpHeaders.CONTENT_LOCATION, location)
+                                .varyBy(HttpHeaders.ACCEPT)
+                                .eTag(GesturePreconditions.eTag(version, representation))
+                                .lastModified(GesturePreconditions.lastModified(version))
+                                .build();
+        }
+
+        // business method
+        GestureService.GestureBody result = gestures.findGestureBody(gestureType, target).orElse(null);
+        if (result == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                .contentType(MediaType.TEXT_PLAIN)
+                                .body("gesture type [" + gestureType + "] not found");
+        }
+
+        return ResponseEntity.status(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_LOCATION, location)
+                            .varyBy(HttpHeaders.ACCEPT)
+                            .eTag(GesturePreconditions.eTag(result.getVersion(), representation))
+                            .lastModified(GesturePreconditions.lastModified(result.getVersion()))
+                            .body(result);
+    }
+
+    /*
+     * Returns every gesture value in a single list. Retained for existing
+     * clients; large stores should be read using getGestures or streamGestures.
+     * application/x-gestures is a more compact alternative to JSON.
+     */
+    @RequestMapping(path=GESTURES_PATH+"/all" , method=RequestMethod.GET,
+                    produces={MediaType.APPLICATION_JSON_VALUE, GestureBinary.GESTURES_VALUE})
     public ResponseEntity<List<String>> getAllGesture(){
         List<String> result = gestures.getAllGesture();
         String location = ServletUriComponentsBuilder.fromCurrentRequest().build().toUriString();
         return ResponseEntity.status(HttpStatus.OK)
                                 .header(HttpHeaders.CONTENT_LOCATION, location)
+                                .varyBy(HttpHeaders.ACCEPT)
+                                .body(result);
+    }
+
+    /*
+     * Returns a page of gestures in gestureType order. Given a prefix, or a
+     * match glob such as greet.*.en, only those gestureTypes are returned.
+     */
+    @RequestMapping(path=GESTURES_PATH,
+                    method=RequestMethod.GET,
+                    produces={MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<GestureService.GesturePage> getGestures(
+                                            @RequestParam(name="limit", defaultValue="100") int limit,
+                                            @RequestParam(name="continue", required=false) String continuation,
+                                            @RequestParam(name="prefix", required=false) String prefix,
+                                            @RequestParam(name="match", required=false) String match){
+        // business method
+        GestureService.GesturePage result = prefix == null && match == null ?
+                gestures.getGesturePage(continuation, limit) :
+                gestures.searchGestures(prefix, match, continuation, limit);
+        return ResponseEntity.status(HttpStatus.OK)
+                                .body(result);
+    }
+
+    /*
+     * Writes one {"gestureType","gesture"} JSON object per line directly
+     * from the store, so the size of the store never has to fit in a
+     * single response object.
+     */
+    @RequestMapping(path=GESTURES_PATH,
+                    method=RequestMethod.GET,
+                    produces={MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> streamGestures(){
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = JSON.createGenerator(out)) {
+                gestures.forEachGesture((gestureType, gesture) -> {
+                    try {
+                        generator.writeStartObject();
+                        generator.writeStringField("gestureType", gestureType);
+                        generator.writeStringField("gesture", gesture);
+                        generator.writeEndObject();
+                        generator.writeRaw('\n');
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.status(HttpStatus.OK)
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .body(body);
+    }
+
+    /*
+     * The batch operations accept many gestures per request and report an
+     * individual result for each item, in request order.
+     */
+    @RequestMapping(path=GESTURES_BATCH_PATH,
+                    method={RequestMethod.POST,RequestMethod.PUT},
+                    consumes={MediaType.APPLICATION_JSON_VALUE},
+                    produces={MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<List<GestureService.BatchResult>> upsertGestures(
+                                            @RequestBody Map<String, String> gestures){
+        // business method
+        List<GestureService.BatchResult> result = this.gestures.upsertGestures(gestures);
+        return ResponseEntity.status(HttpStatus.OK)
+                                .body(result);
+    }
+
+    @RequestMapping(path=GESTURES_BATCH_PATH+"/get",
+                    method=RequestMethod.POST,
+                    consumes={MediaType.APPLICATION_JSON_VALUE},
+                    produces={MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<List<GestureService.BatchResult>> getGestures(
+                                            @RequestBody List<String> gestureTypes,
+                                            @RequestParam(name="target", required=false) String target){
+        // business method
+        List<GestureService.BatchResult> result = gestures.getGestures(gestureTypes, target);
+        return ResponseEntity.status(HttpStatus.OK)
+                                .body(result);
+    }
+
+    @RequestMapping(path=GESTURES_BATCH_PATH+"/delete",
+                    method=RequestMethod.POST,
+                    consumes={MediaType.APPLICATION_JSON_VALUE},
+                    produces={MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<List<GestureService.BatchResult>> deleteGestures(
+                                            @RequestBody List<String> gestureTypes){
+        // business method
+        List<GestureService.BatchResult> result = gestures.deleteGestures(gestureTypes);
+        return ResponseEntity.status(HttpStatus.OK)
                                 .body(result);
     }
 
@@ -95,6 +282,16 @@ public class GesturesController implements  GestureApi {
         return ResponseEntity.noContent().build();
     }
 
+    @RequestMapping(path=GESTURE_PATH, method=RequestMethod.DELETE, headers=HttpHeaders.IF_MATCH)
+    public ResponseEntity<Void> deleteGesture(@PathVariable(name="gestureType") String gestureType,
+                                              @RequestHeader HttpHeaders headers) {
+        long expectedVersion = GesturePreconditions.ifMatch(headers, gestureType, gestures.getGestureVersion(gestureType));
+
+        // business method
+        gestures.deleteGesture(gestureType, expectedVersion);
+        return ResponseEntity.noContent().build();
+    }
+
 
     @RequestMapping(path=GESTURES_PATH, method= RequestMethod.DELETE)
     @Override
@@ -0,0 +1,177 @@
+package info.ejava.examples.app.controllers;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.ReactiveGestureService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/*
+ * The following is the WebFlux form of the GesturesController, active
+ * when the application runs as a reactive web application (the "reactive"
+ * profile) on Reactor Netty. Paths, status codes and headers mirror the
+ * Spring MVC API and errors are mapped by the same ExceptionAdvice.
+ */
+@RestController
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+@RequiredArgsConstructor
+public class ReactiveGesturesController {
+
+    private static final MediaType TEXT_PLAIN_UTF8 = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
+    private final ReactiveGestureService gestures;
+
+    @RequestMapping(path=GestureApi.GESTURE_PATH,
+                    method={RequestMethod.POST,RequestMethod.PUT},
+                    consumes={MediaType.TEXT_PLAIN_VALUE},
+                    produces={MediaType.TEXT_PLAIN_VALUE})
+    public Mono<ResponseEntity<String>> upsertGesture(@PathVariable(name="gestureType") String gestureType,
+                                                      @RequestBody String gesture,
+                                                      ServerHttpRequest request) {
+        // business method
+        return gestures.upsertGesture(gestureType, gesture)
+                .map(result -> {
+                    log.debug("set gesture({}) to {} , returning previous value {}",
+                                gestureType, gesture, result.getPreviousValue());
+                    ResponseEntity.BodyBuilder response = result.isCreated() ?
+                                                ResponseEntity.created(location(request)):
+                                                ResponseEntity.status(HttpStatus.OK);
+                    return response.body(result.getPreviousValue());
+                });
+    }
+
+    @RequestMapping(path=GestureApi.GESTURE_PATH,
+                    method={RequestMethod.POST,RequestMethod.PUT},
+                    headers=HttpHeaders.IF_MATCH,
+                    consumes={MediaType.TEXT_PLAIN_VALUE},
+                    produces={MediaType.TEXT_PLAIN_VALUE})
+    public Mono<ResponseEntity<String>> replaceGesture(@PathVariable(name="gestureType") String gestureType,
+                                                       @RequestBody String gesture,
+                                                       ServerHttpRequest request) {
+        return gestures.getGestureVersion(gestureType)
+                .map(version -> GesturePreconditions.ifMatch(request.getHeaders(), gestureType, version))
+                // business method
+                .flatMap(expectedVersion -> gestures.replaceGesture(gestureType, gesture, expectedVersion))
+                .map(version -> ResponseEntity.noContent()
+                                .eTag(GesturePreconditions.eTag(version))
+                                .lastModified(GesturePreconditions.lastModified(version))
+                                .build());
+    }
+
+    @RequestMapping(path=GestureApi.GESTURE_PATH,
+                    method=RequestMethod.GET,
+                    produces={MediaType.TEXT_PLAIN_VALUE})
+    public Mono<ResponseEntity<DataBuffer>> getGesture(@PathVariable(name="gestureType") String gestureType,
+                                                       @RequestParam(name="target", required=false) String target,
+                                                       ServerHttpRequest request,
+                                                       ServerHttpResponse response) {
+        String location = location(request).toString();
+        return gestures.getGestureVersion(gestureType)
+                .flatMap(version -> GesturePreconditions.notModified(request.getHeaders(), version) ?
+                        Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                .header(HttpHeaders.CONTENT_LOCATION, location)
+                                .eTag(GesturePreconditions.eTag(version))
+                                .lastModified(GesturePreconditions.lastModified(version))
+                                .<DataBuffer>build()) :
+                        // business method
+                        gestures.findGestureBody(gestureType, target)
+                            .map(result -> ResponseEntity.status(HttpStatus.OK)
+                                .header(HttpHeaders.CONTENT_LOCATION, location)
+                                .eTag(GesturePreconditions.eTag(result.getVersion()))
+                                .lastModified(GesturePreconditions.lastModified(result.getVersion()))
+                                .contentType(TEXT_PLAIN_UTF8)
+                                .body(toDataBuffer(result, response.bufferFactory())))
+                            // answered here rather than by NotFoundException and ExceptionAdvice
+                            .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                .contentType(TEXT_PLAIN_UTF8)
+                                .body(response.bufferFactory().wrap(
+                                        ("gesture type [" + gestureType + "] not found").getBytes(StandardCharsets.UTF_8))))));
+    }
+
+    /*
+     * Wraps the parts of the body without copying them. On Reactor Netty
+     * the joined buffer is a composite, written to the socket in a single
+     * gathering write.
+     */
+    private static DataBuffer toDataBuffer(GestureService.GestureBody body, DataBufferFactory buffers) {
+        if (body.getTarget() == null) {
+            return buffers.wrap(body.getGesture());
+        }
+        return buffers.join(List.of(buffers.wrap(body.getGesture()),
+                                    buffers.wrap(GestureService.GestureBody.SEPARATOR),
+                                    buffers.wrap(body.getTarget())));
+    }
+
+    @RequestMapping(path=GestureApi.GESTURES_PATH+"/all", method=RequestMethod.GET)
+    public Mono<ResponseEntity<List<String>>> getAllGesture(ServerHttpRequest request) {
+        return gestures.getAllGesture()
+                .collectList()
+                .map(result -> ResponseEntity.status(HttpStatus.OK)
+                                .header(HttpHeaders.CONTENT_LOCATION, location(request).toString())
+                                .body(result));
+    }
+
+    @RequestMapping(path=GestureApi.GESTURES_PATH,
+                    method=RequestMethod.GET,
+                    produces={MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<GestureService.GesturePage>> getGestures(
+                                            @RequestParam(name="limit", defaultValue="100") int limit,
+                                            @RequestParam(name="continue", required=false) String continuation,
+                                            @RequestParam(name="prefix", required=false) String prefix,
+                                            @RequestParam(name="match", required=false) String match) {
+        return (prefix == null && match == null ?
+                    gestures.getGesturePage(continuation, limit) :
+                    gestures.searchGestures(prefix, match, continuation, limit))
+                .map(result -> ResponseEntity.status(HttpStatus.OK).body(result));
+    }
+
+    @RequestMapping(path=GestureApi.GESTURE_PATH, method=RequestMethod.DELETE)
+    public Mono<ResponseEntity<Void>> deleteGesture(@PathVariable(name="gestureType") String gestureType) {
+        // business method
+        return gestures.deleteGesture(gestureType)
+                .then(Mono.fromSupplier(() -> ResponseEntity.noContent().build()));
+    }
+
+    @RequestMapping(path=GestureApi.GESTURE_PATH, method=RequestMethod.DELETE, headers=HttpHeaders.IF_MATCH)
+    public Mono<ResponseEntity<Void>> deleteGesture(@PathVariable(name="gestureType") String gestureType,
+                                                    ServerHttpRequest request) {
+        return gestures.getGestureVersion(gestureType)
+                .map(version -> GesturePreconditions.ifMatch(request.getHeaders(), gestureType, version))
+                // business method
+                .flatMap(expectedVersion -> gestures.deleteGesture(gestureType, expectedVersion))
+                .then(Mono.fromSupplier(() -> ResponseEntity.noContent().build()));
+    }
+
+    @RequestMapping(path=GestureApi.GESTURES_PATH, method=RequestMethod.DELETE)
+    public Mono<ResponseEntity<Void>> deleteAllGesture() {
+        // business method
+        return gestures.deleteAllGesture()
+                .then(Mono.fromSupplier(() -> ResponseEntity.noContent().build()));
+    }
+
+    private static URI location(ServerHttpRequest request) {
+        return request.getURI();
+    }
+}
@@ -0,0 +1,276 @@
+package info.ejava.examples.app.svc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * A read-through cache of single gestures in front of GestureServiceImpl,
+ * for deployments whose GestureStore is slower than the in-memory ones.
+ * Enabled by gestures.cache.enabled=true.
+ *
+ * - Entries are held in a Caffeine cache of up to maximumSize, evicted by
+ *   W-TinyLFU, and expire ttl after they were loaded. Unknown gestureTypes
+ *   are cached as misses too.
+ * - Concurrent misses of one gestureType wait on a single load from the
+ *   GestureService behind.
+ * - Every change, including those replicated from peers, is made behind
+ *   first and then invalidates the gestureTypes it changed. Invalidating a
+ *   gestureType waits for its load in progress, so a load cannot put back
+ *   a gesture read before the change.
+ *   deleteAllGesture also advances a generation, and entries loaded in an
+ *   earlier generation are reloaded when read.
+ * - The encoded gesture of a hit is copied out of the cache, so a caller
+ *   writing into its GestureBody cannot change what later reads are served.
+ * - Listing, paging and versions are read from behind. Batch gets answer
+ *   what is cached and read the rest in one batch, without caching it.
+ *
+ * The cache.* meters of the gestures cache -- gets by hit/miss, puts,
+ * evictions and size -- and gestures.cache.hit.ratio are published to the
+ * MeterRegistry.
+ */
+@Service
+@ConditionalOnProperty(name="gestures.cache.enabled", havingValue="true")
+@Slf4j
+public class CachingGestureService implements GestureService {
+
+    public static final String CACHE_NAME = "gestures";
+    public static final String HIT_RATIO = "gestures.cache.hit.ratio";
+
+    private final GestureService gestures;
+    private final LoadingCache<String, CachedGesture> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    /*
+     * gesture is null for an unknown gestureType, and encoded and version
+     * are then unused.
+     */
+    private record CachedGesture(long generation, String gesture, byte[] encoded, long version) {}
+
+    @Autowired
+    public CachingGestureService(GestureServiceImpl gestures, MeterRegistry registry,
+            @Value("${gestures.cache.maximum-size:10000}") long maximumSize,
+            @Value("${gestures.cache.ttl:60s}") Duration ttl) {
+        this(gestures, registry, maximumSize, ttl, Ticker.systemTicker());
+    }
+
+    public CachingGestureService(GestureService gestures, MeterRegistry registry,
+                                 long maximumSize, Duration ttl, Ticker ticker) {
+        this.gestures = gestures;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .recordStats()
+                .build(this::load);
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+        Gauge.builder(HIT_RATIO, cache, c -> c.stats().hitRate()).register(registry);
+    }
+
+    private CachedGesture load(String gestureType) {
+        long loadGeneration = generation.get();
+        log.debug("loading gestureType [{}]", gestureType);
+        return gestures.findGestureBody(gestureType, null)
+                .map(body -> new CachedGesture(loadGeneration,
+                        new String(body.getGesture(), StandardCharsets.UTF_8), body.getGesture(), body.getVersion()))
+                .orElseGet(() -> new CachedGesture(loadGeneration, null, null, 0));
+    }
+
+    private CachedGesture get(String gestureType) {
+        CachedGesture cached = cache.get(gestureType);
+        if (cached.generation() != generation.get()) {
+            cache.asMap().remove(gestureType, cached);
+            cached = cache.get(gestureType);
+        }
+        return cached;
+    }
+
+    @Override
+    public String getGesture(String gestureType, String target) {
+        CachedGesture cached = get(gestureType);
+        if (cached.gesture() == null) {
+            throw ClientErrorException.NotFoundException.stackless("gesture type [%s] not found", gestureType);
+        }
+        return target == null ? cached.gesture() : cached.gesture() + ", " + target;
+    }
+
+    @Override
+    public GestureBody getGestureBody(String gestureType, String target) {
+        return findGestureBody(gestureType, target).orElseThrow(() ->
+                ClientErrorException.NotFoundException.stackless("gesture type [%s] not found", gestureType));
+    }
+
+    @Override
+    public Optional<GestureBody> findGestureBody(String gestureType, String target) {
+        CachedGesture cached = get(gestureType);
+        if (cached.gesture() == null) {
+            return Optional.empty();
+        }
+        // a copy, since the cached array is shared by every later read
+        return Optional.of(new GestureBody(cached.encoded().clone(),
+                target == null ? null : target.getBytes(StandardCharsets.UTF_8), cached.version()));
+    }
+
+    @Override
+    public List<BatchResult> getGestures(Collection<String> gestureTypes, String target) {
+        GestureServiceImpl.validateBatch(gestureTypes);
+        Map<String, CachedGesture> present = cache.getAllPresent(gestureTypes);
+        long current = generation.get();
+        List<String> missing = new ArrayList<>();
+        for (String gestureType: gestureTypes) {
+            CachedGesture cached = present.get(gestureType);
+            if (cached == null || cached.generation() != current) {
+                missing.add(gestureType);
+            }
+        }
+        Map<String, BatchResult> loaded = Map.of();
+        if (!missing.isEmpty()) {
+            List<BatchResult> results = gestures.getGestures(missing, target);
+            loaded = new HashMap<>(results.size() * 2);
+            for (BatchResult result: results) {
+                loaded.put(result.getGestureType(), result);
+            }
+        }
+        List<BatchResult> results = new ArrayList<>(gestureTypes.size());
+        for (String gestureType: gestureTypes) {
+            BatchResult result = loaded.get(gestureType);
+            if (result == null) {
+                CachedGesture cached = present.get(gestureType);
+                result = cached.gesture() == null ?
+                        new BatchResult(gestureType, BatchStatus.NOT_FOUND, null) :
+                        new BatchResult(gestureType, BatchStatus.FOUND,
+                                target == null ? cached.gesture() : cached.gesture() + ", " + target);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    @Override
+    public UpsertResult upsertGesture(String gestureType, String gesture) {
+        try {
+            return gestures.upsertGesture(gestureType, gesture);
+        } finally {
+            cache.invalidate(gestureType);
+        }
+    }
+
+    @Override
+    public long replaceGesture(String gestureType, String gesture, long expectedVersion) {
+        try {
+            return gestures.replaceGesture(gestureType, gesture, expectedVersion);
+        } finally {
+            cache.invalidate(gestureType);
+        }
+    }
+
+    @Override
+    public void deleteGesture(String gestureType, long expectedVersion) {
+        try {
+            gestures.deleteGesture(gestureType, expectedVersion);
+        } finally {
+            cache.invalidate(gestureType);
+        }
+    }
+
+    @Override
+    public void deleteGesture(String gestureType) {
+        try {
+            gestures.deleteGesture(gestureType);
+        } finally {
+            cache.invalidate(gestureType);
+        }
+    }
+
+    @Override
+    public void deleteAllGesture() {
+        try {
+            gestures.deleteAllGesture();
+        } finally {
+            generation.incrementAndGet();
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public List<BatchResult> upsertGestures(Map<String, String> batch) {
+        GestureServiceImpl.validateBatch(batch);
+        try {
+            return gestures.upsertGestures(batch);
+        } finally {
+            cache.invalidateAll(batch.keySet());
+        }
+    }
+
+    @Override
+    public List<BatchResult> deleteGestures(Collection<String> gestureTypes) {
+        GestureServiceImpl.validateBatch(gestureTypes);
+        try {
+            return gestures.deleteGestures(gestureTypes);
+        } finally {
+            cache.invalidateAll(gestureTypes);
+        }
+    }
+
+    @Override
+    public void applyChanges(String origin, List<GestureChange> changes) {
+        try {
+            gestures.applyChanges(origin, changes);
+        } finally {
+            for (GestureChange change: changes) {
+                if (change.getType() == ChangeType.CLEARED) {
+                    generation.incrementAndGet();
+                    cache.invalidateAll();
+                } else {
+                    cache.invalidate(change.getGestureType());
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getGestureVersion(String gestureType) {
+        return gestures.getGestureVersion(gestureType);
+    }
+
+    @Override
+    public List<String> getAllGesture() {
+        return gestures.getAllGesture();
+    }
+
+    @Override
+    public GesturePage getGesturePage(String continuation, int limit) {
+        return gestures.getGesturePage(continuation, limit);
+    }
+
+    @Override
+    public GesturePage searchGestures(String prefix, String glob, String continuation, int limit) {
+        return gestures.searchGestures(prefix, glob, continuation, limit);
+    }
+
+    @Override
+    public void forEachGesture(BiConsumer<String, String> action) {
+        gestures.forEachGesture(action);
+    }
+}
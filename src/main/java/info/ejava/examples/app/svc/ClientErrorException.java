@@ -1,27 +1,79 @@
 package info.ejava.examples.app.svc;
 
+/*
+ * The message is formatted from message and args only when first asked
+ * for, so an exception that is only mapped to a status costs no
+ * String.format. args should be values that will not change afterwards.
+ *
+ * Exceptions created by the stackless() factories also skip capturing the
+ * stack trace. They are for expected outcomes on hot paths -- a missing
+ * gesture, a lost version race -- where the trace would only say which
+ * service method answered.
+ */
 public abstract class ClientErrorException extends  RuntimeException {
 
+    private final String format;
+    private final Object[] args;
+    private String message;
+
     protected ClientErrorException(Throwable cause){
         super(cause);
+        this.format = null;
+        this.args = null;
     }
 
     protected  ClientErrorException(String message, Object ...args){
-        super(String.format(message, args));
+        this(true, null, message, args);
     }
 
     protected  ClientErrorException(Throwable cause, String message, Object ...args){
-        super(String.format(message, args),cause);
+        this(true, cause, message, args);
+    }
+
+    protected ClientErrorException(boolean stackTrace, Throwable cause, String message, Object ...args) {
+        super(null, cause, true, stackTrace);
+        this.format = message;
+        this.args = args;
+    }
+
+    @Override
+    public String getMessage() {
+        if (format == null) {
+            return super.getMessage();
+        }
+        // racing threads format the same String
+        if (message == null) {
+            message = String.format(format, args);
+        }
+        return message;
     }
 
     public static class NotFoundException extends ClientErrorException {
         public NotFoundException(String message, Object...args) {  super(message, args); }
         public NotFoundException(Throwable cause, String message, Object...args) { super(cause, message, args); }
+        private NotFoundException(boolean stackTrace, String message, Object...args) { super(stackTrace, null, message, args); }
+        public static NotFoundException stackless(String message, Object...args) { return new NotFoundException(false, message, args); }
     }
 
     public static class InvalidInputException extends ClientErrorException {
         public InvalidInputException(String message, Object...args) {  super(message, args); }
         public InvalidInputException(Throwable cause, String message, Object...args) { super(cause, message, args); }
+        private InvalidInputException(boolean stackTrace, String message, Object...args) { super(stackTrace, null, message, args); }
+        public static InvalidInputException stackless(String message, Object...args) { return new InvalidInputException(false, message, args); }
+    }
+
+    public static class GoneException extends ClientErrorException {
+        public GoneException(String message, Object...args) {  super(message, args); }
+        public GoneException(Throwable cause, String message, Object...args) { super(cause, message, args); }
+        private GoneException(boolean stackTrace, String message, Object...args) { super(stackTrace, null, message, args); }
+        public static GoneException stackless(String message, Object...args) { return new GoneException(false, message, args); }
+    }
+
+    public static class PreconditionFailedException extends ClientErrorException {
+        public PreconditionFailedException(String message, Object...args) {  super(message, args); }
+        public PreconditionFailedException(Throwable cause, String message, Object...args) { super(cause, message, args); }
+        private PreconditionFailedException(boolean stackTrace, String message, Object...args) { super(stackTrace, null, message, args); }
+        public static PreconditionFailedException stackless(String message, Object...args) { return new PreconditionFailedException(false, message, args); }
     }
 
 }
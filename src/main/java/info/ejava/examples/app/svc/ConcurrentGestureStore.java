@@ -0,0 +1,151 @@
+package info.ejava.examples.app.svc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/*
+ * Default store. ConcurrentHashMap locks only the bin being updated, so
+ * writers to different gestureTypes do not contend and readers never block.
+ * Versioned changes read the current holder and swap it with a
+ * compare-and-set, failing rather than waiting if it changed meanwhile.
+ *
+ * Given a GestureDictionary, values are interned in it, so gestureTypes
+ * sharing a value share one String, and each is released when its
+ * gestureType is changed, removed or cleared.
+ */
+public class ConcurrentGestureStore implements GestureStore {
+
+    private final ConcurrentMap<String, VersionedGesture> gestures;
+    private final GestureDictionary dictionary;
+
+    public ConcurrentGestureStore() {
+        this(16);
+    }
+
+    public ConcurrentGestureStore(int initialCapacity) {
+        this(initialCapacity, null);
+    }
+
+    // dictionary may be null, to hold values as given
+    public ConcurrentGestureStore(int initialCapacity, GestureDictionary dictionary) {
+        gestures = new ConcurrentHashMap<>(initialCapacity);
+        this.dictionary = dictionary;
+    }
+
+    private String intern(String gesture) {
+        return dictionary == null ? gesture : dictionary.acquire(gesture);
+    }
+
+    private VersionedGesture release(VersionedGesture released) {
+        if (dictionary != null && released != null) {
+            dictionary.release(released.gesture);
+        }
+        return released;
+    }
+
+    @Override
+    public String put(String gestureType, String gesture) {
+        return VersionedGesture.gestureOf(release(gestures.put(gestureType, new VersionedGesture(intern(gesture)))));
+    }
+
+    @Override
+    public String put(String gestureType, String gesture, long version) {
+        return VersionedGesture.gestureOf(release(gestures.put(gestureType,
+                new VersionedGesture(intern(gesture), version))));
+    }
+
+    @Override
+    public String putIfAbsent(String gestureType, String gesture) {
+        VersionedGesture candidate = new VersionedGesture(intern(gesture));
+        VersionedGesture existing = gestures.putIfAbsent(gestureType, candidate);
+        if (existing != null) {
+            release(candidate);
+        }
+        return VersionedGesture.gestureOf(existing);
+    }
+
+    @Override
+    public boolean replace(String gestureType, String expected, String gesture) {
+        VersionedGesture replacement = null;
+        while (true) {
+            VersionedGesture current = gestures.get(gestureType);
+            if (current == null || !current.gesture.equals(expected)) {
+                release(replacement);
+                return false;
+            }
+            if (replacement == null) {
+                replacement = new VersionedGesture(intern(gesture));
+            }
+            if (gestures.replace(gestureType, current, replacement)) {
+                release(current);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public long replace(String gestureType, long expectedVersion, String gesture) {
+        VersionedGesture current = gestures.get(gestureType);
+        if (current == null || current.version != expectedVersion) {
+            return 0;
+        }
+        VersionedGesture replacement = new VersionedGesture(intern(gesture));
+        if (gestures.replace(gestureType, current, replacement)) {
+            release(current);
+            return replacement.version;
+        }
+        release(replacement);
+        return 0;
+    }
+
+    @Override
+    public String get(String gestureType) {
+        return VersionedGesture.gestureOf(gestures.get(gestureType));
+    }
+
+    @Override
+    public EncodedGesture getEncoded(String gestureType) {
+        VersionedGesture current = gestures.get(gestureType);
+        return current == null ? null : current.encode();
+    }
+
+    @Override
+    public long getVersion(String gestureType) {
+        return VersionedGesture.versionOf(gestures.get(gestureType));
+    }
+
+    @Override
+    public String remove(String gestureType) {
+        return VersionedGesture.gestureOf(release(gestures.remove(gestureType)));
+    }
+
+    @Override
+    public boolean remove(String gestureType, long expectedVersion) {
+        VersionedGesture current = gestures.get(gestureType);
+        if (current != null && current.version == expectedVersion && gestures.remove(gestureType, current)) {
+            release(current);
+            return true;
+        }
+        return false;
+    }
+
+    // the dictionary is emptied after the gestures, so a value put meanwhile may be left out of it
+    @Override
+    public void clear() {
+        gestures.clear();
+        if (dictionary != null) {
+            dictionary.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        return gestures.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, String> action) {
+        gestures.forEach((gestureType, versioned) -> action.accept(gestureType, versioned.gesture));
+    }
+}
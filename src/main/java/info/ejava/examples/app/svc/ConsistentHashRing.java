@@ -0,0 +1,65 @@
+package info.ejava.examples.app.svc;
+
+import java.util.Arrays;
+
+/*
+ * Maps gestureTypes to one of a number of nodes using consistent hashing.
+ * Each node is placed at pointsPerNode pseudo-random points on a ring of
+ * int hashes, and a gestureType belongs to the node owning the first point
+ * at or after its own hash. Changing the number of nodes from n to n+1
+ * moves only about 1/(n+1) of the gestureTypes -- those the new node's
+ * points take over -- where hash modulo n would move nearly all of them.
+ * More points per node spread the gestureTypes more evenly.
+ */
+public class ConsistentHashRing {
+
+    private final int nodes;
+    // sorted, with owners[i] the node placed at points[i]
+    private final int[] points;
+    private final int[] owners;
+
+    public ConsistentHashRing(int nodes, int pointsPerNode) {
+        if (nodes < 1 || pointsPerNode < 1) {
+            throw new IllegalArgumentException("nodes and pointsPerNode must be positive");
+        }
+        this.nodes = nodes;
+        long[] placed = new long[nodes * pointsPerNode];
+        for (int node=0; node<nodes; node++) {
+            for (int point=0; point<pointsPerNode; point++) {
+                int hash = mix(node * 0x9E3779B9 + point * 0x85EBCA6B + 1);
+                // sorts by hash, then node, keeping the owner with its point
+                placed[node * pointsPerNode + point] = ((long)hash << 32) | node;
+            }
+        }
+        Arrays.sort(placed);
+        points = new int[placed.length];
+        owners = new int[placed.length];
+        for (int i=0; i<placed.length; i++) {
+            points[i] = (int)(placed[i] >> 32);
+            owners[i] = (int)placed[i];
+        }
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int nodeOf(String gestureType) {
+        int hash = mix(gestureType.hashCode());
+        int i = Arrays.binarySearch(points, hash);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    // the murmur3 finalizer, so that similar gestureTypes land far apart
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
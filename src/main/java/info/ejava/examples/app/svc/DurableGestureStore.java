@@ -0,0 +1,1000 @@
+package info.ejava.examples.app.svc;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * A GestureStore that survives restarts. Gestures are served from memory,
+ * and every change is appended to a write-ahead log before the call
+ * returns.
+ *
+ * - Each change is applied to the map and queued for the log within the
+ *   same per-key compute, so the log orders changes to a key exactly as
+ *   they were applied.
+ * - A single writer thread drains the queue, writes everything waiting and
+ *   makes it durable with one force (group commit). Callers then wait for
+ *   their own record, outside of any lock. Within deferDurability() they
+ *   wait once, for their last record, when the scope is awaited.
+ * - If the log fails, every change not yet durable is rolled back, newest
+ *   first, to the value it replaced, and the store becomes read-only.
+ *   clear() swaps in an empty map, keeping the one it replaced with its
+ *   record, so that a failed clear can swap it back.
+ * - Once a log segment grows past snapshotLogBytes the writer starts a new
+ *   segment and a background thread writes a snapshot of the map. The
+ *   snapshot replaces all earlier segments, bounding recovery time to one
+ *   snapshot plus the changes made since.
+ * - On startup the latest snapshot is memory-mapped (see GestureSnapshot)
+ *   rather than read into the heap, and only the log written since it is
+ *   replayed. Keys the map does not hold yet are looked up in the mapping
+ *   while a background thread copies it into the map; keys removed in the
+ *   meantime are marked in the map so the mapping cannot revive them. Once
+ *   copied, the mapping is released and the map alone serves reads.
+ *
+ * Each gesture's version is logged with it and kept in the snapshot, so
+ * recovery restores the versions it had -- including those of changes
+ * replicated from peers -- and GestureVersion is moved past all of them.
+ * A recovered gesture therefore compares with its copies on other nodes
+ * exactly as it did before the restart. PUT records of logs written
+ * before versions were logged are replayed with a new version.
+ *
+ * Reads may see a change slightly before the call making it has returned,
+ * and -- if the log then fails -- before it is rolled back.
+ *
+ * Directory layout: wal-<n>.log segments and snapshot-<n>.dat files, where
+ * snapshot-n plus segments n and later recreate the store. A snapshot still
+ * mapped when it is superseded is deleted while open, which POSIX file
+ * systems allow.
+ *
+ * The only lock held while queuing a record is the map's per-key lock (the
+ * change lock, exclusively, for clear()) and nothing done under it blocks,
+ * so request threads -- including virtual threads -- never wait on file
+ * I/O while holding a lock.
+ */
+@Slf4j
+public class DurableGestureStore implements GestureStore, Closeable {
+
+    private static final byte UNVERSIONED_PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final byte PUT = 4;
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path dir;
+    private final long snapshotLogBytes;
+    private final int maxBatch;
+    private final int initialCapacity;
+    // holds TOMBSTONE for keys removed while base was mapped; these are
+    // kept, since a lookup that read base just before its release may
+    // still consult it. Replaced only holding the change lock exclusively.
+    private volatile ConcurrentMap<String, VersionedGesture> gestures;
+    private final AtomicInteger count = new AtomicInteger();
+    // the mapped snapshot not yet copied into gestures, else null
+    private volatile GestureSnapshot base;
+    // shared by every change, exclusive for clear() and close()
+    private final ReentrantReadWriteLock changeLock = new ReentrantReadWriteLock();
+    private final ConcurrentLinkedQueue<Record> pending = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Deferred> deferred = new ThreadLocal<>();
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private final ExecutorService snapshotter;
+    private final Thread writer;
+    private volatile boolean open = true;
+    private volatile IOException failure;
+
+    // owned by the writer thread
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+    private final CRC32C crc = new CRC32C();
+    private FileChannel logChannel;
+    private long logSequence;
+    private long logBytes;
+
+    // compared by identity, so no stored value can be mistaken for it
+    private static final VersionedGesture TOMBSTONE = new VersionedGesture(null, 0);
+
+    /*
+     * A change to gestureType also keeps the value it replaced (null if
+     * none) and what it put in the map, to roll it back if the log fails.
+     */
+    private static final class Record {
+        private final byte op;
+        private final String gestureType;
+        private final String gesture;
+        private final VersionedGesture previous;
+        private final VersionedGesture installed;
+        // what a CLEAR replaced, else null
+        private final Cleared cleared;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private Record(byte op, String gestureType, String gesture, VersionedGesture previous, VersionedGesture installed) {
+            this.op = op;
+            this.gestureType = gestureType;
+            this.gesture = gesture;
+            this.previous = previous;
+            this.installed = installed;
+            this.cleared = null;
+        }
+
+        private Record(Cleared cleared) {
+            this.op = CLEAR;
+            this.gestureType = null;
+            this.gesture = null;
+            this.previous = null;
+            this.installed = null;
+            this.cleared = cleared;
+        }
+    }
+
+    // the state a clear() replaced, restored if its record fails
+    private static final class Cleared {
+        private final ConcurrentMap<String, VersionedGesture> gestures;
+        private final GestureSnapshot base;
+        private final int count;
+
+        private Cleared(ConcurrentMap<String, VersionedGesture> gestures, GestureSnapshot base, int count) {
+            this.gestures = gestures;
+            this.base = base;
+            this.count = count;
+        }
+    }
+
+    /*
+     * A thread's records are queued and made durable in order, so waiting
+     * for the last is waiting for all of them.
+     */
+    private final class Deferred implements DeferredDurability {
+        private Record last;
+
+        @Override
+        public void await() {
+            close();
+            awaitDurable(last);
+        }
+
+        @Override
+        public void close() {
+            if (deferred.get() == this) {
+                deferred.remove();
+            }
+        }
+    }
+
+    public DurableGestureStore(Path dir, long snapshotLogBytes, int maxBatch, int initialCapacity) throws IOException {
+        this.dir = dir;
+        this.snapshotLogBytes = snapshotLogBytes;
+        this.maxBatch = maxBatch;
+        this.initialCapacity = initialCapacity;
+        this.gestures = new ConcurrentHashMap<>(initialCapacity);
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        recover();
+        log.info("recovered {} gestures from {} in {} ms", count.get(), dir, (System.nanoTime() - start) / 1_000_000);
+
+        snapshotter = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "gesture-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer = new Thread(this::writeLoop, "gesture-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        if (base != null) {
+            GestureSnapshot snapshot = base;
+            Thread warmer = new Thread(() -> warm(snapshot), "gesture-warmer");
+            warmer.setDaemon(true);
+            warmer.start();
+        }
+    }
+
+    /*
+     * base is read before the map: if it is already null, everything it
+     * held was copied into the map before it was released.
+     */
+    private VersionedGesture current(String gestureType) {
+        GestureSnapshot snapshot = base;
+        VersionedGesture value = gestures.get(gestureType);
+        if (value != null) {
+            return value == TOMBSTONE ? null : value;
+        }
+        return snapshot == null ? null : snapshot.find(gestureType);
+    }
+
+    @Override
+    public DeferredDurability deferDurability() {
+        if (deferred.get() != null) {
+            return DeferredDurability.NONE;
+        }
+        Deferred scope = new Deferred();
+        deferred.set(scope);
+        return scope;
+    }
+
+    @Override
+    public String get(String gestureType) {
+        return VersionedGesture.gestureOf(current(gestureType));
+    }
+
+    @Override
+    public EncodedGesture getEncoded(String gestureType) {
+        VersionedGesture value = current(gestureType);
+        return value == null ? null : value.encode();
+    }
+
+    @Override
+    public long getVersion(String gestureType) {
+        return VersionedGesture.versionOf(current(gestureType));
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    /*
+     * While the snapshot is still mapped, its keys are visited first --
+     * with the map's value where it has one -- followed by the keys only
+     * the map holds.
+     */
+    @Override
+    public void forEach(BiConsumer<String, String> action) {
+        forEach((gestureType, gesture, version) -> action.accept(gestureType, gesture));
+    }
+
+    private void forEach(GestureVisitor action) {
+        GestureSnapshot snapshot = base;
+        ConcurrentMap<String, VersionedGesture> gestures = this.gestures;
+        if (snapshot == null) {
+            gestures.forEach((gestureType, value) -> {
+                if (value != TOMBSTONE) {
+                    action.accept(gestureType, value.gesture, value.version);
+                }
+            });
+            return;
+        }
+        snapshot.forEach((gestureType, gesture, version) -> {
+            VersionedGesture value = gestures.get(gestureType);
+            if (value == null) {
+                action.accept(gestureType, gesture, version);
+            } else if (value != TOMBSTONE) {
+                action.accept(gestureType, value.gesture, value.version);
+            }
+        });
+        gestures.forEach((gestureType, value) -> {
+            if (value != TOMBSTONE && snapshot.find(gestureType) == null) {
+                action.accept(gestureType, value.gesture, value.version);
+            }
+        });
+    }
+
+    /*
+     * The value of a key given what the map holds for it. Called inside the
+     * map's compute for that key, which orders it with the warmer's copy.
+     */
+    private VersionedGesture valueOf(String gestureType, VersionedGesture mapped) {
+        if (mapped != null) {
+            return mapped == TOMBSTONE ? null : mapped;
+        }
+        GestureSnapshot snapshot = base;
+        return snapshot == null ? null : snapshot.find(gestureType);
+    }
+
+    // what the map holds for a removed key
+    private VersionedGesture removed() {
+        return base == null ? null : TOMBSTONE;
+    }
+
+    @Override
+    public String put(String gestureType, String gesture) {
+        return put(gestureType, gesture, GestureVersion.next());
+    }
+
+    @Override
+    public String put(String gestureType, String gesture, long version) {
+        String[] previous = new String[1];
+        Record[] record = new Record[1];
+        changeLock.readLock().lock();
+        try {
+            gestures.compute(gestureType, (key, current) -> {
+                VersionedGesture value = valueOf(key, current);
+                VersionedGesture replacement = new VersionedGesture(gesture, version);
+                previous[0] = VersionedGesture.gestureOf(value);
+                record[0] = append(PUT, key, gesture, value, replacement);
+                if (previous[0] == null) {
+                    count.incrementAndGet();
+                }
+                return replacement;
+            });
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        await(record[0]);
+        return previous[0];
+    }
+
+    @Override
+    public String putIfAbsent(String gestureType, String gesture) {
+        String[] current = new String[1];
+        Record[] record = new Record[1];
+        changeLock.readLock().lock();
+        try {
+            gestures.compute(gestureType, (key, mapped) -> {
+                current[0] = VersionedGesture.gestureOf(valueOf(key, mapped));
+                if (current[0] != null) {
+                    return mapped;
+                }
+                VersionedGesture added = new VersionedGesture(gesture);
+                record[0] = append(PUT, key, gesture, null, added);
+                count.incrementAndGet();
+                return added;
+            });
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        await(record[0]);
+        return current[0];
+    }
+
+    @Override
+    public boolean replace(String gestureType, String expected, String gesture) {
+        Record[] record = new Record[1];
+        changeLock.readLock().lock();
+        try {
+            gestures.compute(gestureType, (key, mapped) -> {
+                VersionedGesture value = valueOf(key, mapped);
+                if (value == null || !value.gesture.equals(expected)) {
+                    return mapped;
+                }
+                VersionedGesture replacement = new VersionedGesture(gesture);
+                record[0] = append(PUT, key, gesture, value, replacement);
+                return replacement;
+            });
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        await(record[0]);
+        return record[0] != null;
+    }
+
+    @Override
+    public long replace(String gestureType, long expectedVersion, String gesture) {
+        long[] version = new long[1];
+        Record[] record = new Record[1];
+        changeLock.readLock().lock();
+        try {
+            gestures.compute(gestureType, (key, mapped) -> {
+                VersionedGesture value = valueOf(key, mapped);
+                if (value == null || value.version != expectedVersion) {
+                    return mapped;
+                }
+                VersionedGesture replacement = new VersionedGesture(gesture);
+                record[0] = append(PUT, key, gesture, value, replacement);
+                version[0] = replacement.version;
+                return replacement;
+            });
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        await(record[0]);
+        return version[0];
+    }
+
+    @Override
+    public String remove(String gestureType) {
+        String[] previous = new String[1];
+        Record[] record = new Record[1];
+        changeLock.readLock().lock();
+        try {
+            gestures.compute(gestureType, (key, mapped) -> {
+                VersionedGesture value = valueOf(key, mapped);
+                previous[0] = VersionedGesture.gestureOf(value);
+                if (value == null) {
+                    return mapped;
+                }
+                VersionedGesture removed = removed();
+                record[0] = append(REMOVE, key, null, value, removed);
+                count.decrementAndGet();
+                return removed;
+            });
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        await(record[0]);
+        return previous[0];
+    }
+
+    @Override
+    public boolean remove(String gestureType, long expectedVersion) {
+        Record[] record = new Record[1];
+        changeLock.readLock().lock();
+        try {
+            gestures.compute(gestureType, (key, mapped) -> {
+                VersionedGesture value = valueOf(key, mapped);
+                if (value == null || value.version != expectedVersion) {
+                    return mapped;
+                }
+                VersionedGesture removed = removed();
+                record[0] = append(REMOVE, key, null, value, removed);
+                count.decrementAndGet();
+                return removed;
+            });
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        await(record[0]);
+        return record[0] != null;
+    }
+
+    /*
+     * Swaps in an empty map rather than emptying the current one, which is
+     * kept with the record until it is durable. Closing base leaves its
+     * mapping readable, should a failed clear swap it back.
+     */
+    @Override
+    public void clear() {
+        Record record;
+        changeLock.writeLock().lock();
+        try {
+            record = append(new Record(new Cleared(gestures, base, count.get())));
+            gestures = new ConcurrentHashMap<>(initialCapacity);
+            count.set(0);
+            releaseBase();
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+        await(record);
+    }
+
+    /*
+     * The records of a batch are queued in order by this thread, so once
+     * the last one is durable all of them are.
+     */
+    @Override
+    public void putAll(Map<String, String> batch, BiConsumer<String, String> previousValues) {
+        Record[] last = new Record[1];
+        List<String> previous = new ArrayList<>(batch.size());
+        changeLock.readLock().lock();
+        try {
+            batch.forEach((gestureType, gesture) -> gestures.compute(gestureType, (key, current) -> {
+                VersionedGesture value = valueOf(key, current);
+                VersionedGesture replacement = new VersionedGesture(gesture);
+                previous.add(VersionedGesture.gestureOf(value));
+                last[0] = append(PUT, key, gesture, value, replacement);
+                if (value == null) {
+                    count.incrementAndGet();
+                }
+                return replacement;
+            }));
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        await(last[0]);
+        int i = 0;
+        for (String gestureType: batch.keySet()) {
+            previousValues.accept(gestureType, previous.get(i++));
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> gestureTypes, BiConsumer<String, String> previousValues) {
+        Record[] last = new Record[1];
+        List<String> previous = new ArrayList<>(gestureTypes.size());
+        changeLock.readLock().lock();
+        try {
+            for (String gestureType: gestureTypes) {
+                String[] value = new String[1];
+                gestures.compute(gestureType, (key, mapped) -> {
+                    VersionedGesture current = valueOf(key, mapped);
+                    value[0] = VersionedGesture.gestureOf(current);
+                    if (current == null) {
+                        return mapped;
+                    }
+                    VersionedGesture removed = removed();
+                    last[0] = append(REMOVE, key, null, current, removed);
+                    count.decrementAndGet();
+                    return removed;
+                });
+                previous.add(value[0]);
+            }
+        } finally {
+            changeLock.readLock().unlock();
+        }
+        await(last[0]);
+        int i = 0;
+        for (String gestureType: gestureTypes) {
+            previousValues.accept(gestureType, previous.get(i++));
+        }
+    }
+
+    /*
+     * Called with the change lock held and, for keyed changes, inside the
+     * map's compute for that key. Only queues the record; never blocks.
+     */
+    private Record append(byte op, String gestureType, String gesture, VersionedGesture previous,
+            VersionedGesture installed) {
+        return append(new Record(op, gestureType, gesture, previous, installed));
+    }
+
+    private Record append(Record record) {
+        if (failure != null) {
+            throw new ServerErrorException.InternalErrorException(failure, "gesture log failed, store is read-only");
+        }
+        if (!open) {
+            throw new ServerErrorException.InternalErrorException("gesture store is closed");
+        }
+        pending.offer(record);
+        // the writer sets failure before draining pending, so a record it cannot have drained is failed here
+        if (failure != null) {
+            record.durable.completeExceptionally(failure);
+            throw new ServerErrorException.InternalErrorException(failure, "gesture log failed, store is read-only");
+        }
+        LockSupport.unpark(writer);
+        return record;
+    }
+
+    // waits for the record, or leaves it to the thread's deferred scope
+    private void await(Record record) {
+        Deferred scope = deferred.get();
+        if (scope != null) {
+            if (record != null) {
+                scope.last = record;
+            }
+            return;
+        }
+        awaitDurable(record);
+    }
+
+    private void awaitDurable(Record record) {
+        if (record == null) {
+            return;
+        }
+        try {
+            record.durable.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServerErrorException.InternalErrorException(ex, "interrupted waiting for gesture log");
+        } catch (ExecutionException ex) {
+            throw new ServerErrorException.InternalErrorException(ex.getCause(), "gesture log write failed");
+        }
+    }
+
+    private void writeLoop() {
+        List<Record> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            Record record;
+            while (batch.size() < maxBatch && (record = pending.poll()) != null) {
+                batch.add(record);
+            }
+            if (batch.isEmpty()) {
+                if (!open) {
+                    break;
+                }
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+                continue;
+            }
+            try {
+                for (Record r: batch) {
+                    write(r);
+                }
+                flush();
+                logChannel.force(false);
+                for (Record r: batch) {
+                    r.durable.complete(null);
+                }
+                if (logBytes >= snapshotLogBytes && snapshotting.compareAndSet(false, true)) {
+                    startSnapshot();
+                }
+            } catch (IOException | RuntimeException ex) {
+                failure = ex instanceof IOException ? (IOException)ex : new IOException(ex);
+                log.error("gesture log write failed, store is now read-only", ex);
+                while ((record = pending.poll()) != null) {
+                    batch.add(record);
+                }
+                rollBack(batch);
+                batch.forEach(r -> r.durable.completeExceptionally(failure));
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /*
+     * Undoes the changes of records that will never be durable, newest
+     * first, so each key returns to its last durable value. A change is
+     * only undone while the map still holds what it installed; a change
+     * whose compute threw after queuing its record never installed it.
+     * The map's per-key lock orders this after a compute still running.
+     * Undoing a clear swaps back the map it replaced, which the records
+     * before it were applied to.
+     */
+    private void rollBack(List<Record> failed) {
+        for (int i=failed.size() - 1; i >= 0; i--) {
+            Record record = failed.get(i);
+            if (record.op == CLEAR) {
+                restore(record.cleared);
+                continue;
+            }
+            gestures.compute(record.gestureType, (key, mapped) -> {
+                if (mapped != record.installed) {
+                    return mapped;
+                }
+                count.addAndGet((isPresent(record.previous) ? 1 : 0) - (isPresent(record.installed) ? 1 : 0));
+                return record.previous == null ? removed() : record.previous;
+            });
+        }
+    }
+
+    private void restore(Cleared cleared) {
+        changeLock.writeLock().lock();
+        try {
+            gestures = cleared.gestures;
+            base = cleared.base;
+            count.set(cleared.count);
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    private static boolean isPresent(VersionedGesture value) {
+        return value != null && value != TOMBSTONE;
+    }
+
+    /*
+     * Record layout: crc32c(int) length(int) op(byte) [version(long)] [keyLength(int) key] [valueLength(int) value]
+     * where crc and length cover everything after the header. Only a PUT
+     * has a version: that of the gesture it installed.
+     */
+    private void write(Record record) throws IOException {
+        byte[] key = record.gestureType == null ? null : record.gestureType.getBytes(StandardCharsets.UTF_8);
+        byte[] value = record.gesture == null ? null : record.gesture.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + (record.op == PUT ? 8 : 0)
+                + (key == null ? 0 : 4 + key.length) + (value == null ? 0 : 4 + value.length);
+        ByteBuffer target = buffer;
+        if (HEADER_BYTES + length > buffer.remaining()) {
+            flush();
+            if (HEADER_BYTES + length > buffer.capacity()) {
+                target = ByteBuffer.allocate(HEADER_BYTES + length);
+            }
+        }
+        int start = target.position();
+        target.putInt(0).putInt(length).put(record.op);
+        if (record.op == PUT) {
+            target.putLong(record.installed.version);
+        }
+        if (key != null) {
+            target.putInt(key.length).put(key);
+        }
+        if (value != null) {
+            target.putInt(value.length).put(value);
+        }
+        crc.reset();
+        crc.update(target.duplicate().position(start + HEADER_BYTES).limit(target.position()));
+        target.putInt(start, (int)crc.getValue());
+        logBytes += HEADER_BYTES + length;
+        if (target != buffer) {
+            target.flip();
+            while (target.hasRemaining()) {
+                logChannel.write(target);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            logChannel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void startSnapshot() throws IOException {
+        long sequence = logSequence + 1;
+        openLog(sequence, 0);
+        snapshotter.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                writeSnapshot(sequence);
+                deleteBefore(sequence);
+                log.info("wrote gesture snapshot {} in {} ms", sequence, (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException | RuntimeException ex) {
+                log.warn("gesture snapshot {} failed, log segments retained", sequence, ex);
+            } finally {
+                snapshotting.set(false);
+            }
+        });
+    }
+
+    /*
+     * Every change before the new segment was applied to the map before it
+     * was queued, so the snapshot sees it. Changes made while the snapshot
+     * is written are also in the new segment and are replayed over it.
+     */
+    private void writeSnapshot(long sequence) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT_PREFIX + sequence + ".tmp");
+        GestureSnapshot.write(tmp, this::forEach);
+        if (failure != null) {
+            // the map may have held changes since rolled back; the .tmp is deleted on recovery
+            throw new IOException("gesture log failed while the snapshot was written");
+        }
+        Files.move(tmp, snapshotPath(sequence), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    private void deleteBefore(long sequence) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file: (Iterable<Path>)files::iterator) {
+                long fileSequence = sequenceOf(file, LOG_PREFIX, LOG_SUFFIX);
+                if (fileSequence < 0) {
+                    fileSequence = sequenceOf(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+                }
+                if (fileSequence >= 0 && fileSequence < sequence) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        long snapshotSequence = -1;
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file: (Iterable<Path>)files::iterator) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.delete(file); // an incomplete snapshot
+                }
+                snapshotSequence = Math.max(snapshotSequence, sequenceOf(file, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+                long segment = sequenceOf(file, LOG_PREFIX, LOG_SUFFIX);
+                if (segment >= 0) {
+                    segments.add(segment);
+                }
+            }
+        }
+        if (snapshotSequence >= 0) {
+            base = GestureSnapshot.open(snapshotPath(snapshotSequence));
+            count.set((int)base.size());
+        }
+        segments.sort(null);
+        long last = Math.max(snapshotSequence, 0);
+        long validBytes = 0;
+        for (long segment: segments) {
+            if (segment >= snapshotSequence) {
+                boolean lastSegment = segment == segments.get(segments.size() - 1);
+                validBytes = replay(logPath(segment), lastSegment);
+                last = segment;
+            }
+        }
+        openLog(last, last == (segments.isEmpty() ? -1 : segments.get(segments.size() - 1)) ? validBytes : 0);
+    }
+
+    /*
+     * Applies each record of a segment. A record cut short or failing its
+     * checksum at the end of the last segment is the tail of a write that
+     * never completed and is discarded; anywhere else it is corruption.
+     * @return the length of the valid portion of the segment
+     */
+    private long replay(Path segment, boolean lastSegment) throws IOException {
+        long position = 0;
+        CRC32C check = new CRC32C();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16))) {
+            while (true) {
+                int expectedCrc;
+                try {
+                    expectedCrc = in.readInt();
+                } catch (EOFException ex) {
+                    return position;
+                }
+                try {
+                    int length = in.readInt();
+                    if (length < 1) {
+                        throw new IOException("invalid record length " + length);
+                    }
+                    byte[] body = in.readNBytes(length);
+                    check.reset();
+                    check.update(body);
+                    if (body.length < length || (int)check.getValue() != expectedCrc) {
+                        throw new IOException("incomplete or corrupt record");
+                    }
+                    apply(ByteBuffer.wrap(body));
+                    position += HEADER_BYTES + length;
+                } catch (IOException ex) {
+                    if (!lastSegment) {
+                        throw new IOException(String.format("%s corrupt at offset %d", segment, position), ex);
+                    }
+                    log.warn("discarding incomplete tail of {} at offset {}", segment, position);
+                    return position;
+                }
+            }
+        }
+    }
+
+    private void apply(ByteBuffer body) {
+        byte op = body.get();
+        switch (op) {
+            case PUT:
+            case UNVERSIONED_PUT: {
+                long version = op == PUT ? body.getLong() : GestureVersion.next();
+                String gestureType = readString(body);
+                String gesture = readString(body);
+                GestureVersion.observe(version);
+                if (valueOf(gestureType, gestures.put(gestureType, new VersionedGesture(gesture, version))) == null) {
+                    count.incrementAndGet();
+                }
+                break;
+            }
+            case REMOVE: {
+                String gestureType = readString(body);
+                if (valueOf(gestureType, gestures.get(gestureType)) != null) {
+                    count.decrementAndGet();
+                    gestures.compute(gestureType, (key, mapped) -> removed());
+                }
+                break;
+            }
+            case CLEAR:
+                gestures.clear();
+                count.set(0);
+                releaseBase();
+                break;
+            default: throw new IllegalStateException("unknown gesture log operation " + op);
+        }
+    }
+
+    /*
+     * Copies the mapped snapshot into the map without overwriting keys
+     * changed since startup, then releases the mapping. Stops early if a
+     * clear() or close() releases it first.
+     */
+    private void warm(GestureSnapshot snapshot) {
+        long start = System.nanoTime();
+        try {
+            snapshot.forEach((gestureType, gesture, version) -> {
+                changeLock.readLock().lock();
+                try {
+                    if (base != snapshot || !open) {
+                        throw new CancellationException();
+                    }
+                    gestures.putIfAbsent(gestureType, new VersionedGesture(gesture, version));
+                } finally {
+                    changeLock.readLock().unlock();
+                }
+            });
+        } catch (CancellationException ex) {
+            return;
+        } catch (RuntimeException ex) {
+            log.warn("copying gesture snapshot into memory failed, lookups continue from the mapping", ex);
+            return;
+        }
+        changeLock.writeLock().lock();
+        try {
+            if (base != snapshot || !open) {
+                return;
+            }
+            releaseBase();
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+        log.info("copied {} gestures from the snapshot into memory in {} ms", snapshot.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /*
+     * Called during recovery or with the change lock held exclusively.
+     * Closing the file leaves the mapping valid for lookups still using it.
+     */
+    private void releaseBase() {
+        GestureSnapshot snapshot = base;
+        base = null;
+        if (snapshot != null) {
+            try {
+                snapshot.close();
+            } catch (IOException ex) {
+                log.warn("closing gesture snapshot failed", ex);
+            }
+        }
+    }
+
+    private void openLog(long sequence, long validBytes) throws IOException {
+        if (logChannel != null) {
+            logChannel.close();
+        }
+        logChannel = FileChannel.open(logPath(sequence), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        logChannel.truncate(validBytes);
+        logChannel.position(validBytes);
+        logSequence = sequence;
+        logBytes = validBytes;
+    }
+
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // not supported on every platform; the rename is still atomic
+        }
+    }
+
+    private Path logPath(long sequence) {
+        return dir.resolve(LOG_PREFIX + sequence + LOG_SUFFIX);
+    }
+
+    private Path snapshotPath(long sequence) {
+        return dir.resolve(SNAPSHOT_PREFIX + sequence + SNAPSHOT_SUFFIX);
+    }
+
+    private static long sequenceOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static String readString(ByteBuffer body) {
+        int length = body.getInt();
+        String value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+
+    /*
+     * Waits for everything already queued to become durable, then stops
+     * the writer. Changes attempted afterwards are rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        changeLock.writeLock().lock();
+        try {
+            open = false;
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+            snapshotter.shutdown();
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        logChannel.close();
+        GestureSnapshot snapshot = base;
+        if (snapshot != null) {
+            snapshot.close(); // the mapping stays readable
+        }
+    }
+}
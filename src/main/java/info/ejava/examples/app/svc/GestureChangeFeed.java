@@ -0,0 +1,239 @@
+package info.ejava.examples.app.svc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import info.ejava.examples.app.svc.GestureService.ChangeType;
+import info.ejava.examples.app.svc.GestureService.GestureChange;
+import info.ejava.examples.app.svc.GestureService.GestureChangePage;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * A bounded, in-memory history of the changes made through the
+ * GestureService, numbered by sequence, that any number of clients can
+ * follow as a stream or by long-polling instead of re-reading the store.
+ *
+ * - Changes are written into a ring of capacity slots. Publishers never
+ *   wait for readers; each change overwrites the one capacity changes
+ *   before it. A reader that falls that far behind has missed changes and
+ *   is evicted with GoneException, telling it to re-read the store.
+ * - Every reader keeps only its own position in the ring and reads from it
+ *   as its subscriber requests changes, so a slow connection is held back
+ *   by its own demand and costs no buffered copies.
+ * - Readers with nothing left to read wait to be woken by the next publish.
+ *   Wake-ups run on the delivery scheduler, never on the thread making the
+ *   change.
+ * - Sequences start from the time the feed was created in microseconds, so
+ *   a position saved before a restart is reported as expired rather than
+ *   taken for a position in the new history.
+ */
+@Slf4j
+public class GestureChangeFeed {
+
+    private final AtomicReferenceArray<GestureChange> ring;
+    private final int mask;
+    private final long first;
+    private final AtomicLong nextSequence;
+    private final Set<Runnable> waiting = ConcurrentHashMap.newKeySet();
+    private final Scheduler delivery;
+
+    public GestureChangeFeed(int capacity) {
+        this(capacity, Schedulers.parallel());
+    }
+
+    /*
+     * @param capacity rounded up to a power of 2
+     */
+    public GestureChangeFeed(int capacity, Scheduler delivery) {
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.first = System.currentTimeMillis() * 1000;
+        this.nextSequence = new AtomicLong(first);
+        this.delivery = delivery;
+    }
+
+    /*
+     * Callers publish changes to a gestureType in the order they applied
+     * them; the feed orders changes to different gestureTypes as published.
+     * @return the sequence of the change
+     */
+    public long publish(ChangeType type, String gestureType, String gesture, long version) {
+        return publish(type, gestureType, gesture, version, null);
+    }
+
+    // publishes a change replicated from the origin peer
+    public long publish(ChangeType type, String gestureType, String gesture, long version, String origin) {
+        long sequence = nextSequence.getAndIncrement();
+        GestureChange change = new GestureChange(sequence, type, gestureType, gesture, version, origin);
+        // a publisher delayed by a full lap must not overwrite a later change
+        ring.accumulateAndGet((int)(sequence & mask), change,
+                (current, next) -> current == null || current.getSequence() < next.getSequence() ? next : current);
+        for (Runnable reader: waiting) {
+            if (waiting.remove(reader)) {
+                delivery.schedule(reader);
+            }
+        }
+        return sequence;
+    }
+
+    // the position that follows only changes published from now on
+    public long getLatestSequence() {
+        return nextSequence.get() - 1;
+    }
+
+    /*
+     * @return the change at sequence, or null if it has not been published yet
+     * @throws GoneException if it has already been overwritten
+     */
+    private GestureChange at(long sequence) {
+        if (sequence < first) {
+            throw ClientErrorException.GoneException.stackless("change %d is not in this history, which starts at %d",
+                    sequence, first);
+        }
+        GestureChange change = ring.get((int)(sequence & mask));
+        if (change == null || change.getSequence() < sequence) {
+            return null;
+        }
+        if (change.getSequence() > sequence) {
+            throw ClientErrorException.GoneException.stackless("change %d has expired, %d are retained",
+                    sequence, mask + 1);
+        }
+        return change;
+    }
+
+    private long start(long after) {
+        return after < 0 ? getLatestSequence() : after;
+    }
+
+    /*
+     * @return up to limit changes after the given sequence, without waiting
+     */
+    public GestureChangePage read(long after, int limit) {
+        long position = start(after);
+        List<GestureChange> changes = new ArrayList<>(Math.min(limit, 16));
+        GestureChange change;
+        while (changes.size() < limit && (change = at(position + 1)) != null) {
+            changes.add(change);
+            position = change.getSequence();
+        }
+        return new GestureChangePage(changes, position);
+    }
+
+    /*
+     * Long-poll: the changes after the given sequence (a negative sequence
+     * means from now), as soon as there is at least one, or an empty page
+     * once timeout passes.
+     */
+    public Mono<GestureChangePage> poll(long after, int limit, Duration timeout) {
+        long position = start(after);
+        at(position + 1); // reject an expired position before waiting
+        return Mono.<GestureChangePage>create(sink -> {
+            Runnable reader = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        GestureChangePage page = read(position, limit);
+                        if (!page.getChanges().isEmpty()) {
+                            sink.success(page);
+                            return;
+                        }
+                        waiting.add(this);
+                        // a change published before add() found nobody waiting
+                        if (at(position + 1) != null && waiting.remove(this)) {
+                            sink.success(read(position, limit));
+                        }
+                    } catch (ClientErrorException.GoneException ex) {
+                        sink.error(ex);
+                    }
+                }
+            };
+            sink.onDispose(() -> waiting.remove(reader));
+            reader.run();
+        })
+        .timeout(timeout, Mono.fromSupplier(() -> new GestureChangePage(List.of(), position)));
+    }
+
+    /*
+     * A stream of every change after the given sequence (a negative sequence
+     * means from now), read as the subscriber requests them. Ends with
+     * GoneException if the subscriber falls more than capacity behind.
+     */
+    public Flux<GestureChange> follow(long after) {
+        long position = start(after);
+        at(position + 1); // reject an expired position before streaming
+        return Flux.create(sink -> new Reader(position, sink).start());
+    }
+
+    private final class Reader implements Runnable {
+        private final FluxSink<GestureChange> sink;
+        private final AtomicInteger work = new AtomicInteger();
+        // only read and written by the thread holding work
+        private long position;
+
+        private Reader(long position, FluxSink<GestureChange> sink) {
+            this.position = position;
+            this.sink = sink;
+        }
+
+        private void start() {
+            sink.onDispose(() -> waiting.remove(this));
+            sink.onRequest(n -> drain());
+        }
+
+        @Override
+        public void run() {
+            drain();
+        }
+
+        /*
+         * Emits what is available and requested, then waits -- whether or
+         * not there is demand, so that a stalled subscriber is still
+         * evicted once it is lapped. Only one thread drains at a time; a
+         * call made meanwhile has it drain again.
+         */
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                try {
+                    GestureChange change;
+                    while (!sink.isCancelled() && sink.requestedFromDownstream() > 0
+                            && (change = at(position + 1)) != null) {
+                        position = change.getSequence();
+                        sink.next(change);
+                    }
+                    if (sink.isCancelled()) {
+                        return;
+                    }
+                    waiting.add(this);
+                    // a change published before add() found nobody waiting
+                    if (at(position + 1) != null && sink.requestedFromDownstream() > 0 && waiting.remove(this)) {
+                        continue;
+                    }
+                } catch (ClientErrorException.GoneException ex) {
+                    log.debug("evicting change subscriber at {}: {}", position, ex.getMessage());
+                    sink.error(ex);
+                    return;
+                }
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package info.ejava.examples.app.svc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Interns gesture values for a store holding many gestureTypes with few
+ * distinct values, so that every gestureType with the same value holds
+ * the same String. Each value is counted by the gestures holding it, and
+ * dropped from the dictionary when the last of them is released.
+ *
+ * - acquire of a value already held is a get and a compare-and-set of its
+ *   count; only a value's first acquire locks, within ConcurrentHashMap.
+ * - A count that has reached zero is never raised again. Its entry is
+ *   removed, and the next acquire adds a new one.
+ * - release only counts down the entry whose String it is given, so a
+ *   value held from before clear() never counts down its newer entry.
+ *
+ * Values are what the stores would hold anyway, so a miscount can only
+ * cost sharing -- a duplicate of a value, or an entry kept -- never
+ * change a value.
+ */
+public class GestureDictionary {
+
+    private static final class Entry {
+        private final String value;
+        private final AtomicInteger holders = new AtomicInteger(1);
+
+        private Entry(String value) {
+            this.value = value;
+        }
+
+        // @return false once the count has reached zero
+        private boolean hold() {
+            for (int current = holders.get(); current > 0; current = holders.get()) {
+                if (holders.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // @return the shared instance of value, to be released when no longer held
+    public String acquire(String value) {
+        Entry entry = entries.get(value);
+        if (entry != null && entry.hold()) {
+            return entry.value;
+        }
+        return entries.compute(value, (key, current) -> current != null && current.hold() ? current : new Entry(key))
+                      .value;
+    }
+
+    // releases a value returned by acquire; null is ignored
+    public void release(String value) {
+        if (value == null) {
+            return;
+        }
+        Entry entry = entries.get(value);
+        if (entry != null && entry.value == value && entry.holders.decrementAndGet() == 0) {
+            entries.remove(value, entry);
+        }
+    }
+
+    // the number of distinct values held
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
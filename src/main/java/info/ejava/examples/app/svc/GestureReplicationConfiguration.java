@@ -0,0 +1,31 @@
+package info.ejava.examples.app.svc;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/*
+ * Replicates gestures between the nodes listed as peers under
+ * gestures.replication when gestures.replication.enabled=true. The
+ * GestureReplicator starts following the peers once the server is up.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name="gestures.replication.enabled", havingValue="true")
+public class GestureReplicationConfiguration {
+
+    @Bean
+    @ConfigurationProperties("gestures.replication")
+    public ReplicationConfig replicationConfig() {
+        return new ReplicationConfig();
+    }
+
+    @Bean
+    public GestureReplicator gestureReplicator(ReplicationConfig replicationConfig,
+                                               GestureService gestures, GestureTombstones tombstones,
+                                               MeterRegistry registry) {
+        return new GestureReplicator(replicationConfig, gestures, tombstones, registry);
+    }
+}
@@ -0,0 +1,305 @@
+package info.ejava.examples.app.svc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.common.web.HttpClientFactory;
+import info.ejava.examples.app.common.web.ServerConfig;
+import info.ejava.examples.app.svc.GestureService.ChangeType;
+import info.ejava.examples.app.svc.GestureService.GestureChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Keeps this node's gestures in step with its peers'. A thread per peer
+ * follows the peer's change feed over HTTP, long-polling for up to
+ * batchSize changes at a time, and applies the changes made on that peer
+ * here, in the order the peer made them, each at the version it was made
+ * with (see GestureServiceImpl). Changes the peer itself
+ * replicated from elsewhere are skipped -- every node follows every other
+ * directly -- so no change is sent back to where it came from. Every change
+ * read, wherever it was made, tells which deletes the peer has passed (see
+ * GestureTombstones).
+ *
+ * Anti-entropy: a peer's gestures are compared with this node's when
+ * starting, whenever its feed cannot be followed from the last position
+ * read (the peer restarted, or this node fell more than the feed's
+ * capacity behind), and every resyncInterval.
+ * - The peer's gestures are read a page at a time, each listed with its
+ *   version, so a resync costs one request per page however many differ.
+ *   The peer's tombstones follow, listed the same way.
+ * - A gesture or delete is taken from the peer, at the peer's version, when
+ *   that version is newer than both this node's version of the gesture and
+ *   its tombstone. Versions are times of change (see GestureVersion) kept
+ *   as they replicate, so nodes that disagreed settle on the last change
+ *   made, and a gesture deleted here is not taken back from a peer that
+ *   has yet to apply the delete.
+ * - Peers keep a tombstone until every node has passed it, so the deletes
+ *   made while a node was down are caught up when it resyncs.
+ *
+ * Meters: gestures.replication.changes counts the changes applied from
+ * each peer, gestures.replication.resyncs the comparisons made, and
+ * gestures.replication.errors the failures to reach or apply from it.
+ * Each failure is retried after retryDelay, so one bad response never
+ * stops replication from a peer.
+ */
+@Slf4j
+public class GestureReplicator implements SmartLifecycle {
+
+    public static final String CHANGES = "gestures.replication.changes";
+    public static final String RESYNCS = "gestures.replication.resyncs";
+    public static final String ERRORS = "gestures.replication.errors";
+    public static final int RESYNC_PAGE_SIZE = 1000;
+
+    private final ReplicationConfig config;
+    private final GestureService gestures;
+    private final GestureTombstones tombstones;
+    private final MeterRegistry registry;
+    private final List<PeerFollower> followers = new ArrayList<>();
+    private volatile boolean running;
+
+    public GestureReplicator(ReplicationConfig config, GestureService gestures, GestureTombstones tombstones,
+                             MeterRegistry registry) {
+        this.config = config;
+        this.gestures = gestures;
+        this.tombstones = tombstones;
+        this.registry = registry;
+    }
+
+    // the name changes replicated from the peer are published with
+    public static String originOf(ServerConfig peer) {
+        return peer.getBaseUrl().toString();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (ServerConfig peer: config.getPeers()) {
+            PeerFollower follower = new PeerFollower(peer.build());
+            followers.add(follower);
+            follower.thread.start();
+        }
+        log.info("replicating with {} peers", followers.size());
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        for (PeerFollower follower: followers) {
+            follower.stop();
+        }
+        followers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private final class PeerFollower implements Runnable {
+        private final String origin;
+        private final HttpClientFactory clients;
+        private final RestClient restClient;
+        private final Counter changes;
+        private final Counter resyncs;
+        private final Counter errors;
+        private final Thread thread;
+        private boolean failing;
+
+        private PeerFollower(ServerConfig peer) {
+            this.origin = originOf(peer);
+            this.clients = new HttpClientFactory(peer);
+            this.restClient = clients.restClient();
+            this.changes = Counter.builder(CHANGES).tag("peer", origin).register(registry);
+            this.resyncs = Counter.builder(RESYNCS).tag("peer", origin).register(registry);
+            this.errors = Counter.builder(ERRORS).tag("peer", origin).register(registry);
+            this.thread = new Thread(this, "gesture-replication-" + peer.getHost() + "-" + peer.getPort());
+            this.thread.setDaemon(true);
+        }
+
+        private void stop() {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                clients.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            long position = -1;
+            long nextResync = 0;
+            while (running) {
+                try {
+                    if (position < 0 || System.nanoTime() - nextResync >= 0) {
+                        position = resync(position);
+                        nextResync = System.nanoTime() + config.getResyncInterval().toNanos();
+                    }
+                    position = follow(position);
+                    if (failing) {
+                        log.info("reconnected to {}", origin);
+                        failing = false;
+                    }
+                } catch (HttpClientErrorException.Gone ex) {
+                    log.info("changes of {} cannot be followed from {}, resyncing", origin, position);
+                    position = -1;
+                } catch (RestClientException ex) {
+                    if (!running) {
+                        return;
+                    }
+                    errors.increment();
+                    if (!failing) {
+                        log.warn("unable to replicate from {}, retrying: {}", origin,
+                                ex.getMostSpecificCause().toString());
+                        failing = true;
+                    }
+                    if (!awaitRetry()) {
+                        return;
+                    }
+                } catch (RuntimeException ex) {
+                    // a response or change that could not be applied; the position is kept, so it is retried
+                    if (!running) {
+                        return;
+                    }
+                    errors.increment();
+                    if (!failing) {
+                        log.warn("replicating from {} failed at {}, retrying", origin, position, ex);
+                        failing = true;
+                    } else {
+                        log.debug("replicating from {} failed again at {}", origin, position, ex);
+                    }
+                    if (!awaitRetry()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        // @return false if interrupted while waiting, to stop
+        private boolean awaitRetry() {
+            try {
+                Thread.sleep(config.getRetryDelay().toMillis());
+                return true;
+            } catch (InterruptedException interrupted) {
+                return false;
+            }
+        }
+
+        private JsonNode poll(long after, long timeoutSeconds) {
+            return restClient.get()
+                    .uri(uri -> uri.path("/" + GestureApi.GESTURE_CHANGES_PATH)
+                                   .queryParam("after", after)
+                                   .queryParam("limit", config.getBatchSize())
+                                   .queryParam("timeout", timeoutSeconds)
+                                   .build())
+                    .accept(MediaType.APPLICATION_JSON)
+                    .retrieve()
+                    .body(JsonNode.class);
+        }
+
+        // @return the position to follow from
+        private long follow(long position) {
+            JsonNode page = poll(position, config.getPollTimeout().toSeconds());
+            List<GestureChange> made = new ArrayList<>();
+            for (JsonNode change: page.path("changes")) {
+                if (text(change, "origin") == null) {
+                    made.add(new GestureChange(change.path("sequence").asLong(),
+                            ChangeType.valueOf(change.path("type").asText()),
+                            text(change, "gestureType"), text(change, "gesture"),
+                            change.path("version").asLong(), origin));
+                }
+            }
+            if (!made.isEmpty()) {
+                gestures.applyChanges(origin, made);
+                changes.increment(made.size());
+            }
+            for (JsonNode change: page.path("changes")) {
+                passed(change);
+            }
+            return page.path("last").asLong();
+        }
+
+        /*
+         * @return the position to follow from: the one given or, without
+         * one, the peer's latest from before its gestures were read
+         */
+        private long resync(long position) {
+            long start = position >= 0 ? position : poll(-1, 0).path("last").asLong();
+            resyncs.increment();
+            int taken = resync(GestureApi.GESTURES_PATH, ChangeType.UPSERTED);
+            int deleted = resync(GestureApi.GESTURE_TOMBSTONES_PATH, ChangeType.DELETED);
+            log.info("resynced with {}, taking {} gestures and {} deletes", origin, taken, deleted);
+            return start;
+        }
+
+        /*
+         * Takes the entries of each page of path that are newer than this
+         * node's, as changes of the given type.
+         * @return the number taken
+         */
+        private int resync(String path, ChangeType type) {
+            int taken = 0;
+            String continuation = null;
+            do {
+                String after = continuation;
+                JsonNode page = restClient.get()
+                        .uri(uri -> uri.path("/" + path)
+                                       .queryParam("limit", RESYNC_PAGE_SIZE)
+                                       .queryParamIfPresent("continue", Optional.ofNullable(after))
+                                       .build())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .retrieve()
+                        .body(JsonNode.class);
+                List<GestureChange> newer = new ArrayList<>();
+                for (JsonNode entry: page.path("gestures")) {
+                    String gestureType = text(entry, "gestureType");
+                    long version = entry.path("version").asLong();
+                    if (version > Math.max(gestures.getGestureVersion(gestureType), tombstones.getVersion(gestureType))) {
+                        newer.add(new GestureChange(0, type, gestureType, text(entry, "gesture"), version, origin));
+                    }
+                }
+                if (!newer.isEmpty()) {
+                    gestures.applyChanges(origin, newer);
+                    taken += newer.size();
+                }
+                for (JsonNode entry: page.path("gestures")) {
+                    passed(entry);
+                }
+                continuation = text(page, "next");
+            } while (continuation != null);
+            return taken;
+        }
+
+        // the peer has the gesture of a change or listed entry at its version, or changed it then
+        private void passed(JsonNode change) {
+            long version = change.path("version").asLong();
+            String gestureType = text(change, "gestureType");
+            if (version != 0 && gestureType != null) {
+                tombstones.passed(origin, gestureType, version);
+            }
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.path(field);
+        return value.isMissingNode() || value.isNull() ? null : value.asText();
+    }
+}
@@ -1,6 +1,10 @@
 package info.ejava.examples.app.svc;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -16,9 +20,130 @@ public interface GestureService {
         private final String previousValue;
     }
 
+    /*
+     * A gesture as listed in a GesturePage, with the version (see
+     * GestureVersion) it was read at.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class GestureEntry {
+        private final String gestureType;
+        private final String gesture;
+        private final long version;
+    }
+
+    /*
+     * One page of gestures in gestureType order. next is the opaque
+     * continuation token for the following page or null on the last page.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class GesturePage {
+        private final List<GestureEntry> gestures;
+        private final String next;
+    }
+
+    /*
+     * A gesture ready to be written without building a String: its UTF-8
+     * value followed, when a target was given, by SEPARATOR and the UTF-8
+     * target. Writers send the parts one after the other. version is the
+     * version of the gesture that was read. gesture and target are the
+     * caller's own; no service shares them with another read.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class GestureBody {
+        // shared by every body; never modified
+        public static final byte[] SEPARATOR = {',', ' '};
+
+        private final byte[] gesture;
+        private final byte[] target;
+        private final long version;
+
+        public int getContentLength() {
+            return gesture.length + (target == null ? 0 : SEPARATOR.length + target.length);
+        }
+    }
+
+    public enum ChangeType { UPSERTED, DELETED, CLEARED }
+
+    /*
+     * One change published to the GestureChangeFeed. gesture and version are
+     * the new value of an upsert and its version (see GestureVersion). A
+     * delete has a version of its own, and no gesture. When CLEARED,
+     * gestureType and gesture are null and version is 0.
+     * origin names the peer a replicated change was first made on, and is
+     * null for changes made through this node.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class GestureChange {
+        private final long sequence;
+        private final ChangeType type;
+        private final String gestureType;
+        private final String gesture;
+        private final long version;
+        private final String origin;
+    }
+
+    /*
+     * Changes in sequence order. last is the sequence to continue after:
+     * that of the last change, or the requested position when empty.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class GestureChangePage {
+        private final List<GestureChange> changes;
+        private final long last;
+    }
+
+    public enum BatchStatus { CREATED, REPLACED, FOUND, DELETED, NOT_FOUND }
+
+    /*
+     * The outcome of one item of a batch. value is the previous gesture for
+     * upserts and deletes, and the current gesture for gets.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class BatchResult {
+        private final String gestureType;
+        private final BatchStatus status;
+        private final String value;
+    }
+
     public UpsertResult upsertGesture(String gestureType, String gesture);
     public String getGesture(String gestureType, String target);
+    public GestureBody getGestureBody(String gestureType, String target);
+    /*
+     * getGestureBody for callers that expect misses: an unknown gestureType
+     * is reported as empty rather than by NotFoundException.
+     */
+    public Optional<GestureBody> findGestureBody(String gestureType, String target);
+    /*
+     * The conditional forms act only while the gesture is still at
+     * expectedVersion and throw PreconditionFailedException otherwise.
+     * getGestureVersion returns 0 for an unknown gestureType.
+     */
+    public long getGestureVersion(String gestureType);
+    public long replaceGesture(String gestureType, String gesture, long expectedVersion);
+    public void deleteGesture(String gestureType, long expectedVersion);
     public void deleteGesture(String gestureType);
     public void deleteAllGesture();
     public List<String> getAllGesture();
+    public GesturePage getGesturePage(String continuation, int limit);
+    /*
+     * A page of the gestures whose gestureType starts with prefix or, given
+     * a glob instead, matches it: '*' standing for any chars and '?' for
+     * one. Paged like getGesturePage.
+     */
+    public GesturePage searchGestures(String prefix, String glob, String continuation, int limit);
+    public void forEachGesture(BiConsumer<String, String> action);
+    public List<BatchResult> upsertGestures(Map<String, String> gestures);
+    public List<BatchResult> getGestures(Collection<String> gestureTypes, String target);
+    public List<BatchResult> deleteGestures(Collection<String> gestureTypes);
+    /*
+     * Applies changes replicated from the origin peer, in order, publishing
+     * them to the GestureChangeFeed marked with their origin.
+     */
+    public void applyChanges(String origin, List<GestureChange> changes);
 }
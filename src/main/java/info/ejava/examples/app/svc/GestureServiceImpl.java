@@ -1,31 +1,211 @@
 package info.ejava.examples.app.svc;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Fallback;
 import org.springframework.stereotype.Service;
 
 import lombok.extern.slf4j.Slf4j;
 
+/*
+ * Every change is also published to the GestureChangeFeed. A change to a
+ * gestureType is applied and published holding that gestureType's stripe
+ * lock, so the feed lists changes to it in the order the store applied
+ * them. clear() and the batches, which span gestureTypes, hold every stripe.
+ * A store's wait for a change to become durable is deferred until the
+ * stripes are released (see durably), so no writer waits behind another's
+ * log force, and as many as are waiting join the same group commit.
+ *
+ * An upsert replicated from a peer keeps the version it was made with
+ * there, and is only applied over an older version, so that nodes settle
+ * on the last change made to a gestureType wherever it was made. A delete
+ * takes a version too, and leaves a tombstone at it while replicating (see
+ * GestureTombstones). A replicated upsert or delete is compared with the
+ * later of the gesture's version and its tombstone's, so a delete is
+ * undone only by a later upsert, and an upsert only by a later delete.
+ *
+ * With gestures.index.enabled=true the gestureTypes are also kept in a
+ * GestureTypeIndex, built from the store at startup and changed under the
+ * same locks, so that pages and searches walk only the gestureTypes they
+ * return. It is off by default: building it reads every key of the store
+ * onto the heap, which a memory-mapped or off-heap store exists to avoid.
+ * Without it, pages and searches are scans of the store (see
+ * GestureStore.scan), which the sorted store answers from its order.
+ *
+ * A fallback bean, so that the decorators in front of it are injected as the
+ * GestureService when they are enabled.
+ */
 @Service
+@Fallback
 @Slf4j
 public class GestureServiceImpl implements GestureService {
 
-    private Map<String,String> gestures = new HashMap<>();
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_BATCH_SIZE = 10_000;
+    public static final int DEFAULT_CHANGE_CAPACITY = 8192;
+
+    private final GestureStore gestures;
+    private final GestureChangeFeed changes;
+    // null unless enabled
+    private final GestureTypeIndex index;
+    private final GestureTombstones tombstones;
+    private final ReentrantLock[] stripes = new ReentrantLock[64];
+
+    public GestureServiceImpl(GestureStore gestures) {
+        this(gestures, new GestureChangeFeed(DEFAULT_CHANGE_CAPACITY), false);
+    }
+
+    public GestureServiceImpl(GestureStore gestures, GestureChangeFeed changes, boolean indexed) {
+        this(gestures, changes, new GestureTombstones(List.of()), indexed);
+    }
+
+    @Autowired
+    public GestureServiceImpl(GestureStore gestures, GestureChangeFeed changes, GestureTombstones tombstones,
+                              @Value("${gestures.index.enabled:false}") boolean indexed) {
+        this.gestures = gestures;
+        this.changes = changes;
+        this.tombstones = tombstones;
+        for (int i=0; i<stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.index = indexed ? new GestureTypeIndex() : null;
+        if (indexed) {
+            gestures.forEach((gestureType, gesture) -> index.add(gestureType));
+        }
+    }
+
+    private ReentrantLock stripe(String gestureType) {
+        int hash = gestureType.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock stripe: stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i=stripes.length-1; i>=0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    // called for a gestureType the store did not hold before a change, holding its stripe lock
+    private void added(String gestureType) {
+        if (index != null) {
+            index.add(gestureType);
+        }
+        tombstones.remove(gestureType);
+    }
+
+    // called for a gestureType deleted at version, holding its stripe lock
+    private void deleted(String gestureType, long version, String origin) {
+        if (index != null) {
+            index.remove(gestureType);
+        }
+        tombstones.add(gestureType, version);
+        changes.publish(ChangeType.DELETED, gestureType, null, version, origin);
+    }
+
+    // the version a replicated change must be later than to apply
+    private long localVersion(String gestureType) {
+        return Math.max(gestures.getVersion(gestureType), tombstones.getVersion(gestureType));
+    }
+
+    // makes a change, taking its own locks, and only then waits for the store to make it durable
+    private <T> T durably(Supplier<T> change) {
+        try (GestureStore.DeferredDurability durability = gestures.deferDurability()) {
+            T result = change.get();
+            durability.await();
+            return result;
+        }
+    }
 
     @Override
     public UpsertResult upsertGesture(String gestureType, String gesture) {
-        // data access method
-        String previousGesture = gestures.put(gestureType,gesture);
+        String previousGesture = upsert(gestureType, gesture, null);
         log.debug("set gesture({}) to {}, returning previous value {}", gestureType, gesture, previousGesture);
         return new UpsertResult(previousGesture==null,previousGesture);
     }
 
+    private String upsert(String gestureType, String gesture, String origin) {
+        return durably(() -> {
+            ReentrantLock stripe = stripe(gestureType);
+            stripe.lock();
+            try {
+                // data access method
+                String previousGesture = gestures.put(gestureType,gesture);
+                if (previousGesture == null) {
+                    added(gestureType);
+                }
+                changes.publish(ChangeType.UPSERTED, gestureType, gesture, gestures.getVersion(gestureType), origin);
+                return previousGesture;
+            } finally {
+                stripe.unlock();
+            }
+        });
+    }
+
+    private void replicate(String gestureType, String gesture, long version, String origin) {
+        GestureVersion.observe(version);
+        durably(() -> {
+            ReentrantLock stripe = stripe(gestureType);
+            stripe.lock();
+            try {
+                if (localVersion(gestureType) >= version) {
+                    log.debug("gesture({}) from {} at version {} is not newer, skipping", gestureType, origin, version);
+                    return null;
+                }
+                if (gestures.put(gestureType, gesture, version) == null) {
+                    added(gestureType);
+                }
+                changes.publish(ChangeType.UPSERTED, gestureType, gesture, version, origin);
+                return null;
+            } finally {
+                stripe.unlock();
+            }
+        });
+    }
+
+    /*
+     * A delete is republished even when this node did not hold the gesture,
+     * so that peers following it see that it passed the delete.
+     */
+    private void replicateDelete(String gestureType, long version, String origin) {
+        GestureVersion.observe(version);
+        durably(() -> {
+            ReentrantLock stripe = stripe(gestureType);
+            stripe.lock();
+            try {
+                if (localVersion(gestureType) >= version) {
+                    log.debug("delete of gesture({}) from {} at version {} is not newer, skipping", gestureType, origin, version);
+                    return null;
+                }
+                gestures.remove(gestureType);
+                deleted(gestureType, version, origin);
+                return null;
+            } finally {
+                stripe.unlock();
+            }
+        });
+    }
+
     @Override
     public List<String> getAllGesture(){
-        List<String> gestureList = new ArrayList<>(this.gestures.values());
+        List<String> gestureList = gestures.values();
         if(null == gestureList){
             log.debug(" gesture list is empty , size - {}", gestureList.size() );
             throw new ClientErrorException.NotFoundException("gesture liust is empty, size- %s",gestureList.size());
@@ -35,6 +215,183 @@ public class GestureServiceImpl implements GestureService {
         }
     }
 
+    /*
+     * Pages walk the GestureTypeIndex, when kept, from the continuation, so
+     * a page costs its own size. Otherwise they are scans of the store.
+     */
+    @Override
+    public GesturePage getGesturePage(String continuation, int limit) {
+        return page(null, null, continuation, limit);
+    }
+
+    @Override
+    public GesturePage searchGestures(String prefix, String glob, String continuation, int limit) {
+        if (prefix != null && glob != null) {
+            throw new ClientErrorException.InvalidInputException("prefix [%s] and match [%s] cannot be combined", prefix, glob);
+        }
+        return page(prefix, glob, continuation, limit);
+    }
+
+    private GesturePage page(String prefix, String glob, String continuation, int limit) {
+        validateLimit(limit);
+        String after = decodeContinuation(continuation);
+        List<GestureEntry> page = new ArrayList<>(Math.min(limit, 16));
+        boolean[] more = {false};
+        if (index == null) {
+            Predicate<String> filter = glob != null ? GestureTypeIndex.globPattern(glob).asMatchPredicate() :
+                    prefix != null ? gestureType -> gestureType.startsWith(prefix) : gestureType -> true;
+            more[0] = gestures.scan(after, limit, filter,
+                    (gestureType, gesture, version) -> page.add(new GestureEntry(gestureType, gesture, version)));
+            return toPage(prefix, glob, after, page, more[0]);
+        }
+        Predicate<String> collect = gestureType -> {
+            if (page.size() == limit) {
+                more[0] = true;
+                return false;
+            }
+            // removed since it was visited
+            GestureStore.EncodedGesture gesture = gestures.getEncoded(gestureType);
+            if (gesture != null) {
+                page.add(new GestureEntry(gestureType, new String(gesture.getGesture(), StandardCharsets.UTF_8),
+                                          gesture.getVersion()));
+            }
+            return true;
+        };
+        if (glob != null) {
+            index.visitMatching(glob, after, collect);
+        } else {
+            index.visit(prefix, after, collect);
+        }
+        return toPage(prefix, glob, after, page, more[0]);
+    }
+
+    private static GesturePage toPage(String prefix, String glob, String after, List<GestureEntry> page, boolean more) {
+        String next = more && !page.isEmpty() ? encodeContinuation(page.get(page.size()-1).getGestureType()) : null;
+        log.debug("gesture page prefix [{}] match [{}] after [{}] returning {} entries, next {}",
+                prefix, glob, after, page.size(), next);
+        return new GesturePage(page, next);
+    }
+
+    // also used by GestureTombstones, which is paged the same way
+    static void validateLimit(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ClientErrorException.InvalidInputException("limit [%d] must be between 1 and %d", limit, MAX_PAGE_SIZE);
+        }
+    }
+
+    @Override
+    public void forEachGesture(BiConsumer<String, String> action) {
+        gestures.forEach(action);
+    }
+
+    @Override
+    public List<BatchResult> upsertGestures(Map<String, String> gestures) {
+        validateBatch(gestures);
+        List<BatchResult> results = new ArrayList<>(gestures.size());
+        durably(() -> {
+            lockAll();
+            try {
+                this.gestures.putAll(gestures, (gestureType, previousGesture) -> {
+                    results.add(new BatchResult(gestureType,
+                            previousGesture==null ? BatchStatus.CREATED : BatchStatus.REPLACED, previousGesture));
+                    if (previousGesture == null) {
+                        added(gestureType);
+                    }
+                });
+                gestures.forEach((gestureType, gesture) ->
+                        changes.publish(ChangeType.UPSERTED, gestureType, gesture, this.gestures.getVersion(gestureType)));
+                return null;
+            } finally {
+                unlockAll();
+            }
+        });
+        log.debug("upserted batch of {} gestures", results.size());
+        return results;
+    }
+
+    @Override
+    public List<BatchResult> getGestures(Collection<String> gestureTypes, String target) {
+        validateBatch(gestureTypes);
+        List<BatchResult> results = new ArrayList<>(gestureTypes.size());
+        gestures.getAll(gestureTypes, (gestureType, gesture) -> results.add(gesture==null ?
+                new BatchResult(gestureType, BatchStatus.NOT_FOUND, null) :
+                new BatchResult(gestureType, BatchStatus.FOUND, gesture + (target == null ? "": ", "+target))));
+        log.debug("returning batch of {} gestures", results.size());
+        return results;
+    }
+
+    @Override
+    public List<BatchResult> deleteGestures(Collection<String> gestureTypes) {
+        validateBatch(gestureTypes);
+        List<BatchResult> results = new ArrayList<>(gestureTypes.size());
+        durably(() -> {
+            lockAll();
+            try {
+                gestures.removeAll(gestureTypes, (gestureType, previousGesture) -> {
+                    results.add(new BatchResult(gestureType,
+                            previousGesture==null ? BatchStatus.NOT_FOUND : BatchStatus.DELETED, previousGesture));
+                    if (previousGesture != null) {
+                        deleted(gestureType, GestureVersion.next(), null);
+                    }
+                });
+                return null;
+            } finally {
+                unlockAll();
+            }
+        });
+        log.debug("removed batch of {} gestures", results.size());
+        return results;
+    }
+
+    /*
+     * Batches are checked before any lock is taken or the store is touched,
+     * so a bad item rejects the whole batch. Also used by the decorators,
+     * ahead of their own use of the batch.
+     */
+    static void validateBatch(Map<String, String> batch) {
+        validateBatchSize(batch.size());
+        batch.forEach((gestureType, gesture) -> {
+            if (gestureType == null || gesture == null) {
+                throw new ClientErrorException.InvalidInputException("batch gesture type [%s] and gesture [%s] are required",
+                        gestureType, gesture);
+            }
+        });
+    }
+
+    static void validateBatch(Collection<String> gestureTypes) {
+        validateBatchSize(gestureTypes.size());
+        for (String gestureType: gestureTypes) {
+            if (gestureType == null) {
+                throw new ClientErrorException.InvalidInputException("batch gesture types cannot be null");
+            }
+        }
+    }
+
+    private static void validateBatchSize(int size) {
+        if (size > MAX_BATCH_SIZE) {
+            throw new ClientErrorException.InvalidInputException("batch size [%d] exceeds maximum of %d", size, MAX_BATCH_SIZE);
+        }
+    }
+
+    /*
+     * The token is the last gestureType returned, so it remains valid no
+     * matter what is added or removed between pages.
+     */
+    static String encodeContinuation(String gestureType) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(gestureType.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String decodeContinuation(String continuation) {
+        if (continuation == null || continuation.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(continuation), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new ClientErrorException.InvalidInputException(ex, "invalid continuation token [%s]", continuation);
+        }
+    }
+
     @Override
     public String getGesture(String gestureType, String target) {
         // data access method
@@ -42,7 +399,7 @@ public class GestureServiceImpl implements GestureService {
 
         if(null == gesture){
             log.debug("gestureType [{}] not found ", gestureType);
-            throw new ClientErrorException.NotFoundException("gesture type [%s] not found", gestureType);
+            throw ClientErrorException.NotFoundException.stackless("gesture type [%s] not found", gestureType);
         } else {
             String response = gesture + (target == null ? "": ", "+target);
             log.debug("{} gesture returning {} for {} ", gestureType, response, target);
@@ -52,18 +409,145 @@ public class GestureServiceImpl implements GestureService {
 
     }
 
+    @Override
+    public GestureBody getGestureBody(String gestureType, String target) {
+        return findGestureBody(gestureType, target).orElseThrow(() ->
+                ClientErrorException.NotFoundException.stackless("gesture type [%s] not found", gestureType));
+    }
+
+    @Override
+    public Optional<GestureBody> findGestureBody(String gestureType, String target) {
+        GestureStore.EncodedGesture gesture = gestures.getEncoded(gestureType);
+        if (null == gesture) {
+            log.debug("gestureType [{}] not found ", gestureType);
+            return Optional.empty();
+        }
+        log.debug("{} gesture returning body for {}", gestureType, target);
+        return Optional.of(new GestureBody(gesture.getGesture(), target == null ? null : target.getBytes(StandardCharsets.UTF_8),
+                               gesture.getVersion()));
+    }
+
+    @Override
+    public long getGestureVersion(String gestureType) {
+        return gestures.getVersion(gestureType);
+    }
+
+    @Override
+    public long replaceGesture(String gestureType, String gesture, long expectedVersion) {
+        long version = durably(() -> {
+            ReentrantLock stripe = stripe(gestureType);
+            stripe.lock();
+            try {
+                long replaced = gestures.replace(gestureType, expectedVersion, gesture);
+                if (replaced != 0) {
+                    changes.publish(ChangeType.UPSERTED, gestureType, gesture, replaced);
+                }
+                return replaced;
+            } finally {
+                stripe.unlock();
+            }
+        });
+        if (version == 0) {
+            log.debug("gestureType [{}] no longer at version {}", gestureType, expectedVersion);
+            throw ClientErrorException.PreconditionFailedException.stackless(
+                    "gesture type [%s] is not at the expected version", gestureType);
+        }
+        log.debug("replaced gesture({}) version {} with {}, now version {}", gestureType, expectedVersion, gesture, version);
+        return version;
+    }
+
+    @Override
+    public void deleteGesture(String gestureType, long expectedVersion) {
+        boolean removed = durably(() -> {
+            ReentrantLock stripe = stripe(gestureType);
+            stripe.lock();
+            try {
+                boolean matched = gestures.remove(gestureType, expectedVersion);
+                if (matched) {
+                    deleted(gestureType, GestureVersion.next(), null);
+                }
+                return matched;
+            } finally {
+                stripe.unlock();
+            }
+        });
+        if (!removed) {
+            log.debug("gestureType [{}] no longer at version {}", gestureType, expectedVersion);
+            throw ClientErrorException.PreconditionFailedException.stackless(
+                    "gesture type [%s] is not at the expected version", gestureType);
+        }
+        log.debug("removed gesture ({}) at version {}", gestureType, expectedVersion);
+    }
+
     @Override
     public void deleteGesture(String gestureType) {
-        // data access method 
-        String gesture = gestures.remove(gestureType);
+        String gesture = delete(gestureType, null);
         log.debug("removed gesture ({}) - was {} ", gestureType, gesture);
     }
 
+    private String delete(String gestureType, String origin) {
+        return durably(() -> {
+            ReentrantLock stripe = stripe(gestureType);
+            stripe.lock();
+            try {
+                // data access method
+                String gesture = gestures.remove(gestureType);
+                if (gesture != null) {
+                    deleted(gestureType, GestureVersion.next(), origin);
+                }
+                return gesture;
+            } finally {
+                stripe.unlock();
+            }
+        });
+    }
+
     @Override
     public void deleteAllGesture() {
         log.debug("removing all gestures - {}", gestures.size());
-        // data access method
-        gestures.clear();
+        clear(null);
+    }
+
+    private void clear(String origin) {
+        durably(() -> {
+            lockAll();
+            try {
+                // data access method
+                gestures.clear();
+                if (index != null) {
+                    index.clear();
+                }
+                tombstones.clear();
+                changes.publish(ChangeType.CLEARED, null, null, 0, origin);
+                return null;
+            } finally {
+                unlockAll();
+            }
+        });
+    }
+
+    @Override
+    public void applyChanges(String origin, List<GestureChange> changes) {
+        for (GestureChange change: changes) {
+            switch (change.getType()) {
+                case UPSERTED -> {
+                    if (change.getVersion() == 0) {
+                        upsert(change.getGestureType(), change.getGesture(), origin);
+                    } else {
+                        replicate(change.getGestureType(), change.getGesture(), change.getVersion(), origin);
+                    }
+                }
+                case DELETED -> {
+                    if (change.getVersion() == 0) {
+                        delete(change.getGestureType(), origin);
+                    } else {
+                        replicateDelete(change.getGestureType(), change.getVersion(), origin);
+                    }
+                }
+                case CLEARED -> clear(origin);
+            }
+        }
+        log.debug("applied {} changes from {}", changes.size(), origin);
     }
 
 }
@@ -0,0 +1,333 @@
+package info.ejava.examples.app.svc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * An immutable, memory-mapped file of gestures that answers lookups
+ * without first being loaded into the heap.
+ *
+ * Layout (big-endian):
+ *   header  : magic(int) format(int) count(long) tableOffset(long) tableSize(long) maxVersion(long)
+ *   records : keyLength(int) key(UTF-8) version(long) valueLength(int) value(UTF-8) ...
+ *   table   : tableSize slots(long), open addressing with linear probing
+ *
+ * Each slot holds the record offset in its upper 40 bits and the low 24
+ * bits of the key's String.hashCode() in the rest, so most probes that
+ * miss are rejected without touching the record. 0 marks an empty slot.
+ * The file is mapped in 1GB regions; records are padded so none crosses
+ * a region boundary.
+ *
+ * Each record keeps the version of its gesture, and the header the
+ * highest of them, so that opening a snapshot can move GestureVersion past
+ * every version it holds without reading the records. Format 1 files,
+ * written before versions were kept, are still read; their gestures take
+ * one version issued when the file is opened.
+ */
+public class GestureSnapshot implements Closeable {
+
+    private static final int MAGIC = 0x47535332; // GSS2
+    private static final int FORMAT = 2;
+    private static final int UNVERSIONED_FORMAT = 1;
+    private static final int HEADER_BYTES = 40;
+    private static final int UNVERSIONED_HEADER_BYTES = 32;
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_BYTES = 1L << REGION_SHIFT;
+    private static final int TAG_BITS = 24;
+    private static final long TAG_MASK = (1L << TAG_BITS) - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final long count;
+    private final long tableOffset;
+    private final long tableMask;
+    private final long maxVersion;
+    // the version of every gesture in a format 1 file, else -1
+    private final long unversioned;
+    private final int headerBytes;
+
+    private GestureSnapshot(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        regions = new MappedByteBuffer[(int)((size + REGION_BYTES - 1) >>> REGION_SHIFT)];
+        for (int i=0; i<regions.length; i++) {
+            long start = (long)i << REGION_SHIFT;
+            regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_BYTES, size - start));
+        }
+        if (size < UNVERSIONED_HEADER_BYTES || getInt(0) != MAGIC) {
+            throw new IOException("not a gesture snapshot");
+        }
+        int format = getInt(4);
+        if (format == FORMAT ? size < HEADER_BYTES : format != UNVERSIONED_FORMAT) {
+            throw new IOException("not a gesture snapshot");
+        }
+        count = getLong(8);
+        tableOffset = getLong(16);
+        tableMask = getLong(24) - 1;
+        if (format == FORMAT) {
+            headerBytes = HEADER_BYTES;
+            maxVersion = getLong(32);
+            unversioned = -1;
+        } else {
+            headerBytes = UNVERSIONED_HEADER_BYTES;
+            maxVersion = unversioned = GestureVersion.next();
+        }
+        GestureVersion.observe(maxVersion);
+    }
+
+    public static GestureSnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new GestureSnapshot(channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public long size() {
+        return count;
+    }
+
+    // the highest version of any gesture in the snapshot
+    public long maxVersion() {
+        return maxVersion;
+    }
+
+    public String get(String gestureType) {
+        return VersionedGesture.gestureOf(find(gestureType));
+    }
+
+    public long getVersion(String gestureType) {
+        return VersionedGesture.versionOf(find(gestureType));
+    }
+
+    VersionedGesture find(String gestureType) {
+        int hash = gestureType.hashCode();
+        long tag = hash & TAG_MASK;
+        byte[] key = null;
+        for (long index = spread(hash) & tableMask; ; index = (index + 1) & tableMask) {
+            long slot = getLong(tableOffset + index * 8);
+            if (slot == 0) {
+                return null;
+            }
+            if ((slot & TAG_MASK) != tag) {
+                continue;
+            }
+            if (key == null) {
+                key = gestureType.getBytes(StandardCharsets.UTF_8);
+            }
+            long offset = slot >>> TAG_BITS;
+            ByteBuffer region = regions[(int)(offset >>> REGION_SHIFT)];
+            int position = (int)(offset & (REGION_BYTES - 1));
+            int keyLength = region.getInt(position);
+            if (keyLength == key.length && region.slice(position + 4, keyLength).equals(ByteBuffer.wrap(key))) {
+                return read(region, position + 4 + keyLength, null);
+            }
+        }
+    }
+
+    /*
+     * Visits the records in file order, which reads the mapping sequentially.
+     */
+    public void forEach(GestureStore.GestureVisitor action) {
+        long offset = headerBytes;
+        for (long i=0; i<count; i++) {
+            ByteBuffer region = regions[(int)(offset >>> REGION_SHIFT)];
+            int position = (int)(offset & (REGION_BYTES - 1));
+            if (position + 4 > region.limit() || region.getInt(position) < 0) {
+                // padding to the next region
+                offset = ((offset >>> REGION_SHIFT) + 1) << REGION_SHIFT;
+                i--;
+                continue;
+            }
+            int keyLength = region.getInt(position);
+            String key = decode(region, position + 4, keyLength);
+            int[] valueLength = new int[1];
+            VersionedGesture value = read(region, position + 4 + keyLength, valueLength);
+            action.accept(key, value.gesture, value.version);
+            offset += 8 + keyLength + (unversioned < 0 ? 8 : 0) + valueLength[0];
+        }
+    }
+
+    // reads the version and value following a key, reporting the value's length if asked
+    private VersionedGesture read(ByteBuffer region, int position, int[] valueLength) {
+        long version = unversioned;
+        if (unversioned < 0) {
+            version = region.getLong(position);
+            position += 8;
+        }
+        int length = region.getInt(position);
+        if (valueLength != null) {
+            valueLength[0] = length;
+        }
+        return new VersionedGesture(decode(region, position + 4, length), version);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int getInt(long offset) {
+        return regions[(int)(offset >>> REGION_SHIFT)].getInt((int)(offset & (REGION_BYTES - 1)));
+    }
+
+    private long getLong(long offset) {
+        return regions[(int)(offset >>> REGION_SHIFT)].getLong((int)(offset & (REGION_BYTES - 1)));
+    }
+
+    private static String decode(ByteBuffer region, int position, int length) {
+        byte[] bytes = new byte[length];
+        region.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long spread(int hash) {
+        return (hash * 0x9E3779B9L) >>> 7 ^ hash;
+    }
+
+    /*
+     * Streams entries into a new snapshot file. The source may change while
+     * it is being visited; the entry count is taken from what was written.
+     * Only the hash and offset of each record (12 bytes) are held in the
+     * heap; the table itself is built in a mapping of the file.
+     */
+    public static void write(Path file, GestureSource source) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel);
+            source.forEach(writer::append);
+            writer.finish();
+            channel.force(true);
+        }
+    }
+
+    @FunctionalInterface
+    public interface GestureSource {
+        void forEach(GestureStore.GestureVisitor action) throws IOException;
+    }
+
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        private long position = HEADER_BYTES;
+        private int[] hashes = new int[1024];
+        private long[] offsets = new long[1024];
+        private int count;
+        private long maxVersion;
+
+        private Writer(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(position);
+        }
+
+        private void append(String gestureType, String gesture, long version) {
+            byte[] key = gestureType.getBytes(StandardCharsets.UTF_8);
+            byte[] value = gesture.getBytes(StandardCharsets.UTF_8);
+            int length = 16 + key.length + value.length;
+            long regionPosition = position & (REGION_BYTES - 1);
+            if (regionPosition + length > REGION_BYTES) {
+                // mark the rest of the region as padding and continue in the next
+                if (REGION_BYTES - regionPosition >= 4) {
+                    put(ByteBuffer.allocate(4).putInt(0, -1));
+                }
+                position += REGION_BYTES - regionPosition;
+                flush();
+                position(position);
+            }
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            hashes[count] = gestureType.hashCode();
+            offsets[count++] = position;
+            maxVersion = Math.max(maxVersion, version);
+            if (length > buffer.remaining()) {
+                flush();
+            }
+            if (length > buffer.capacity()) {
+                write(ByteBuffer.allocate(length).putInt(key.length).put(key).putLong(version)
+                        .putInt(value.length).put(value).flip());
+            } else {
+                buffer.putInt(key.length).put(key).putLong(version).putInt(value.length).put(value);
+            }
+            position += length;
+        }
+
+        private void put(ByteBuffer bytes) {
+            if (bytes.remaining() > buffer.remaining()) {
+                flush();
+            }
+            buffer.put(bytes);
+        }
+
+        private void flush() {
+            write(buffer.flip());
+            buffer.clear();
+        }
+
+        private void position(long newPosition) {
+            try {
+                channel.position(newPosition);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private void write(ByteBuffer bytes) {
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private void finish() throws IOException {
+            flush();
+            long tableOffset = (position + 7) & ~7L;
+            long tableSize = Long.highestOneBit(Math.max(2, (long)count * 2 - 1)) << 1;
+            long tableBytes = tableSize * 8;
+            MappedByteBuffer[] table = new MappedByteBuffer[(int)((tableBytes + REGION_BYTES - 1) >>> REGION_SHIFT)];
+            for (int i=0; i<table.length; i++) {
+                long start = (long)i << REGION_SHIFT;
+                table[i] = channel.map(FileChannel.MapMode.READ_WRITE, tableOffset + start,
+                                       Math.min(REGION_BYTES, tableBytes - start));
+            }
+            long mask = tableSize - 1;
+            for (int i=0; i<count; i++) {
+                long index = spread(hashes[i]) & mask;
+                while (slot(table, index) != 0) {
+                    index = (index + 1) & mask;
+                }
+                long slotOffset = index * 8;
+                table[(int)(slotOffset >>> REGION_SHIFT)].putLong((int)(slotOffset & (REGION_BYTES - 1)),
+                                                               offsets[i] << TAG_BITS | (hashes[i] & TAG_MASK));
+            }
+            for (MappedByteBuffer region: table) {
+                region.force();
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC).putInt(FORMAT).putLong(count).putLong(tableOffset).putLong(tableSize)
+                    .putLong(maxVersion)
+                    .flip();
+            channel.position(0);
+            write(header);
+        }
+
+        private static long slot(MappedByteBuffer[] table, long index) {
+            long slotOffset = index * 8;
+            return table[(int)(slotOffset >>> REGION_SHIFT)].getLong((int)(slotOffset & (REGION_BYTES - 1)));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package info.ejava.examples.app.svc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/*
+ * This interface defines the storage used behind the GestureService.
+ * Implementations are shared by every request thread and must perform
+ * each operation atomically, so that the previous value returned by a
+ * put/remove reflects exactly one point in the history of the key.
+ * Every change gives the gesture a new version from GestureVersion, which
+ * callers compare to detect changes without comparing values.
+ */
+public interface GestureStore {
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class EncodedGesture {
+        private final byte[] gesture;
+        private final long version;
+    }
+
+    // visits a gesture together with its version, read at the same point in its history
+    @FunctionalInterface
+    public interface GestureVisitor {
+        void accept(String gestureType, String gesture, long version);
+    }
+
+    /*
+     * A scope, from deferDurability() to close(), in which the changes made
+     * by the thread return without waiting to become durable. await() then
+     * waits for all of them at once, so callers can release their own locks
+     * before waiting.
+     */
+    public interface DeferredDurability extends AutoCloseable {
+        DeferredDurability NONE = new DeferredDurability() {
+            @Override
+            public void await() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        // waits for the changes made in the scope, and ends it
+        void await();
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Stores that do not wait for durability, and scopes begun within
+     * another, return NONE.
+     */
+    public default DeferredDurability deferDurability() {
+        return DeferredDurability.NONE;
+    }
+
+    /**
+     * @return the previous gesture or null if the gestureType was not present
+     */
+    public String put(String gestureType, String gesture);
+
+    /**
+     * Puts the gesture at the given version instead of a new one, for a
+     * change replicated from the peer it was made on, which keeps the
+     * version it was made with there.
+     * @return the previous gesture or null if the gestureType was not present
+     */
+    public String put(String gestureType, String gesture, long version);
+
+    /**
+     * @return the current gesture or null if the gesture was added
+     */
+    public String putIfAbsent(String gestureType, String gesture);
+
+    /**
+     * @return true if the current gesture equaled expected and was replaced
+     */
+    public boolean replace(String gestureType, String expected, String gesture);
+
+    public String get(String gestureType);
+
+    /**
+     * @return the gesture encoded as UTF-8 together with its version, read
+     * at the same point in its history, or null if not present. Stores
+     * holding values as bytes return them without building a String. The
+     * array is the caller's own.
+     */
+    public EncodedGesture getEncoded(String gestureType);
+
+    /**
+     * @return the version of the gesture (see GestureVersion) or 0 if not
+     * present, without reading its value
+     */
+    public long getVersion(String gestureType);
+
+    /**
+     * Replaces the gesture only while it is still at expectedVersion.
+     * @return the new version, or 0 if the gesture was absent or had changed
+     */
+    public long replace(String gestureType, long expectedVersion, String gesture);
+
+    /**
+     * @return true if the gesture was at expectedVersion and was removed
+     */
+    public boolean remove(String gestureType, long expectedVersion);
+
+    public String remove(String gestureType);
+    public void clear();
+    public int size();
+
+    /**
+     * Applies a batch of puts in a single call, reporting the previous value
+     * (or null) of each gestureType in the order of the batch. Stores with
+     * per-call overhead (locking, logging) should override this to pay it once.
+     */
+    public default void putAll(Map<String, String> gestures, BiConsumer<String, String> previousValues) {
+        gestures.forEach((gestureType, gesture) -> previousValues.accept(gestureType, put(gestureType, gesture)));
+    }
+
+    /**
+     * Reports the current value (or null) of each gestureType in batch order.
+     */
+    public default void getAll(Collection<String> gestureTypes, BiConsumer<String, String> values) {
+        for (String gestureType: gestureTypes) {
+            values.accept(gestureType, get(gestureType));
+        }
+    }
+
+    /**
+     * Removes each gestureType, reporting its previous value (or null) in batch order.
+     */
+    public default void removeAll(Collection<String> gestureTypes, BiConsumer<String, String> previousValues) {
+        for (String gestureType: gestureTypes) {
+            previousValues.accept(gestureType, remove(gestureType));
+        }
+    }
+
+    /**
+     * Visits each gestureType/gesture pair without making a copy of the store.
+     * Concurrent modifications may or may not be reflected in the visit.
+     */
+    public void forEach(BiConsumer<String, String> action);
+
+    /**
+     * @return every gesture value, in no particular order. Partitioned
+     * stores may collect their partitions in parallel.
+     */
+    public default List<String> values() {
+        List<String> values = new ArrayList<>(size());
+        forEach((gestureType, gesture) -> values.add(gesture));
+        return values;
+    }
+
+    /**
+     * Visits up to limit entries whose gestureType passes filter, in
+     * gestureType order, starting after the given gestureType (or from the
+     * beginning when null). Ordering by key keeps the position stable while
+     * other entries are added or removed. GestureServiceImpl pages through
+     * the store this way when it keeps no GestureTypeIndex.
+     * This default selects each page with a full pass over the store, then
+     * reads the entries selected with getEncoded, for their versions; an
+     * entry removed in between is left out. Ordered stores should override it.
+     * @return true if more matching entries remain after the last one visited
+     */
+    public default boolean scan(String afterGestureType, int limit, Predicate<String> filter,
+                                GestureVisitor action) {
+        TreeSet<String> page = new TreeSet<>();
+        int[] remaining = new int[1];
+        forEach((gestureType, gesture) -> {
+            if (afterGestureType != null && gestureType.compareTo(afterGestureType) <= 0 || !filter.test(gestureType)) {
+                return;
+            }
+            remaining[0] += 1;
+            if (page.size() < limit) {
+                page.add(gestureType);
+            } else if (gestureType.compareTo(page.last()) < 0) {
+                page.pollLast();
+                page.add(gestureType);
+            }
+        });
+        for (String gestureType: page) {
+            EncodedGesture gesture = getEncoded(gestureType);
+            if (gesture != null) {
+                action.accept(gestureType, new String(gesture.getGesture(), StandardCharsets.UTF_8), gesture.getVersion());
+            }
+        }
+        return remaining[0] > page.size();
+    }
+}
@@ -0,0 +1,83 @@
+package info.ejava.examples.app.svc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * Selects the GestureStore implementation using the gestures.store property.
+ * The concurrent store is used when nothing has been specified. Also sizes
+ * the GestureChangeFeed, whose capacity is how far behind a change
+ * subscriber may fall before it is evicted, and keeps GestureTombstones for
+ * the replication peers, when there are any.
+ */
+@Configuration(proxyBeanMethods = false)
+public class GestureStoreConfiguration {
+
+    public static final String STORE_PROPERTY = "gestures.store";
+
+    // gestures.concurrent.intern-values=true shares values among gestureTypes through a GestureDictionary
+    @Bean
+    @ConditionalOnProperty(name=STORE_PROPERTY, havingValue="concurrent", matchIfMissing=true)
+    public GestureStore concurrentGestureStore(
+            @Value("${gestures.concurrent.intern-values:false}") boolean internValues) {
+        return new ConcurrentGestureStore(16, internValues ? new GestureDictionary() : null);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name=STORE_PROPERTY, havingValue="synchronized")
+    public GestureStore synchronizedGestureStore() {
+        return new SynchronizedGestureStore();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name=STORE_PROPERTY, havingValue="sorted")
+    public GestureStore sortedGestureStore() {
+        return new SortedGestureStore();
+    }
+
+    // gestures.sharded.shards=0 gives a shard per core
+    @Bean
+    @ConditionalOnProperty(name=STORE_PROPERTY, havingValue="sharded")
+    public GestureStore shardedGestureStore(
+            @Value("${gestures.sharded.shards:0}") int shards,
+            @Value("${gestures.sharded.initial-capacity:16}") int initialCapacity) {
+        return new ShardedGestureStore(shards > 0 ? shards : Runtime.getRuntime().availableProcessors(), initialCapacity);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name=STORE_PROPERTY, havingValue="offheap")
+    public GestureStore offHeapGestureStore(
+            @Value("${gestures.offheap.segments:64}") int segments,
+            @Value("${gestures.offheap.slab-bytes:1048576}") int slabBytes,
+            @Value("${gestures.offheap.initial-capacity:16}") int initialCapacity) {
+        return new OffHeapGestureStore(segments, slabBytes, initialCapacity);
+    }
+
+    @Bean(destroyMethod="close")
+    @ConditionalOnProperty(name=STORE_PROPERTY, havingValue="durable")
+    public GestureStore durableGestureStore(
+            @Value("${gestures.durable.dir:gestures-data}") Path dir,
+            @Value("${gestures.durable.snapshot-log-bytes:67108864}") long snapshotLogBytes,
+            @Value("${gestures.durable.max-batch:4096}") int maxBatch,
+            @Value("${gestures.durable.initial-capacity:16}") int initialCapacity) throws IOException {
+        return new DurableGestureStore(dir, snapshotLogBytes, maxBatch, initialCapacity);
+    }
+
+    @Bean
+    public GestureChangeFeed gestureChangeFeed(
+            @Value("${gestures.changes.capacity:8192}") int capacity) {
+        return new GestureChangeFeed(capacity);
+    }
+
+    @Bean
+    public GestureTombstones gestureTombstones(ObjectProvider<ReplicationConfig> replicationConfig) {
+        ReplicationConfig replication = replicationConfig.getIfAvailable(ReplicationConfig::new);
+        return new GestureTombstones(replication.getPeers().stream().map(GestureReplicator::originOf).toList());
+    }
+}
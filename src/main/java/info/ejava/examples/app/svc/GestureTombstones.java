@@ -0,0 +1,124 @@
+package info.ejava.examples.app.svc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import info.ejava.examples.app.svc.GestureService.GestureEntry;
+import info.ejava.examples.app.svc.GestureService.GesturePage;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * The deletes a replicating node still has to remember: for each deleted
+ * gestureType, the version of its delete (see GestureVersion) and the
+ * peers not yet known to have passed it.
+ *
+ * - GestureServiceImpl records a tombstone with each delete it applies,
+ *   and compares a replicated change with the later of the store's
+ *   version and the tombstone's, holding the gestureType's stripe lock, so
+ *   an upsert made before a delete never revives the gesture it deleted.
+ *   A gesture stored again replaces its tombstone.
+ * - A peer has passed a tombstone once it is seen, in the peer's change
+ *   feed or listings, with a change to the gestureType at the tombstone's
+ *   version or later: the delete itself, which the peer republishes when
+ *   it applies it, or a change that superseded it. A peer's changes to a
+ *   gestureType are in its feed in the order it made them, so anything it
+ *   made before the delete has been read by then. Once every peer has
+ *   passed a tombstone it is dropped.
+ * - A peer that is down keeps every tombstone made meanwhile, and reads
+ *   them when it resyncs from the listing (see page).
+ * - Without peers nothing is recorded.
+ *
+ * Tombstones are held in memory. A node restarting reads those of its
+ * peers when it resyncs, including for the deletes made on it that they
+ * received.
+ */
+@Slf4j
+public class GestureTombstones {
+
+    private final Set<String> peers;
+    private final ConcurrentSkipListMap<String, Tombstone> tombstones = new ConcurrentSkipListMap<>();
+
+    private static final class Tombstone {
+        private final long version;
+        private final Set<String> pending;
+
+        private Tombstone(long version, Collection<String> peers) {
+            this.version = version;
+            this.pending = ConcurrentHashMap.newKeySet(peers.size());
+            this.pending.addAll(peers);
+        }
+    }
+
+    // @param peers the origins (see GestureReplicator.originOf) that must pass each tombstone
+    public GestureTombstones(Collection<String> peers) {
+        this.peers = Set.copyOf(peers);
+    }
+
+    public int size() {
+        return tombstones.size();
+    }
+
+    // @return the version gestureType was deleted at, or 0 if it has no tombstone
+    public long getVersion(String gestureType) {
+        Tombstone tombstone = tombstones.get(gestureType);
+        return tombstone == null ? 0 : tombstone.version;
+    }
+
+    // called holding the gestureType's stripe lock
+    void add(String gestureType, long version) {
+        if (!peers.isEmpty()) {
+            tombstones.put(gestureType, new Tombstone(version, peers));
+        }
+    }
+
+    // called holding the gestureType's stripe lock, when it is stored again
+    void remove(String gestureType) {
+        if (!peers.isEmpty()) {
+            tombstones.remove(gestureType);
+        }
+    }
+
+    // called holding every stripe lock
+    void clear() {
+        tombstones.clear();
+    }
+
+    /*
+     * Records that the peer has gestureType at version, or changed it then.
+     * A tombstone at that version or before is passed by the peer, and
+     * dropped when it was the last one pending.
+     */
+    public void passed(String peer, String gestureType, long version) {
+        tombstones.computeIfPresent(gestureType, (key, tombstone) -> {
+            if (tombstone.version > version || !tombstone.pending.remove(peer) || !tombstone.pending.isEmpty()) {
+                return tombstone;
+            }
+            log.debug("tombstone of {} at version {} passed by every peer, dropping", key, tombstone.version);
+            return null;
+        });
+    }
+
+    /*
+     * A page of the tombstones in gestureType order, each as an entry with
+     * no gesture at the version of its delete. Paged like
+     * GestureService.getGesturePage.
+     */
+    public GesturePage page(String continuation, int limit) {
+        GestureServiceImpl.validateLimit(limit);
+        String after = GestureServiceImpl.decodeContinuation(continuation);
+        Map<String, Tombstone> tail = after == null ? tombstones : tombstones.tailMap(after, false);
+        List<GestureEntry> page = new ArrayList<>(Math.min(limit, 16));
+        for (Map.Entry<String, Tombstone> entry: tail.entrySet()) {
+            if (page.size() == limit) {
+                return new GesturePage(page, GestureServiceImpl.encodeContinuation(page.get(page.size()-1).getGestureType()));
+            }
+            page.add(new GestureEntry(entry.getKey(), null, entry.getValue().version));
+        }
+        return new GesturePage(page, null);
+    }
+}
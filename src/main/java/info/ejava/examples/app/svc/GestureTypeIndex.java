@@ -0,0 +1,123 @@
+package info.ejava.examples.app.svc;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/*
+ * The gestureTypes of a store in gestureType order, kept by
+ * GestureServiceImpl alongside it when gestures.index.enabled=true, so
+ * that the gestureTypes under a prefix are found by walking only the
+ * range they sort in -- from any position within it.
+ *
+ * - The gestureTypes are held in a ConcurrentSkipListSet: adds and
+ *   removes of different gestureTypes proceed in parallel, and a walk
+ *   starts at its position in O(log n).
+ * - Readers take no locks. Like a ConcurrentHashMap iterator, a walk may
+ *   or may not reflect the changes made during it.
+ * - The set holds the gestureTypes it is given, so a store keeping them
+ *   as Strings shares them with the index rather than copying them.
+ */
+public class GestureTypeIndex {
+
+    private final ConcurrentSkipListSet<String> gestureTypes = new ConcurrentSkipListSet<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public int size() {
+        return size.get();
+    }
+
+    // @return true if gestureType was added, false if already present
+    public boolean add(String gestureType) {
+        if (!gestureTypes.add(gestureType)) {
+            return false;
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+    // @return true if gestureType was removed, false if not present
+    public boolean remove(String gestureType) {
+        if (!gestureTypes.remove(gestureType)) {
+            return false;
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    // not atomic with adds and removes made meanwhile; callers exclude them
+    public void clear() {
+        gestureTypes.clear();
+        size.set(0);
+    }
+
+    /*
+     * Visits, in order, each gestureType starting with prefix (every one
+     * when null) and ordered after the given gestureType (from the first
+     * when null), until visitor returns false. Only the range the prefix
+     * sorts in is walked, and within it only the part after the position.
+     */
+    public void visit(String prefix, String after, Predicate<String> visitor) {
+        visit(prefix, after, null, visitor);
+    }
+
+    /*
+     * As visit, for the gestureTypes matching a glob: '*' matches any run
+     * of chars, including none, and '?' any single char. The range under
+     * the glob's chars up to its first wildcard is walked.
+     */
+    public void visitMatching(String glob, String after, Predicate<String> visitor) {
+        int wildcard = 0;
+        while (wildcard < glob.length() && glob.charAt(wildcard) != '*' && glob.charAt(wildcard) != '?') {
+            wildcard += 1;
+        }
+        if (wildcard == glob.length()) {
+            // without wildcards only glob itself matches
+            if ((after == null || glob.compareTo(after) > 0) && gestureTypes.contains(glob)) {
+                visitor.test(glob);
+            }
+        } else {
+            visit(glob.substring(0, wildcard), after, globPattern(glob), visitor);
+        }
+    }
+
+    static Pattern globPattern(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 16);
+        int literal = 0;
+        for (int i=0; i<glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal < i) {
+                    regex.append(Pattern.quote(glob.substring(literal, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literal = i + 1;
+            }
+        }
+        if (literal < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literal)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /*
+     * The gestureTypes starting with prefix sort together, from prefix
+     * itself, so the walk starts at the later of prefix and after and
+     * stops at the first gestureType past them.
+     */
+    private void visit(String prefix, String after, Pattern pattern, Predicate<String> visitor) {
+        String start = prefix == null ? "" : prefix;
+        NavigableSet<String> range = after != null && after.compareTo(start) >= 0 ?
+                gestureTypes.tailSet(after, false) : gestureTypes.tailSet(start, true);
+        for (String gestureType: range) {
+            if (!gestureType.startsWith(start)) {
+                return;
+            }
+            if ((pattern == null || pattern.matcher(gestureType).matches()) && !visitor.test(gestureType)) {
+                return;
+            }
+        }
+    }
+}
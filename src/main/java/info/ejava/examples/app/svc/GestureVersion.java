@@ -0,0 +1,41 @@
+package info.ejava.examples.app.svc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Issues the versions stores attach to gestures. Every change to any
+ * gesture takes a new version, so a version is never reused, even for a
+ * gesture that is removed and added again.
+ *
+ * A version is the time of the change in microseconds since the epoch,
+ * moved past the last one issued when changes arrive faster than the
+ * clock advances. It therefore doubles as the time the gesture was last
+ * modified, and versions issued after a restart follow those issued
+ * before it without having to be stored.
+ *
+ * Versions of changes replicated from peers are observed, so that a
+ * change made here afterwards takes a later version even when this
+ * node's clock is behind the peer's.
+ */
+public final class GestureVersion {
+
+    private static final AtomicLong last = new AtomicLong();
+
+    private GestureVersion() {
+    }
+
+    public static long next() {
+        long now = System.currentTimeMillis() * 1000;
+        return last.accumulateAndGet(now, (previous, time) -> Math.max(previous + 1, time));
+    }
+
+    public static void observe(long version) {
+        if (version > last.get()) {
+            last.accumulateAndGet(version, Math::max);
+        }
+    }
+
+    public static long toEpochMilli(long version) {
+        return version / 1000;
+    }
+}
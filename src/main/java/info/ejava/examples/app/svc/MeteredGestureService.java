@@ -0,0 +1,299 @@
+package info.ejava.examples.app.svc;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/*
+ * Records Micrometer metrics around every GestureService call and passes
+ * it on to CachingGestureService when enabled, or else GestureServiceImpl.
+ * Being the primary GestureService, it is what both web stacks call.
+ *
+ * - gestures.service: a timer per method (tag method), publishing a
+ *   percentile histogram from 1 microsecond to 10 seconds
+ * - gestures.lookups: gets of a single gestureType, tagged result=hit|miss
+ * - gestures.store.size: the number of gestures, read when scraped
+ *
+ * Every meter is registered up front and held in a field, so a call pays
+ * two System.nanoTime() reads and a histogram update -- no registry
+ * lookup, tag building or allocation. Disabled by gestures.metrics.enabled=false.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name="gestures.metrics.enabled", havingValue="true", matchIfMissing=true)
+public class MeteredGestureService implements GestureService {
+
+    public static final String TIMER = "gestures.service";
+    public static final String LOOKUPS = "gestures.lookups";
+    public static final String STORE_SIZE = "gestures.store.size";
+
+    private final GestureService gestures;
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer upsertGesture;
+    private final Timer getGesture;
+    private final Timer getGestureBody;
+    private final Timer findGestureBody;
+    private final Timer getGestureVersion;
+    private final Timer replaceGesture;
+    private final Timer deleteGesture;
+    private final Timer deleteGestureIfVersion;
+    private final Timer deleteAllGesture;
+    private final Timer getAllGesture;
+    private final Timer getGesturePage;
+    private final Timer searchGestures;
+    private final Timer forEachGesture;
+    private final Timer upsertGestures;
+    private final Timer getGestures;
+    private final Timer deleteGestures;
+    private final Timer applyChanges;
+
+    @Autowired
+    public MeteredGestureService(GestureServiceImpl gestures, Optional<CachingGestureService> cache,
+                                 GestureStore store, MeterRegistry registry) {
+        this(cache.<GestureService>map(c -> c).orElse(gestures), store, registry);
+    }
+
+    public MeteredGestureService(GestureService gestures, GestureStore store, MeterRegistry registry) {
+        this.gestures = gestures;
+        hits = Counter.builder(LOOKUPS).tag("result", "hit").register(registry);
+        misses = Counter.builder(LOOKUPS).tag("result", "miss").register(registry);
+        Gauge.builder(STORE_SIZE, store, GestureStore::size).register(registry);
+        upsertGesture = timer(registry, "upsertGesture");
+        getGesture = timer(registry, "getGesture");
+        getGestureBody = timer(registry, "getGestureBody");
+        findGestureBody = timer(registry, "findGestureBody");
+        getGestureVersion = timer(registry, "getGestureVersion");
+        replaceGesture = timer(registry, "replaceGesture");
+        deleteGesture = timer(registry, "deleteGesture");
+        deleteGestureIfVersion = timer(registry, "deleteGestureIfVersion");
+        deleteAllGesture = timer(registry, "deleteAllGesture");
+        getAllGesture = timer(registry, "getAllGesture");
+        getGesturePage = timer(registry, "getGesturePage");
+        searchGestures = timer(registry, "searchGestures");
+        forEachGesture = timer(registry, "forEachGesture");
+        upsertGestures = timer(registry, "upsertGestures");
+        getGestures = timer(registry, "getGestures");
+        deleteGestures = timer(registry, "deleteGestures");
+        applyChanges = timer(registry, "applyChanges");
+    }
+
+    private static Timer timer(MeterRegistry registry, String method) {
+        return Timer.builder(TIMER)
+                    .tag("method", method)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(1_000))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(registry);
+    }
+
+    private static void record(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public UpsertResult upsertGesture(String gestureType, String gesture) {
+        long start = System.nanoTime();
+        try {
+            return gestures.upsertGesture(gestureType, gesture);
+        } finally {
+            record(upsertGesture, start);
+        }
+    }
+
+    @Override
+    public String getGesture(String gestureType, String target) {
+        long start = System.nanoTime();
+        try {
+            String gesture = gestures.getGesture(gestureType, target);
+            hits.increment();
+            return gesture;
+        } catch (ClientErrorException.NotFoundException ex) {
+            misses.increment();
+            throw ex;
+        } finally {
+            record(getGesture, start);
+        }
+    }
+
+    @Override
+    public GestureBody getGestureBody(String gestureType, String target) {
+        long start = System.nanoTime();
+        try {
+            GestureBody body = gestures.getGestureBody(gestureType, target);
+            hits.increment();
+            return body;
+        } catch (ClientErrorException.NotFoundException ex) {
+            misses.increment();
+            throw ex;
+        } finally {
+            record(getGestureBody, start);
+        }
+    }
+
+    @Override
+    public Optional<GestureBody> findGestureBody(String gestureType, String target) {
+        long start = System.nanoTime();
+        try {
+            Optional<GestureBody> body = gestures.findGestureBody(gestureType, target);
+            (body.isPresent() ? hits : misses).increment();
+            return body;
+        } finally {
+            record(findGestureBody, start);
+        }
+    }
+
+    @Override
+    public long getGestureVersion(String gestureType) {
+        long start = System.nanoTime();
+        try {
+            return gestures.getGestureVersion(gestureType);
+        } finally {
+            record(getGestureVersion, start);
+        }
+    }
+
+    @Override
+    public long replaceGesture(String gestureType, String gesture, long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            return gestures.replaceGesture(gestureType, gesture, expectedVersion);
+        } finally {
+            record(replaceGesture, start);
+        }
+    }
+
+    @Override
+    public void deleteGesture(String gestureType, long expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            gestures.deleteGesture(gestureType, expectedVersion);
+        } finally {
+            record(deleteGestureIfVersion, start);
+        }
+    }
+
+    @Override
+    public void deleteGesture(String gestureType) {
+        long start = System.nanoTime();
+        try {
+            gestures.deleteGesture(gestureType);
+        } finally {
+            record(deleteGesture, start);
+        }
+    }
+
+    @Override
+    public void deleteAllGesture() {
+        long start = System.nanoTime();
+        try {
+            gestures.deleteAllGesture();
+        } finally {
+            record(deleteAllGesture, start);
+        }
+    }
+
+    @Override
+    public List<String> getAllGesture() {
+        long start = System.nanoTime();
+        try {
+            return gestures.getAllGesture();
+        } finally {
+            record(getAllGesture, start);
+        }
+    }
+
+    @Override
+    public GesturePage getGesturePage(String continuation, int limit) {
+        long start = System.nanoTime();
+        try {
+            return gestures.getGesturePage(continuation, limit);
+        } finally {
+            record(getGesturePage, start);
+        }
+    }
+
+    @Override
+    public GesturePage searchGestures(String prefix, String glob, String continuation, int limit) {
+        long start = System.nanoTime();
+        try {
+            return gestures.searchGestures(prefix, glob, continuation, limit);
+        } finally {
+            record(searchGestures, start);
+        }
+    }
+
+    // times the whole visit, including the caller's action
+    @Override
+    public void forEachGesture(BiConsumer<String, String> action) {
+        long start = System.nanoTime();
+        try {
+            gestures.forEachGesture(action);
+        } finally {
+            record(forEachGesture, start);
+        }
+    }
+
+    @Override
+    public List<BatchResult> upsertGestures(Map<String, String> batch) {
+        long start = System.nanoTime();
+        try {
+            return gestures.upsertGestures(batch);
+        } finally {
+            record(upsertGestures, start);
+        }
+    }
+
+    @Override
+    public List<BatchResult> getGestures(Collection<String> gestureTypes, String target) {
+        long start = System.nanoTime();
+        try {
+            List<BatchResult> results = gestures.getGestures(gestureTypes, target);
+            int found = 0;
+            for (BatchResult result: results) {
+                if (result.getStatus() == BatchStatus.FOUND) {
+                    found += 1;
+                }
+            }
+            hits.increment(found);
+            misses.increment(results.size() - found);
+            return results;
+        } finally {
+            record(getGestures, start);
+        }
+    }
+
+    @Override
+    public List<BatchResult> deleteGestures(Collection<String> gestureTypes) {
+        long start = System.nanoTime();
+        try {
+            return gestures.deleteGestures(gestureTypes);
+        } finally {
+            record(deleteGestures, start);
+        }
+    }
+
+    @Override
+    public void applyChanges(String origin, List<GestureChange> changes) {
+        long start = System.nanoTime();
+        try {
+            gestures.applyChanges(origin, changes);
+        } finally {
+            record(applyChanges, start);
+        }
+    }
+}
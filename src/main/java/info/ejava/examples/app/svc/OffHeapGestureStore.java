@@ -0,0 +1,521 @@
+package info.ejava.examples.app.svc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/*
+ * A store for very large numbers of gestures that keeps them out of the
+ * Java heap. Keys and values are held as UTF-8 bytes in direct ByteBuffer
+ * slabs and found through an open-addressing index of primitive arrays, so
+ * the number of objects the collector traces and copies does not grow
+ * with the number of gestures.
+ *
+ * - Gestures are split across segments by key hash. Each segment has its
+ *   own read/write lock, index and slabs, so lookups share a segment and
+ *   changes lock only theirs.
+ * - Records are appended to a segment's current slab as
+ *   keyLength(int) valueLength(int) version(long) key value. A value
+ *   replaced by one of the same encoded length is overwritten in place;
+ *   otherwise the new record is appended and the old one becomes garbage.
+ * - Once a segment holds more garbage than live records, the live ones
+ *   are copied into new slabs and the old slabs are dropped.
+ * - The index uses linear probing with backward-shift deletion, so
+ *   removals leave no tombstones. It doubles when 3/4 full.
+ *
+ * Slabs count against -XX:MaxDirectMemorySize, which defaults to -Xmx.
+ * Strings are only created to return values, and getEncoded copies a
+ * value's bytes without creating one at all; getVersion reads only the
+ * record header. forEach copies one segment at a time and visits it
+ * outside the segment's lock.
+ */
+public class OffHeapGestureStore implements GestureStore {
+
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final int VERSION_OFFSET = 8;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    public OffHeapGestureStore() {
+        this(64, 1 << 20, 16);
+    }
+
+    /*
+     * @param segments rounded up to a power of 2
+     * @param slabBytes size of each direct buffer allocated; larger records get a slab of their own
+     * @param initialCapacity of the whole store, spread across the segments
+     */
+    public OffHeapGestureStore(int segments, int slabBytes, int initialCapacity) {
+        int count = segments <= 1 ? 1 : Integer.highestOneBit(segments - 1) << 1;
+        this.segments = new Segment[count];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+        for (int i=0; i<count; i++) {
+            this.segments[i] = new Segment(slabBytes, initialCapacity / count);
+        }
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[(int)((hash & 0xFFFFFFFFL) >>> segmentShift)];
+    }
+
+    private static byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String put(String gestureType, String gesture) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).put(hash, encode(gestureType), encode(gesture), false, GestureVersion.next());
+    }
+
+    @Override
+    public String put(String gestureType, String gesture, long version) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).put(hash, encode(gestureType), encode(gesture), false, version);
+    }
+
+    @Override
+    public String putIfAbsent(String gestureType, String gesture) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).put(hash, encode(gestureType), encode(gesture), true, GestureVersion.next());
+    }
+
+    @Override
+    public boolean replace(String gestureType, String expected, String gesture) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).replace(hash, encode(gestureType), encode(expected), encode(gesture));
+    }
+
+    @Override
+    public long replace(String gestureType, long expectedVersion, String gesture) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).replace(hash, encode(gestureType), expectedVersion, encode(gesture));
+    }
+
+    @Override
+    public String get(String gestureType) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).get(hash, encode(gestureType));
+    }
+
+    @Override
+    public EncodedGesture getEncoded(String gestureType) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).getEncoded(hash, encode(gestureType));
+    }
+
+    @Override
+    public long getVersion(String gestureType) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).getVersion(hash, encode(gestureType));
+    }
+
+    @Override
+    public String remove(String gestureType) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).remove(hash, encode(gestureType));
+    }
+
+    @Override
+    public boolean remove(String gestureType, long expectedVersion) {
+        int hash = spread(gestureType.hashCode());
+        return segmentFor(hash).remove(hash, encode(gestureType), expectedVersion);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment: segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment: segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, String> action) {
+        for (Segment segment: segments) {
+            segment.forEach(action);
+        }
+    }
+
+    private static final class Segment {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final int slabBytes;
+        private final int initialCapacity;
+        // address = (slab index + 1) << 32 | offset; 0 marks an empty slot
+        private long[] addresses;
+        private int[] hashes;
+        private int mask;
+        private volatile int count;
+        private List<ByteBuffer> slabs = new ArrayList<>();
+        private int top;
+        private long liveBytes;
+        private long garbageBytes;
+
+        private Segment(int slabBytes, int initialCapacity) {
+            this.slabBytes = slabBytes;
+            this.initialCapacity = Integer.highestOneBit(Math.max(8, initialCapacity * 4 / 3)) << 1;
+            newIndex(this.initialCapacity);
+        }
+
+        private void newIndex(int capacity) {
+            addresses = new long[capacity];
+            hashes = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        private String get(int hash, byte[] key) {
+            lock.readLock().lock();
+            try {
+                int index = find(hash, key);
+                return index < 0 ? null : value(addresses[index]);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private EncodedGesture getEncoded(int hash, byte[] key) {
+            lock.readLock().lock();
+            try {
+                int index = find(hash, key);
+                if (index < 0) {
+                    return null;
+                }
+                ByteBuffer slab = slab(addresses[index]);
+                int offset = (int)addresses[index];
+                byte[] value = new byte[slab.getInt(offset + 4)];
+                slab.get(offset + RECORD_HEADER_BYTES + slab.getInt(offset), value);
+                return new EncodedGesture(value, slab.getLong(offset + VERSION_OFFSET));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private long getVersion(int hash, byte[] key) {
+            lock.readLock().lock();
+            try {
+                int index = find(hash, key);
+                return index < 0 ? 0 : version(addresses[index]);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private String put(int hash, byte[] key, byte[] value, boolean onlyIfAbsent, long version) {
+            lock.writeLock().lock();
+            try {
+                int index = find(hash, key);
+                if (index < 0) {
+                    index = -index - 1;
+                    addresses[index] = append(key, value, version);
+                    hashes[index] = hash;
+                    count++;
+                    if (count > (mask + 1) / 4 * 3) {
+                        resize();
+                    }
+                    return null;
+                }
+                String previous = value(addresses[index]);
+                if (!onlyIfAbsent) {
+                    update(index, key, value, version);
+                }
+                return previous;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private boolean replace(int hash, byte[] key, byte[] expected, byte[] value) {
+            lock.writeLock().lock();
+            try {
+                int index = find(hash, key);
+                if (index < 0 || !valueEquals(addresses[index], expected)) {
+                    return false;
+                }
+                update(index, key, value, GestureVersion.next());
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private long replace(int hash, byte[] key, long expectedVersion, byte[] value) {
+            lock.writeLock().lock();
+            try {
+                int index = find(hash, key);
+                if (index < 0 || version(addresses[index]) != expectedVersion) {
+                    return 0;
+                }
+                return update(index, key, value, GestureVersion.next());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private boolean remove(int hash, byte[] key, long expectedVersion) {
+            lock.writeLock().lock();
+            try {
+                int index = find(hash, key);
+                if (index < 0 || version(addresses[index]) != expectedVersion) {
+                    return false;
+                }
+                discard(addresses[index]);
+                delete(index);
+                count--;
+                compactIfWasteful();
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private String remove(int hash, byte[] key) {
+            lock.writeLock().lock();
+            try {
+                int index = find(hash, key);
+                if (index < 0) {
+                    return null;
+                }
+                String previous = value(addresses[index]);
+                discard(addresses[index]);
+                delete(index);
+                count--;
+                compactIfWasteful();
+                return previous;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void clear() {
+            lock.writeLock().lock();
+            try {
+                newIndex(initialCapacity);
+                slabs = new ArrayList<>();
+                top = 0;
+                liveBytes = 0;
+                garbageBytes = 0;
+                count = 0;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void forEach(BiConsumer<String, String> action) {
+            String[] keys;
+            String[] values;
+            lock.readLock().lock();
+            try {
+                keys = new String[count];
+                values = new String[count];
+                int i = 0;
+                for (long address: addresses) {
+                    if (address != 0) {
+                        keys[i] = key(address);
+                        values[i++] = value(address);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (int i=0; i<keys.length; i++) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+
+        /*
+         * @return the slot holding key, else -(the empty slot ending its probe) - 1
+         */
+        private int find(int hash, byte[] key) {
+            for (int index = hash & mask; ; index = (index + 1) & mask) {
+                long address = addresses[index];
+                if (address == 0) {
+                    return -index - 1;
+                }
+                if (hashes[index] == hash && keyEquals(address, key)) {
+                    return index;
+                }
+            }
+        }
+
+        // @return version
+        private long update(int index, byte[] key, byte[] value, long version) {
+            long address = addresses[index];
+            ByteBuffer slab = slab(address);
+            int offset = (int)address;
+            if (slab.getInt(offset + 4) == value.length) {
+                slab.putLong(offset + VERSION_OFFSET, version)
+                    .put(offset + RECORD_HEADER_BYTES + key.length, value);
+                return version;
+            }
+            discard(address);
+            addresses[index] = append(key, value, version);
+            compactIfWasteful();
+            return version;
+        }
+
+        /*
+         * Empties a slot, moving later entries of the same probe sequence
+         * back so that every entry stays reachable from its home slot.
+         */
+        private void delete(int index) {
+            int empty = index;
+            for (int next = (index + 1) & mask; addresses[next] != 0; next = (next + 1) & mask) {
+                int home = hashes[next] & mask;
+                boolean reachable = empty <= next ? empty < home && home <= next : empty < home || home <= next;
+                if (!reachable) {
+                    addresses[empty] = addresses[next];
+                    hashes[empty] = hashes[next];
+                    empty = next;
+                }
+            }
+            addresses[empty] = 0;
+            hashes[empty] = 0;
+        }
+
+        private void resize() {
+            long[] oldAddresses = addresses;
+            int[] oldHashes = hashes;
+            newIndex(addresses.length * 2);
+            for (int i=0; i<oldAddresses.length; i++) {
+                if (oldAddresses[i] != 0) {
+                    int index = oldHashes[i] & mask;
+                    while (addresses[index] != 0) {
+                        index = (index + 1) & mask;
+                    }
+                    addresses[index] = oldAddresses[i];
+                    hashes[index] = oldHashes[i];
+                }
+            }
+        }
+
+        private long append(byte[] key, byte[] value, long version) {
+            int length = RECORD_HEADER_BYTES + key.length + value.length;
+            ByteBuffer slab = reserve(length);
+            slab.putInt(top, key.length)
+                .putInt(top + 4, value.length)
+                .putLong(top + VERSION_OFFSET, version)
+                .put(top + RECORD_HEADER_BYTES, key)
+                .put(top + RECORD_HEADER_BYTES + key.length, value);
+            return advance(length);
+        }
+
+        private ByteBuffer reserve(int length) {
+            ByteBuffer slab = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+            if (slab == null || top + length > slab.capacity()) {
+                slab = ByteBuffer.allocateDirect(Math.max(slabBytes, length));
+                slabs.add(slab);
+                top = 0;
+            }
+            return slab;
+        }
+
+        private long advance(int length) {
+            long address = (long)slabs.size() << 32 | top;
+            top += length;
+            liveBytes += length;
+            return address;
+        }
+
+        private void discard(long address) {
+            int length = recordLength(address);
+            liveBytes -= length;
+            garbageBytes += length;
+        }
+
+        /*
+         * Copies the live records into new slabs. Called with the write
+         * lock held, after the index is consistent.
+         */
+        private void compactIfWasteful() {
+            if (garbageBytes <= liveBytes || garbageBytes < slabBytes) {
+                return;
+            }
+            List<ByteBuffer> old = slabs;
+            slabs = new ArrayList<>();
+            top = 0;
+            liveBytes = 0;
+            garbageBytes = 0;
+            for (int i=0; i<addresses.length; i++) {
+                long address = addresses[i];
+                if (address != 0) {
+                    ByteBuffer from = old.get((int)(address >>> 32) - 1);
+                    int length = recordLength(from, (int)address);
+                    reserve(length).put(top, from, (int)address, length);
+                    addresses[i] = advance(length);
+                }
+            }
+        }
+
+        private ByteBuffer slab(long address) {
+            return slabs.get((int)(address >>> 32) - 1);
+        }
+
+        private int recordLength(long address) {
+            return recordLength(slab(address), (int)address);
+        }
+
+        private static int recordLength(ByteBuffer slab, int offset) {
+            return RECORD_HEADER_BYTES + slab.getInt(offset) + slab.getInt(offset + 4);
+        }
+
+        private boolean keyEquals(long address, byte[] key) {
+            ByteBuffer slab = slab(address);
+            int offset = (int)address;
+            return slab.getInt(offset) == key.length && bytesEqual(slab, offset + RECORD_HEADER_BYTES, key);
+        }
+
+        private boolean valueEquals(long address, byte[] value) {
+            ByteBuffer slab = slab(address);
+            int offset = (int)address;
+            return slab.getInt(offset + 4) == value.length
+                    && bytesEqual(slab, offset + RECORD_HEADER_BYTES + slab.getInt(offset), value);
+        }
+
+        private static boolean bytesEqual(ByteBuffer slab, int offset, byte[] bytes) {
+            for (int i=0; i<bytes.length; i++) {
+                if (slab.get(offset + i) != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long version(long address) {
+            return slab(address).getLong((int)address + VERSION_OFFSET);
+        }
+
+        private String key(long address) {
+            ByteBuffer slab = slab(address);
+            int offset = (int)address;
+            return decode(slab, offset + RECORD_HEADER_BYTES, slab.getInt(offset));
+        }
+
+        private String value(long address) {
+            ByteBuffer slab = slab(address);
+            int offset = (int)address;
+            return decode(slab, offset + RECORD_HEADER_BYTES + slab.getInt(offset), slab.getInt(offset + 4));
+        }
+
+        private static String decode(ByteBuffer slab, int offset, int length) {
+            byte[] bytes = new byte[length];
+            slab.get(offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package info.ejava.examples.app.svc;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Non-blocking form of the GestureService used by the WebFlux API.
+ * Errors are signaled through the returned publisher using the same
+ * ClientErrorException/ServerErrorException types.
+ */
+public interface ReactiveGestureService {
+
+    public Mono<GestureService.UpsertResult> upsertGesture(String gestureType, String gesture);
+    public Mono<String> getGesture(String gestureType, String target);
+    public Mono<GestureService.GestureBody> getGestureBody(String gestureType, String target);
+    // completes empty for an unknown gestureType rather than with NotFoundException
+    public Mono<GestureService.GestureBody> findGestureBody(String gestureType, String target);
+    public Mono<Long> getGestureVersion(String gestureType);
+    public Mono<Long> replaceGesture(String gestureType, String gesture, long expectedVersion);
+    public Mono<Void> deleteGesture(String gestureType, long expectedVersion);
+    public Mono<Void> deleteGesture(String gestureType);
+    public Mono<Void> deleteAllGesture();
+    public Flux<String> getAllGesture();
+    public Mono<GestureService.GesturePage> getGesturePage(String continuation, int limit);
+    public Mono<GestureService.GesturePage> searchGestures(String prefix, String glob, String continuation, int limit);
+}
@@ -0,0 +1,89 @@
+package info.ejava.examples.app.svc;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * Adapts the GestureService to Mono/Flux. Reads do not block, so they
+ * complete on the subscribing event-loop thread. Changes may wait -- on
+ * the GestureServiceImpl's per-key locks, and with the durable store on
+ * the log being forced -- so they run on the bounded elastic scheduler,
+ * leaving the event loop free.
+ */
+@Service
+@ConditionalOnWebApplication(type=ConditionalOnWebApplication.Type.REACTIVE)
+@RequiredArgsConstructor
+public class ReactiveGestureServiceImpl implements ReactiveGestureService {
+
+    private final GestureService gestures;
+
+    @Override
+    public Mono<GestureService.UpsertResult> upsertGesture(String gestureType, String gesture) {
+        return Mono.fromCallable(() -> gestures.upsertGesture(gestureType, gesture))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<String> getGesture(String gestureType, String target) {
+        return Mono.fromCallable(() -> gestures.getGesture(gestureType, target));
+    }
+
+    @Override
+    public Mono<GestureService.GestureBody> getGestureBody(String gestureType, String target) {
+        return Mono.fromCallable(() -> gestures.getGestureBody(gestureType, target));
+    }
+
+    @Override
+    public Mono<GestureService.GestureBody> findGestureBody(String gestureType, String target) {
+        return Mono.fromCallable(() -> gestures.findGestureBody(gestureType, target).orElse(null));
+    }
+
+    @Override
+    public Mono<Long> getGestureVersion(String gestureType) {
+        return Mono.fromCallable(() -> gestures.getGestureVersion(gestureType));
+    }
+
+    @Override
+    public Mono<Long> replaceGesture(String gestureType, String gesture, long expectedVersion) {
+        return Mono.fromCallable(() -> gestures.replaceGesture(gestureType, gesture, expectedVersion))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> deleteGesture(String gestureType, long expectedVersion) {
+        return Mono.<Void>fromRunnable(() -> gestures.deleteGesture(gestureType, expectedVersion))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> deleteGesture(String gestureType) {
+        return Mono.<Void>fromRunnable(() -> gestures.deleteGesture(gestureType))
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Void> deleteAllGesture() {
+        return Mono.<Void>fromRunnable(gestures::deleteAllGesture)
+                   .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Flux<String> getAllGesture() {
+        return Mono.fromCallable(gestures::getAllGesture).flatMapIterable(list -> list);
+    }
+
+    @Override
+    public Mono<GestureService.GesturePage> getGesturePage(String continuation, int limit) {
+        return Mono.fromCallable(() -> gestures.getGesturePage(continuation, limit));
+    }
+
+    @Override
+    public Mono<GestureService.GesturePage> searchGestures(String prefix, String glob, String continuation, int limit) {
+        return Mono.fromCallable(() -> gestures.searchGestures(prefix, glob, continuation, limit));
+    }
+}
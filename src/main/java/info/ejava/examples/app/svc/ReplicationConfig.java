@@ -0,0 +1,34 @@
+package info.ejava.examples.app.svc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import info.ejava.examples.app.common.web.ServerConfig;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.With;
+
+/**
+ * This class is used to represent how a node replicates gestures with its
+ * peers, bound from gestures.replication.*. Each of peers is the
+ * ServerConfig of another node, e.g.
+ * gestures.replication.peers[0].host=gestures-b and
+ * gestures.replication.peers[0].port=8080. Every node lists every other.
+ */
+@Data
+@With
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicationConfig {
+    private List<ServerConfig> peers = new ArrayList<>();
+    // changes read from a peer per request
+    private int batchSize = 500;
+    // how long a request for changes waits for the next one; kept below the peer's responseTimeout
+    private Duration pollTimeout = Duration.ofSeconds(20);
+    // the wait before calling a peer again after it failed
+    private Duration retryDelay = Duration.ofSeconds(1);
+    // how often each peer's gestures are compared with this node's
+    private Duration resyncInterval = Duration.ofMinutes(5);
+}
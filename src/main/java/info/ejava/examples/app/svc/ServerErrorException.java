@@ -1,20 +1,52 @@
 package info.ejava.examples.app.svc;
 
+/*
+ * Formats its message lazily and offers stackless() factories in the same
+ * way as ClientErrorException. Server errors are logged with their stack
+ * trace, so only use stackless() where the cause carries the trace.
+ */
 public abstract class ServerErrorException extends  RuntimeException {
 
+    private final String format;
+    private final Object[] args;
+    private String message;
+
     protected ServerErrorException(Throwable cause) {
         super(cause);
+        this.format = null;
+        this.args = null;
     }
     protected ServerErrorException(String message, Object...args) {
-        super(String.format(message, args));
+        this(true, null, message, args);
     }
     protected ServerErrorException(Throwable cause, String message, Object...args) {
-        super(String.format(message, args), cause);
+        this(true, cause, message, args);
+    }
+    protected ServerErrorException(boolean stackTrace, Throwable cause, String message, Object...args) {
+        super(null, cause, true, stackTrace);
+        this.format = message;
+        this.args = args;
+    }
+
+    @Override
+    public String getMessage() {
+        if (format == null) {
+            return super.getMessage();
+        }
+        // racing threads format the same String
+        if (message == null) {
+            message = String.format(format, args);
+        }
+        return message;
     }
 
     public static class InternalErrorException extends ServerErrorException {
         public InternalErrorException(String message, Object...args) {  super(message, args); }
         public InternalErrorException(Throwable cause, String message, Object...args) { super(cause, message, args); }
+        private InternalErrorException(boolean stackTrace, Throwable cause, String message, Object...args) { super(stackTrace, cause, message, args); }
+        public static InternalErrorException stackless(Throwable cause, String message, Object...args) {
+            return new InternalErrorException(false, cause, message, args);
+        }
     }
 
 
@@ -0,0 +1,159 @@
+package info.ejava.examples.app.svc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/*
+ * Partitions the gestureTypes across independent ConcurrentGestureStore
+ * shards -- by default one per core -- using a ConsistentHashRing, so that
+ * the operations on the whole store work shard by shard.
+ *
+ * - clear() swaps each shard for an empty one rather than removing every
+ *   entry: O(shards), and readers keep reading the old shards until they
+ *   are swapped. A put racing with clear() may land in a shard that is
+ *   being dropped; GestureServiceImpl holds every stripe while clearing,
+ *   so its changes never do.
+ * - values() collects the shards in parallel as fork/join tasks.
+ */
+public class ShardedGestureStore implements GestureStore {
+
+    public static final int POINTS_PER_SHARD = 128;
+
+    private final ConsistentHashRing ring;
+    private final int shardCapacity;
+    private final AtomicReferenceArray<ConcurrentGestureStore> shards;
+
+    public ShardedGestureStore() {
+        this(Runtime.getRuntime().availableProcessors(), 16);
+    }
+
+    public ShardedGestureStore(int shards, int initialCapacity) {
+        this.ring = new ConsistentHashRing(shards, POINTS_PER_SHARD);
+        this.shardCapacity = Math.max(16, initialCapacity / shards);
+        this.shards = new AtomicReferenceArray<>(shards);
+        for (int i=0; i<shards; i++) {
+            this.shards.set(i, new ConcurrentGestureStore(shardCapacity));
+        }
+    }
+
+    public int getShards() {
+        return shards.length();
+    }
+
+    private GestureStore shard(String gestureType) {
+        return shards.get(ring.nodeOf(gestureType));
+    }
+
+    @Override
+    public String put(String gestureType, String gesture) {
+        return shard(gestureType).put(gestureType, gesture);
+    }
+
+    @Override
+    public String put(String gestureType, String gesture, long version) {
+        return shard(gestureType).put(gestureType, gesture, version);
+    }
+
+    @Override
+    public String putIfAbsent(String gestureType, String gesture) {
+        return shard(gestureType).putIfAbsent(gestureType, gesture);
+    }
+
+    @Override
+    public boolean replace(String gestureType, String expected, String gesture) {
+        return shard(gestureType).replace(gestureType, expected, gesture);
+    }
+
+    @Override
+    public long replace(String gestureType, long expectedVersion, String gesture) {
+        return shard(gestureType).replace(gestureType, expectedVersion, gesture);
+    }
+
+    @Override
+    public String get(String gestureType) {
+        return shard(gestureType).get(gestureType);
+    }
+
+    @Override
+    public EncodedGesture getEncoded(String gestureType) {
+        return shard(gestureType).getEncoded(gestureType);
+    }
+
+    @Override
+    public long getVersion(String gestureType) {
+        return shard(gestureType).getVersion(gestureType);
+    }
+
+    @Override
+    public boolean remove(String gestureType, long expectedVersion) {
+        return shard(gestureType).remove(gestureType, expectedVersion);
+    }
+
+    @Override
+    public String remove(String gestureType) {
+        return shard(gestureType).remove(gestureType);
+    }
+
+    @Override
+    public void clear() {
+        for (int i=0; i<shards.length(); i++) {
+            shards.set(i, new ConcurrentGestureStore(shardCapacity));
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i=0; i<shards.length(); i++) {
+            size += shards.get(i).size();
+        }
+        return size;
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i=0; i<shards.length(); i++) {
+            shards.get(i).forEach(action);
+        }
+    }
+
+    @Override
+    public List<String> values() {
+        List<ForkJoinTask<List<String>>> tasks = new ArrayList<>(shards.length());
+        for (int i=0; i<shards.length(); i++) {
+            tasks.add(new ShardValues(shards.get(i)));
+        }
+        return ForkJoinPool.commonPool().invoke(new RecursiveTask<List<String>>() {
+            @Override
+            protected List<String> compute() {
+                int size = 0;
+                for (ForkJoinTask<List<String>> task: invokeAll(tasks)) {
+                    size += task.join().size();
+                }
+                List<String> values = new ArrayList<>(size);
+                for (ForkJoinTask<List<String>> task: tasks) {
+                    values.addAll(task.join());
+                }
+                return values;
+            }
+        });
+    }
+
+    private static final class ShardValues extends RecursiveTask<List<String>> {
+        private final GestureStore shard;
+
+        private ShardValues(GestureStore shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        protected List<String> compute() {
+            return shard.values();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package info.ejava.examples.app.svc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/*
+ * A lock-free skip list kept in gestureType order. Point lookups are
+ * O(log n) instead of the hash store's O(1), but each page of a scan
+ * starts directly at its continuation point rather than re-reading the
+ * whole store -- paging without the cost of a GestureTypeIndex beside it.
+ * A filtered scan walks on until it has found a page of matches.
+ */
+public class SortedGestureStore implements GestureStore {
+
+    private final ConcurrentNavigableMap<String, VersionedGesture> gestures = new ConcurrentSkipListMap<>();
+
+    @Override
+    public String put(String gestureType, String gesture) {
+        return VersionedGesture.gestureOf(gestures.put(gestureType, new VersionedGesture(gesture)));
+    }
+
+    @Override
+    public String put(String gestureType, String gesture, long version) {
+        return VersionedGesture.gestureOf(gestures.put(gestureType, new VersionedGesture(gesture, version)));
+    }
+
+    @Override
+    public String putIfAbsent(String gestureType, String gesture) {
+        return VersionedGesture.gestureOf(gestures.putIfAbsent(gestureType, new VersionedGesture(gesture)));
+    }
+
+    @Override
+    public boolean replace(String gestureType, String expected, String gesture) {
+        while (true) {
+            VersionedGesture current = gestures.get(gestureType);
+            if (current == null || !current.gesture.equals(expected)) {
+                return false;
+            }
+            if (gestures.replace(gestureType, current, new VersionedGesture(gesture))) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public long replace(String gestureType, long expectedVersion, String gesture) {
+        VersionedGesture current = gestures.get(gestureType);
+        if (current == null || current.version != expectedVersion) {
+            return 0;
+        }
+        VersionedGesture replacement = new VersionedGesture(gesture);
+        return gestures.replace(gestureType, current, replacement) ? replacement.version : 0;
+    }
+
+    @Override
+    public String get(String gestureType) {
+        return VersionedGesture.gestureOf(gestures.get(gestureType));
+    }
+
+    @Override
+    public EncodedGesture getEncoded(String gestureType) {
+        VersionedGesture current = gestures.get(gestureType);
+        return current == null ? null : current.encode();
+    }
+
+    @Override
+    public long getVersion(String gestureType) {
+        return VersionedGesture.versionOf(gestures.get(gestureType));
+    }
+
+    @Override
+    public String remove(String gestureType) {
+        return VersionedGesture.gestureOf(gestures.remove(gestureType));
+    }
+
+    @Override
+    public boolean remove(String gestureType, long expectedVersion) {
+        VersionedGesture current = gestures.get(gestureType);
+        return current != null && current.version == expectedVersion && gestures.remove(gestureType, current);
+    }
+
+    @Override
+    public void clear() {
+        gestures.clear();
+    }
+
+    @Override
+    public int size() {
+        return gestures.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, String> action) {
+        gestures.forEach((gestureType, versioned) -> action.accept(gestureType, versioned.gesture));
+    }
+
+    @Override
+    public boolean scan(String afterGestureType, int limit, Predicate<String> filter,
+                        GestureVisitor action) {
+        Map<String, VersionedGesture> tail = afterGestureType == null ? gestures : gestures.tailMap(afterGestureType, false);
+        int visited = 0;
+        for (Map.Entry<String, VersionedGesture> entry: tail.entrySet()) {
+            if (!filter.test(entry.getKey())) {
+                continue;
+            }
+            if (visited == limit) {
+                return true;
+            }
+            action.accept(entry.getKey(), entry.getValue().gesture, entry.getValue().version);
+            visited += 1;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,124 @@
+package info.ejava.examples.app.svc;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/*
+ * A HashMap guarded by a single monitor. Correct, but every reader and
+ * writer serializes on the same lock. Retained as the baseline the
+ * concurrent stores are measured against.
+ *
+ * The monitor is only ever held for in-memory work. forEach visits a copy
+ * so that callers writing to a response (and possibly blocking) never do
+ * so while holding the monitor, which would also pin a virtual thread.
+ */
+public class SynchronizedGestureStore implements GestureStore {
+
+    private final Map<String, VersionedGesture> gestures = new HashMap<>();
+
+    @Override
+    public synchronized String put(String gestureType, String gesture) {
+        return VersionedGesture.gestureOf(gestures.put(gestureType, new VersionedGesture(gesture)));
+    }
+
+    @Override
+    public synchronized String put(String gestureType, String gesture, long version) {
+        return VersionedGesture.gestureOf(gestures.put(gestureType, new VersionedGesture(gesture, version)));
+    }
+
+    @Override
+    public synchronized String putIfAbsent(String gestureType, String gesture) {
+        VersionedGesture current = gestures.get(gestureType);
+        if (current == null) {
+            gestures.put(gestureType, new VersionedGesture(gesture));
+        }
+        return VersionedGesture.gestureOf(current);
+    }
+
+    @Override
+    public synchronized boolean replace(String gestureType, String expected, String gesture) {
+        VersionedGesture current = gestures.get(gestureType);
+        if (current == null || !current.gesture.equals(expected)) {
+            return false;
+        }
+        gestures.put(gestureType, new VersionedGesture(gesture));
+        return true;
+    }
+
+    @Override
+    public synchronized long replace(String gestureType, long expectedVersion, String gesture) {
+        VersionedGesture current = gestures.get(gestureType);
+        if (current == null || current.version != expectedVersion) {
+            return 0;
+        }
+        VersionedGesture replacement = new VersionedGesture(gesture);
+        gestures.put(gestureType, replacement);
+        return replacement.version;
+    }
+
+    @Override
+    public synchronized String get(String gestureType) {
+        return VersionedGesture.gestureOf(gestures.get(gestureType));
+    }
+
+    @Override
+    public EncodedGesture getEncoded(String gestureType) {
+        VersionedGesture current;
+        synchronized (this) {
+            current = gestures.get(gestureType);
+        }
+        return current == null ? null : current.encode();
+    }
+
+    @Override
+    public synchronized long getVersion(String gestureType) {
+        return VersionedGesture.versionOf(gestures.get(gestureType));
+    }
+
+    @Override
+    public synchronized String remove(String gestureType) {
+        return VersionedGesture.gestureOf(gestures.remove(gestureType));
+    }
+
+    @Override
+    public synchronized boolean remove(String gestureType, long expectedVersion) {
+        VersionedGesture current = gestures.get(gestureType);
+        return current != null && current.version == expectedVersion && gestures.remove(gestureType, current);
+    }
+
+    @Override
+    public synchronized void clear() {
+        gestures.clear();
+    }
+
+    @Override
+    public synchronized int size() {
+        return gestures.size();
+    }
+
+    @Override
+    public synchronized void putAll(Map<String, String> gestures, BiConsumer<String, String> previousValues) {
+        GestureStore.super.putAll(gestures, previousValues);
+    }
+
+    @Override
+    public synchronized void getAll(Collection<String> gestureTypes, BiConsumer<String, String> values) {
+        GestureStore.super.getAll(gestureTypes, values);
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<String> gestureTypes, BiConsumer<String, String> previousValues) {
+        GestureStore.super.removeAll(gestureTypes, previousValues);
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, String> action) {
+        Map<String, VersionedGesture> snapshot;
+        synchronized (this) {
+            snapshot = new HashMap<>(gestures);
+        }
+        snapshot.forEach((gestureType, versioned) -> action.accept(gestureType, versioned.gesture));
+    }
+}
@@ -0,0 +1,35 @@
+package info.ejava.examples.app.svc;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A gesture as held by the stores that keep values as Strings. A change
+ * always stores a new instance, so a holder compared by identity tells
+ * whether the gesture changed since it was read.
+ */
+final class VersionedGesture {
+
+    final String gesture;
+    final long version;
+
+    VersionedGesture(String gesture, long version) {
+        this.gesture = gesture;
+        this.version = version;
+    }
+
+    VersionedGesture(String gesture) {
+        this(gesture, GestureVersion.next());
+    }
+
+    static String gestureOf(VersionedGesture versioned) {
+        return versioned == null ? null : versioned.gesture;
+    }
+
+    static long versionOf(VersionedGesture versioned) {
+        return versioned == null ? 0 : versioned.version;
+    }
+
+    GestureStore.EncodedGesture encode() {
+        return new GestureStore.EncodedGesture(gesture.getBytes(StandardCharsets.UTF_8), version);
+    }
+}
@@ -0,0 +1,227 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import info.ejava.examples.app.common.web.AdaptiveConcurrencyLimit;
+import info.ejava.examples.app.common.web.AdmissionControlFilter;
+import info.ejava.examples.app.common.web.AdmissionControlFilter.Rejection;
+import info.ejava.examples.app.common.web.TokenBucketRateLimiter;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+ * This class is an example unit test of admission control: the token
+ * buckets and concurrency limit on a clock the test advances, and the
+ * filter in front of a servlet that may be held mid-request.
+ */
+@DisplayName("Admission control filter test")
+public class AdmissionControlFilterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(1_000 * SECOND);
+
+    @Test
+    public void bucket_allows_burst_then_rate() {
+        // given - 10 per second with a burst of 5
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 5, 60 * SECOND, clock::get);
+
+        // then - the burst is taken at once, and the next waits a token
+        for (int i=0; i<5; i++) {
+            then(limiter.tryAcquire("jim")).isZero();
+        }
+        then(limiter.tryAcquire("jim")).isEqualTo(SECOND / 10);
+        then(limiter.tryAcquire("bob")).as("other clients have their own bucket").isZero();
+
+        // when - a token's time passes
+        clock.addAndGet(SECOND / 10);
+
+        // then - one more is allowed
+        then(limiter.tryAcquire("jim")).isZero();
+        then(limiter.tryAcquire("jim")).isPositive();
+
+        // when - idle for long enough to refill
+        clock.addAndGet(SECOND);
+
+        // then - only the burst is available again, not the idle time's worth
+        for (int i=0; i<5; i++) {
+            then(limiter.tryAcquire("jim")).isZero();
+        }
+        then(limiter.tryAcquire("jim")).isPositive();
+    }
+
+    @Test
+    public void idle_buckets_are_evicted() {
+        // given
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 5, 60 * SECOND, clock::get);
+        for (int i=0; i<100; i++) {
+            limiter.tryAcquire("client-" + i);
+        }
+        then(limiter.getKeys()).isEqualTo(100);
+
+        // when - most are idle past the timeout while one stays busy
+        for (int i=0; i<10; i++) {
+            clock.addAndGet(10 * SECOND);
+            limiter.tryAcquire("client-0");
+        }
+
+        // then - only the busy one is kept
+        then(limiter.getKeys()).isEqualTo(1);
+    }
+
+    @Test
+    public void limit_grows_until_response_times_rise() {
+        // given
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 100, SECOND, clock::get);
+
+        // when - windows of full use at the unloaded response time
+        for (int window=0; window<5; window++) {
+            fill(limit, limit.getLimit(), 1_000_000);
+        }
+
+        // then - the limit grows
+        int grown = limit.getLimit();
+        then(grown).isGreaterThan(10);
+
+        // when - response times double
+        for (int window=0; window<5; window++) {
+            fill(limit, limit.getLimit(), 2_000_000);
+        }
+
+        // then - the limit shrinks
+        then(limit.getLimit()).isLessThan(grown);
+
+        // and - never beyond its bounds
+        for (int window=0; window<200; window++) {
+            fill(limit, limit.getLimit(), 10_000_000);
+            then(limit.getLimit()).isBetween(2, 100);
+        }
+        for (int window=0; window<200; window++) {
+            fill(limit, limit.getLimit(), 1_000_000);
+        }
+        then(limit.getLimit()).isEqualTo(100);
+    }
+
+    @Test
+    public void limit_does_not_grow_while_little_used() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 100, SECOND, clock::get);
+
+        for (int window=0; window<5; window++) {
+            fill(limit, 2, 1_000_000);
+        }
+
+        then(limit.getLimit()).isEqualTo(10);
+    }
+
+    // fills the limit with inFlight requests taking rtt, ending the window
+    private void fill(AdaptiveConcurrencyLimit limit, int inFlight, long rtt) {
+        for (int i=0; i<inFlight; i++) {
+            then(limit.tryAcquire()).isTrue();
+        }
+        clock.addAndGet(SECOND);
+        for (int i=0; i<inFlight; i++) {
+            limit.release(rtt);
+        }
+    }
+
+    private MockHttpServletResponse perform(AdmissionControlFilter filter, String client, HttpServlet servlet)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/api/gestures/hello");
+        request.setRemoteAddr(client);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(servlet));
+        return response;
+    }
+
+    @Test
+    public void rejects_with_retry_after() throws Exception {
+        // given - a client allowed one request, and a limit of one in flight
+        AdmissionControlFilter filter = new AdmissionControlFilter(
+                new TokenBucketRateLimiter(0.5, 1, 60 * SECOND),
+                new AdaptiveConcurrencyLimit(1, 1, 1, SECOND));
+        List<Rejection> rejections = new ArrayList<>();
+        filter.setRejectionListener((rejection, client) -> rejections.add(rejection));
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        HttpServlet held = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                entered.countDown();
+                try {
+                    proceed.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                resp.setStatus(201);
+            }
+        };
+
+        // when - the client's request is held in flight
+        List<MockHttpServletResponse> first = new ArrayList<>();
+        Thread thread = new Thread(() -> {
+            try {
+                first.add(perform(filter, "10.0.0.1", held));
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        thread.start();
+        then(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        MockHttpServletResponse again = perform(filter, "10.0.0.1", held);
+        MockHttpServletResponse other = perform(filter, "10.0.0.2", held);
+        proceed.countDown();
+        thread.join();
+
+        // then - the same client is over its rate, and another finds the server busy
+        then(first.get(0).getStatus()).isEqualTo(201);
+        then(again.getStatus()).isEqualTo(429);
+        then(again.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        then(other.getStatus()).isEqualTo(503);
+        then(other.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        then(other.getContentAsString()).isEqualTo("server is busy");
+        then(rejections).containsExactly(Rejection.RATE_LIMITED, Rejection.OVERLOADED);
+    }
+
+    @Test
+    public void identifies_clients_by_header_when_given() throws Exception {
+        // given - clients named by a proxy's header, each allowed one request
+        AdmissionControlFilter filter = new AdmissionControlFilter(
+                new TokenBucketRateLimiter(0.1, 1, 60 * SECOND),
+                new AdaptiveConcurrencyLimit(10, 1, 10, SECOND));
+        filter.setClientHeader("X-Client-Id");
+        HttpServlet ok = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                resp.setStatus(200);
+            }
+        };
+
+        // when - two clients call through the same proxy address
+        List<Integer> statuses = new ArrayList<>();
+        for (String client: List.of("jim", "bob", "jim")) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/gestures/hello");
+            request.setRemoteAddr("10.0.0.9");
+            request.addHeader("X-Client-Id", client);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, new MockFilterChain(ok));
+            statuses.add(response.getStatus());
+        }
+
+        // then - each has its own bucket
+        then(statuses).containsExactly(200, 200, 429);
+    }
+}
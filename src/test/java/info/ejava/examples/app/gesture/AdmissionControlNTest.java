@@ -0,0 +1,69 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.common.web.AdmissionControlConfiguration;
+import info.ejava.examples.app.gesture.client.ClientTestBaseConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/*
+ * This class is an example of testing a servlet filter registered by the
+ * application, through a MockMvc that includes the context's filters.
+ */
+@SpringBootTest(classes={ClientTestBaseConfiguration.class},
+        properties={"gestures.admission.enabled=true",
+                    "gestures.admission.rate-per-second=0.1",
+                    "gestures.admission.burst=2"})
+@ActiveProfiles("test")
+@Tag("springboot")
+@DisplayName("Admission control integration test")
+@AutoConfigureMockMvc
+public class AdmissionControlNTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    public void client_over_its_rate_is_told_to_retry_later() throws Exception {
+        // given - a client that has used its burst
+        for (int i=0; i<2; i++) {
+            mockMvc.perform(put("/"+GestureApi.GESTURE_PATH, "hello")
+                                .contentType(MediaType.TEXT_PLAIN)
+                                .content("hi"))
+                   .andExpect(status().is2xxSuccessful());
+        }
+
+        // when - it calls again
+        mockMvc.perform(put("/"+GestureApi.GESTURE_PATH, "hello")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content("howdy"))
+               // then - it is turned away at once
+               .andExpect(status().isTooManyRequests())
+               .andExpect(header().string(HttpHeaders.RETRY_AFTER, "10"));
+
+        then(registry.get(AdmissionControlConfiguration.REJECTED).tag("reason", "rate").counter().count())
+                .isEqualTo(1.0);
+
+        // and - the actuator, outside the API, is not limited
+        mockMvc.perform(get("/actuator/health"))
+               .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,114 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import info.ejava.examples.app.common.web.AsyncRequestLoggingFilter;
+import info.ejava.examples.app.common.web.AsyncRequestLoggingFilter.HeaderMatcher;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/*
+ * This class is an example unit test of the request logging filter, with
+ * the records it writes collected instead of logged.
+ */
+@DisplayName("Async request logging filter test")
+public class AsyncRequestLoggingFilterTest {
+
+    private final BlockingQueue<String> written = new LinkedBlockingQueue<>();
+    private final AsyncRequestLoggingFilter filter = new AsyncRequestLoggingFilter() {
+        @Override
+        protected boolean isLogging() {
+            return true;
+        }
+        @Override
+        protected void write(String message) {
+            written.add(message);
+        }
+    };
+
+    @AfterEach
+    public void tearDown() {
+        filter.destroy();
+    }
+
+    private void perform(String body) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/api/gestures/hello");
+        request.setQueryString("target=jim");
+        request.addHeader("Content-Type", "text/plain");
+        request.addHeader("Sec-Fetch-Mode", "cors");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws java.io.IOException {
+                StreamUtils.copyToByteArray(req.getInputStream());
+                resp.setStatus(201);
+            }
+        }));
+    }
+
+    @Test
+    public void writes_selected_parts_of_sampled_requests() throws Exception {
+        // given - a filter that logs payloads and excludes sec-* headers
+        filter.setIncludePayload(true);
+        filter.setHeaderMatcher(HeaderMatcher.excluding(List.of("sec.*")));
+
+        // when - a request passes through
+        perform("hi");
+
+        // then - it is written by the writer thread once complete
+        String record = written.poll(5, TimeUnit.SECONDS);
+        then(record).startsWith("PUT /api/gestures/hello?target=jim, status=201")
+                    .contains("Content-Type:\"text/plain\"")
+                    .doesNotContain("Sec-Fetch-Mode")
+                    .contains("payload=hi");
+    }
+
+    @Test
+    public void samples_by_percent_and_rate() throws Exception {
+        // given - a filter sampling no requests
+        filter.setSamplePercent(0);
+        perform("hi");
+
+        // then - nothing is written
+        then(written.poll(100, TimeUnit.MILLISECONDS)).isNull();
+
+        // when - sampling every request, but at most 2 a second
+        filter.setSamplePercent(100);
+        filter.setMaxPerSecond(2);
+        for (int i=0; i<5; i++) {
+            perform("hi");
+        }
+
+        // then - no more than 2 are written within the second
+        Thread.sleep(200);
+        then(written.size()).isBetween(2, 4);
+    }
+
+    @Test
+    public void header_matcher_includes_names_ignoring_case() {
+        // given - a matcher of specific headers
+        HeaderMatcher matcher = HeaderMatcher.including(List.of("accept", "content-.*"));
+
+        // then - names match regardless of case, and others are left out
+        then(matcher.test("Accept")).isTrue();
+        then(matcher.test("content-length")).isTrue();
+        then(matcher.test("Accept-Encoding")).isFalse();
+        then(matcher.test("accept")).isTrue();
+    }
+}
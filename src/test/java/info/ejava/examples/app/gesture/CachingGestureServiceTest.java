@@ -0,0 +1,158 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowableOfType;
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import info.ejava.examples.app.svc.CachingGestureService;
+import info.ejava.examples.app.svc.ClientErrorException;
+import info.ejava.examples.app.svc.ConcurrentGestureStore;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/*
+ * This class is an example unit test of the caching decorator, over a
+ * store that counts -- and can hold up -- the reads that reach it.
+ */
+@DisplayName("Caching gesture service test")
+public class CachingGestureServiceTest {
+
+    private final AtomicInteger reads = new AtomicInteger();
+    private volatile CountDownLatch readGate;
+    private final ConcurrentGestureStore store = new ConcurrentGestureStore() {
+        @Override
+        public EncodedGesture getEncoded(String gestureType) {
+            reads.incrementAndGet();
+            CountDownLatch gate = readGate;
+            if (gate != null) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getEncoded(gestureType);
+        }
+    };
+    private final AtomicLong nanos = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CachingGestureService gestures = new CachingGestureService(new GestureServiceImpl(store),
+            registry, 2, Duration.ofSeconds(60), nanos::get);
+
+    @Test
+    public void reads_are_cached_until_changed() {
+        // given - a gesture
+        gestures.upsertGesture("hello", "hi");
+
+        // when - it is read repeatedly, with and without targets
+        then(gestures.getGesture("hello", null)).isEqualTo("hi");
+        then(gestures.getGesture("hello", "jim")).isEqualTo("hi, jim");
+        then(gestures.getGestureBody("hello", null).getGesture()).isEqualTo("hi".getBytes());
+
+        // then - the store is read once
+        then(reads.get()).isEqualTo(1);
+
+        // when - it is changed, deleted, or all are deleted
+        gestures.upsertGesture("hello", "howdy");
+        then(gestures.getGesture("hello", null)).isEqualTo("howdy");
+        gestures.deleteGesture("hello");
+        catchThrowableOfType(() -> gestures.getGesture("hello", null), ClientErrorException.NotFoundException.class);
+        gestures.upsertGesture("hello", "hey");
+        then(gestures.getGesture("hello", null)).isEqualTo("hey");
+        gestures.deleteAllGesture();
+
+        // then - each change is read from the store
+        then(gestures.findGestureBody("hello", null)).isEmpty();
+        then(reads.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void entries_expire_and_are_evicted() {
+        // given - a gesture that has been read
+        gestures.upsertGesture("hello", "hi");
+        gestures.getGesture("hello", null);
+
+        // when - the ttl passes
+        nanos.addAndGet(Duration.ofSeconds(61).toNanos());
+        gestures.getGesture("hello", null);
+
+        // then - it is read from the store again
+        then(reads.get()).isEqualTo(2);
+
+        // when - more gestures are read than the cache holds
+        for (int i=0; i<10; i++) {
+            gestures.findGestureBody("gesture" + i, null);
+        }
+        gestures.findGestureBody("hello", null);
+
+        // then - the evictions and hit ratio are published
+        then(registry.get("cache.evictions").tag("cache", CachingGestureService.CACHE_NAME)
+                     .functionCounter().count()).isPositive();
+        then(registry.get(CachingGestureService.HIT_RATIO).gauge().value()).isBetween(0.0, 1.0);
+        then(registry.get("cache.gets").tag("result", "miss").functionCounter().count()).isGreaterThan(10);
+    }
+
+    @Test
+    public void concurrent_misses_share_one_read() throws Exception {
+        // given - a gesture whose read is held up
+        gestures.upsertGesture("hello", "hi");
+        readGate = new CountDownLatch(1);
+
+        // when - many threads miss it at once
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i=0; i<16; i++) {
+            results.add(threads.submit(() -> gestures.getGesture("hello", null)));
+        }
+        Thread.sleep(100);
+        readGate.countDown();
+
+        // then - all are answered from a single read of the store
+        for (Future<String> result: results) {
+            then(result.get()).isEqualTo("hi");
+        }
+        threads.shutdown();
+        then(reads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void batch_gets_read_only_what_is_not_cached() {
+        // given - two gestures, one of them cached
+        gestures.upsertGesture("hello", "hi");
+        gestures.upsertGesture("bye", "ciao");
+        gestures.getGesture("hello", null);
+
+        // when - both and an unknown gestureType are read in a batch
+        var results = gestures.getGestures(List.of("hello", "bye", "unknown"), "jim");
+
+        // then - the results are in request order
+        then(results).extracting("value").containsExactly("hi, jim", "ciao, jim", null);
+    }
+
+    @Test
+    public void cached_bodies_are_not_shared() {
+        // given - a cached gesture
+        gestures.upsertGesture("hello", "hi");
+        byte[] first = gestures.getGestureBody("hello", null).getGesture();
+
+        // when - a caller writes into the body it was given
+        first[0] = 'X';
+
+        // then - later reads are served the cached value, unchanged
+        then(gestures.getGestureBody("hello", null).getGesture()).isEqualTo("hi".getBytes());
+        then(reads.get()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,333 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowableOfType;
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import info.ejava.examples.app.svc.DurableGestureStore;
+import info.ejava.examples.app.svc.GestureStore;
+import info.ejava.examples.app.svc.GestureVersion;
+import info.ejava.examples.app.svc.ServerErrorException;
+
+/*
+ * This class is an example unit test of the durable store. Each test
+ * writes through one instance, closes it, and checks what a new
+ * instance recovers from the same directory.
+ */
+@DisplayName("Durable gesture store test")
+public class DurableGestureStoreTest {
+
+    @TempDir
+    private Path dir;
+
+    private DurableGestureStore open(long snapshotLogBytes) throws IOException {
+        return new DurableGestureStore(dir, snapshotLogBytes, 256, 16);
+    }
+
+    private static Map<String, String> contents(DurableGestureStore store) {
+        Map<String, String> contents = new ConcurrentHashMap<>();
+        store.forEach(contents::put);
+        return contents;
+    }
+
+    // closes the log under the writer, as a failing disk would fail its next write
+    private static void breakLog(DurableGestureStore store) throws Exception {
+        Field logChannel = DurableGestureStore.class.getDeclaredField("logChannel");
+        logChannel.setAccessible(true);
+        ((FileChannel)logChannel.get(store)).close();
+    }
+
+    @Test
+    public void recovers_changes_from_log() throws IOException {
+        // given - a series of changes
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            then(store.put("hello", "hi")).isNull();
+            then(store.put("hello", "howdy")).isEqualTo("hi");
+            store.put("smile", "face");
+            store.put("wave", "hand");
+            then(store.remove("wave")).isEqualTo("hand");
+            then(store.putIfAbsent("smile", "grin")).isEqualTo("face");
+            then(store.replace("smile", "face", "grin")).isTrue();
+        }
+
+        // when - reopening the store
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            // then - the final state is recovered
+            then(contents(store)).containsExactlyInAnyOrderEntriesOf(Map.of("hello", "howdy", "smile", "grin"));
+        }
+    }
+
+    @Test
+    public void recovered_gestures_keep_their_versions() throws IOException {
+        // given - gestures written locally and at a peer's version ahead of this clock,
+        //         some of them only in a snapshot and some also in the log after it
+        Map<String, Long> versions = new HashMap<>();
+        long replicated = GestureVersion.next() + 1000;
+        try (DurableGestureStore store = open(512)) {
+            for (int i=0; i<100; i++) {
+                store.put("gesture-" + i, "value-" + i);
+            }
+            store.put("replicated", "hi", replicated);
+            store.put("gesture-99", "changed");
+            for (int i=0; i<100; i++) {
+                versions.put("gesture-" + i, store.getVersion("gesture-" + i));
+            }
+            versions.put("replicated", store.getVersion("replicated"));
+        }
+        then(versions).containsEntry("replicated", replicated);
+        try (Stream<Path> files = Files.list(dir)) {
+            then(files.map(f -> f.getFileName().toString())).anyMatch(name -> name.startsWith("snapshot-"));
+        }
+
+        // when - reopening the store
+        try (DurableGestureStore store = open(512)) {
+            // then - each gesture has the version it was written with, whether read from the mapping or the log
+            versions.forEach((gestureType, version) -> then(store.getVersion(gestureType)).isEqualTo(version));
+            then(store.getVersion("gesture-99")).isGreaterThan(store.getVersion("gesture-98"));
+
+            // and - versions issued afterwards follow every recovered one
+            then(GestureVersion.next()).isGreaterThan(replicated);
+            then(store.remove("replicated", replicated)).isTrue();
+        }
+    }
+
+    @Test
+    public void recovers_clear() throws IOException {
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            store.put("hello", "hi");
+            store.clear();
+            store.put("smile", "face");
+        }
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            then(contents(store)).containsExactlyEntriesOf(Map.of("smile", "face"));
+        }
+    }
+
+    @Test
+    public void snapshot_compacts_log() throws IOException {
+        // given - a store that snapshots after every few hundred bytes of log
+        try (DurableGestureStore store = open(512)) {
+            for (int i=0; i<1000; i++) {
+                store.put("gesture-" + (i % 50), "value-" + i);
+            }
+        }
+
+        // then - old segments were replaced by a snapshot
+        try (Stream<Path> files = Files.list(dir)) {
+            then(files.map(f -> f.getFileName().toString()))
+                .anyMatch(name -> name.startsWith("snapshot-"))
+                .noneMatch(name -> name.equals("wal-0.log"));
+        }
+
+        // and - the snapshot plus the remaining log recover the latest values
+        try (DurableGestureStore store = open(512)) {
+            Map<String, String> contents = contents(store);
+            then(contents).hasSize(50);
+            for (int i=950; i<1000; i++) {
+                then(contents).containsEntry("gesture-" + (i % 50), "value-" + i);
+            }
+        }
+    }
+
+    @Test
+    public void changes_overlay_mapped_snapshot() throws IOException {
+        // given - a store recovered from a snapshot
+        try (DurableGestureStore store = open(512)) {
+            for (int i=0; i<1000; i++) {
+                store.put("gesture-" + i, "value-" + i);
+            }
+        }
+
+        // when - changing it while the snapshot may still be serving lookups
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            then(store.size()).isEqualTo(1000);
+            then(store.get("gesture-7")).isEqualTo("value-7");
+            then(store.remove("gesture-1")).isEqualTo("value-1");
+            then(store.remove("gesture-1")).isNull();
+            then(store.put("gesture-2", "changed")).isEqualTo("value-2");
+            then(store.putIfAbsent("gesture-3", "ignored")).isEqualTo("value-3");
+            then(store.replace("gesture-4", "value-4", "replaced")).isTrue();
+            then(store.put("new", "added")).isNull();
+
+            // then - lookups, size and contents reflect the changes
+            then(store.get("gesture-1")).isNull();
+            then(store.get("gesture-2")).isEqualTo("changed");
+            then(store.size()).isEqualTo(1000);
+            Map<String, String> contents = contents(store);
+            then(contents).hasSize(1000)
+                          .doesNotContainKey("gesture-1")
+                          .containsEntry("gesture-3", "value-3")
+                          .containsEntry("gesture-4", "replaced")
+                          .containsEntry("new", "added");
+        }
+
+        // and - they are recovered over the snapshot
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            then(store.size()).isEqualTo(1000);
+            then(store.get("gesture-1")).isNull();
+            then(store.get("gesture-4")).isEqualTo("replaced");
+            store.clear();
+            then(store.size()).isZero();
+            then(store.get("gesture-7")).isNull();
+        }
+    }
+
+    @Test
+    public void discards_incomplete_tail() throws IOException {
+        // given - a log whose final record was only partly written
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            store.put("hello", "hi");
+            store.put("smile", "face");
+        }
+        Path log = dir.resolve("wal-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        // when - reopening and writing again
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            // then - everything before the torn record is recovered
+            then(contents(store)).containsExactlyEntriesOf(Map.of("hello", "hi"));
+            store.put("wave", "hand");
+        }
+
+        // and - new records follow the discarded tail cleanly
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            then(contents(store)).containsExactlyInAnyOrderEntriesOf(Map.of("hello", "hi", "wave", "hand"));
+        }
+    }
+
+    @Test
+    public void failed_log_fails_every_write() throws Exception {
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            // given - writers racing the log failing
+            store.put("hello", "hi");
+            ExecutorService threads = Executors.newFixedThreadPool(4);
+            try {
+                Future<?>[] results = new Future<?>[4];
+                for (int t=0; t<results.length; t++) {
+                    int thread = t;
+                    results[t] = threads.submit(() -> {
+                        for (int i=0; i<1_000; i++) {
+                            try {
+                                store.put("gesture-" + thread + "-" + i, "value");
+                            } catch (ServerErrorException.InternalErrorException ex) {
+                                // expected once the log has failed
+                            }
+                        }
+                    });
+                }
+
+                // when
+                breakLog(store);
+
+                // then - every write returns rather than waiting on the log
+                for (Future<?> result: results) {
+                    result.get(30, TimeUnit.SECONDS);
+                }
+            } finally {
+                threads.shutdownNow();
+            }
+
+            // and - the store is read-only
+            then(catchThrowableOfType(() -> store.put("smile", "face"), ServerErrorException.InternalErrorException.class))
+                .isNotNull();
+            then(store.get("hello")).isEqualTo("hi");
+        }
+    }
+
+    @Test
+    public void failed_changes_are_rolled_back() throws Exception {
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            // given - durable gestures, and a log about to fail
+            store.put("hello", "hi");
+            store.put("smile", "face");
+            breakLog(store);
+
+            // when - changing them
+            then(catchThrowableOfType(() -> store.put("hello", "howdy"), ServerErrorException.InternalErrorException.class))
+                .isNotNull();
+            catchThrowableOfType(() -> store.remove("smile"), ServerErrorException.InternalErrorException.class);
+            catchThrowableOfType(() -> store.put("wave", "hand"), ServerErrorException.InternalErrorException.class);
+            catchThrowableOfType(store::clear, ServerErrorException.InternalErrorException.class);
+
+            // then - the store still serves only what was logged
+            then(contents(store)).containsExactlyInAnyOrderEntriesOf(Map.of("hello", "hi", "smile", "face"));
+            then(store.size()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void deferred_changes_are_durable_after_await() throws Exception {
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            // when - changes are made in a deferred scope, and awaited once
+            try (GestureStore.DeferredDurability durability = store.deferDurability()) {
+                then(store.deferDurability()).isSameAs(GestureStore.DeferredDurability.NONE);
+                store.put("hello", "hi");
+                store.put("smile", "face");
+                then(store.remove("smile")).isEqualTo("face");
+                store.put("wave", "hand");
+                durability.await();
+            }
+
+            // then - they are visible, and no longer deferred
+            then(contents(store)).containsExactlyInAnyOrderEntriesOf(Map.of("hello", "hi", "wave", "hand"));
+            try (GestureStore.DeferredDurability durability = store.deferDurability()) {
+                then(durability).isNotSameAs(GestureStore.DeferredDurability.NONE);
+            }
+
+            // and - a failed log still fails the wait
+            try (GestureStore.DeferredDurability durability = store.deferDurability()) {
+                breakLog(store);
+                catchThrowableOfType(() -> store.put("hello", "howdy"), ServerErrorException.InternalErrorException.class);
+                then(catchThrowableOfType(durability::await, ServerErrorException.InternalErrorException.class))
+                    .isNotNull();
+            }
+        }
+
+        // and - what was awaited was recovered
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            then(contents(store)).containsExactlyInAnyOrderEntriesOf(Map.of("hello", "hi", "wave", "hand"));
+        }
+    }
+
+    @Test
+    public void failed_clear_is_rolled_back() throws Exception {
+        try (DurableGestureStore store = open(Long.MAX_VALUE)) {
+            // given - durable gestures
+            store.put("hello", "hi");
+            store.put("smile", "face");
+
+            // when - a clear, waited for outside the store, cannot be logged
+            try (GestureStore.DeferredDurability durability = store.deferDurability()) {
+                breakLog(store);
+                then(catchThrowableOfType(() -> {
+                    store.clear();
+                    durability.await();
+                }, ServerErrorException.InternalErrorException.class)).isNotNull();
+            }
+
+            // then - the cleared gestures are back
+            then(contents(store)).containsExactlyInAnyOrderEntriesOf(Map.of("hello", "hi", "smile", "face"));
+            then(store.size()).isEqualTo(2);
+        }
+    }
+}
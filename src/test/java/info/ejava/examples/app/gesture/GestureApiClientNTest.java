@@ -0,0 +1,142 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowableOfType;
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.client.HttpClientErrorException;
+
+import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.api.GestureApiClient;
+import info.ejava.examples.app.api.GestureBinary;
+import info.ejava.examples.app.common.web.HttpClientFactory;
+import info.ejava.examples.app.common.web.ServerConfig;
+
+/*
+ * This class is an example of an end-to-end test, calling the application
+ * over HTTP on a random port through the pooled clients HttpClientFactory
+ * builds.
+ */
+@SpringBootTest(webEnvironment=SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@Tag("springboot")
+@DisplayName("Gesture API client test")
+public class GestureApiClientNTest {
+
+    @LocalServerPort
+    private int port;
+
+    private HttpClientFactory clients;
+    private GestureApi gestureApi;
+
+    @BeforeEach
+    public void setUp() {
+        clients = new HttpClientFactory(new ServerConfig().withPort(port).build());
+        gestureApi = new GestureApiClient(clients);
+        gestureApi.deleteAllGesture();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        clients.close();
+    }
+
+    @Test
+    public void upsert_get_and_delete_gesture() {
+        // when - adding a gesture
+        ResponseEntity<String> response = gestureApi.upsertGesture("hello", "hi");
+
+        // then - it is created
+        then(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+
+        // when - reading it with a target
+        response = gestureApi.getGesture("hello", "jim");
+
+        // then - the gesture is returned with the target
+        then(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        then(response.getBody()).isEqualTo("hi, jim");
+
+        // when - it is deleted
+        gestureApi.deleteGesture("hello");
+
+        // then - it is no longer found
+        HttpClientErrorException ex = catchThrowableOfType(() -> gestureApi.getGesture("hello", null),
+                HttpClientErrorException.class);
+        then(ex.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    public void large_responses_are_compressed_when_accepted() throws IOException {
+        // given - enough gestures for all of them to pass the compression threshold
+        List<String> gestures = new ArrayList<>();
+        for (int i=0; i<500; i++) {
+            gestureApi.upsertGesture("gesture-" + i, "hello number " + i);
+            gestures.add("hello number " + i);
+        }
+
+        // when - asking for all of them in binary, accepting gzip
+        ResponseEntity<byte[]> response = clients.restClient().get()
+                .uri("/" + GestureApi.GESTURES_PATH + "/all")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .accept(GestureBinary.GESTURES)
+                .retrieve()
+                .toEntity(byte[].class);
+
+        // then - the gestures arrive compressed, smaller than their text
+        then(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        then(response.getHeaders().getContentType()).isEqualTo(GestureBinary.GESTURES);
+        then(response.getBody().length).isLessThan(String.join("", gestures).length());
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+            then(GestureBinary.readAll(in)).containsExactlyInAnyOrderElementsOf(gestures);
+        }
+
+        // and - clients not accepting gzip get it uncompressed
+        ResponseEntity<byte[]> plain = clients.restClient().get()
+                .uri("/" + GestureApi.GESTURES_PATH + "/all")
+                .accept(GestureBinary.GESTURES)
+                .retrieve()
+                .toEntity(byte[].class);
+        then(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+        then(GestureBinary.readAll(new ByteArrayInputStream(plain.getBody())))
+                .containsExactlyInAnyOrderElementsOf(gestures);
+    }
+
+    @Test
+    public void blocking_and_reactive_clients_from_one_factory() {
+        // given - a gesture
+        gestureApi.upsertGesture("hello", "hi");
+
+        // when - reading it repeatedly from both the blocking and reactive clients
+        for (int i=0; i<20; i++) {
+            then(gestureApi.getGesture("hello", null).getBody()).isEqualTo("hi");
+            then(clients.webClient().get()
+                        .uri("/" + GestureApi.GESTURE_PATH, "hello")
+                        .accept(MediaType.TEXT_PLAIN)
+                        .retrieve()
+                        .bodyToMono(String.class)
+                        .block()).isEqualTo("hi");
+        }
+
+        // then - both are configured from the one ServerConfig
+        then(clients.getServerConfig().getMaxConnections()).isEqualTo(ServerConfig.DEFAULT_MAX_CONNECTIONS);
+        then(clients.getServerConfig().getBaseUrl().getPort()).isEqualTo(port);
+    }
+}
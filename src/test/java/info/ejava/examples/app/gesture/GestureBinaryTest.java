@@ -0,0 +1,51 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowableOfType;
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import info.ejava.examples.app.api.GestureBinary;
+
+/*
+ * This class is an example unit test of the application/x-gestures
+ * encoding, including input that a reader must reject.
+ */
+@DisplayName("Gesture binary test")
+public class GestureBinaryTest {
+
+    @Test
+    public void gestures_round_trip() throws IOException {
+        // given - gestures of one and several length bytes
+        List<String> gestures = List.of("", "hi", "x".repeat(200), "y".repeat(70_000));
+
+        // when
+        byte[] encoded = GestureBinary.encode(gestures);
+
+        // then
+        then(GestureBinary.readAll(new ByteArrayInputStream(encoded))).isEqualTo(gestures);
+        then(GestureBinary.readAll(new ByteArrayInputStream(encoded), encoded.length)).isEqualTo(gestures);
+    }
+
+    @Test
+    public void invalid_lengths_are_rejected() {
+        // given - a fifth length byte overflowing into the sign bit
+        byte[] overflow = {(byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x0F, 'a'};
+        // and - a length claiming more than the limit allows
+        byte[] tooLong = {0x05, 'a', 'b', 'c', 'd', 'e'};
+
+        // then - each is reported as an EOFException before being read
+        then(catchThrowableOfType(() -> GestureBinary.readAll(new ByteArrayInputStream(overflow)),
+                EOFException.class)).isNotNull();
+        then(catchThrowableOfType(() -> GestureBinary.readAll(new ByteArrayInputStream(tooLong), 4),
+                EOFException.class)).isNotNull();
+        then(catchThrowableOfType(() -> GestureBinary.readAll(new ByteArrayInputStream(new byte[] {0x05, 'a'})),
+                EOFException.class)).isNotNull();
+    }
+}
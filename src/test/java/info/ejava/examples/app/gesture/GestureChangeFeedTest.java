@@ -0,0 +1,132 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.catchThrowable;
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import info.ejava.examples.app.svc.ClientErrorException.GoneException;
+import info.ejava.examples.app.svc.GestureChangeFeed;
+import info.ejava.examples.app.svc.GestureService.ChangeType;
+import info.ejava.examples.app.svc.GestureService.GestureChange;
+import info.ejava.examples.app.svc.GestureService.GestureChangePage;
+import reactor.core.publisher.BaseSubscriber;
+
+/*
+ * This class is an example unit test of the change feed. A small ring is
+ * used so that readers are lapped and evicted within a few changes.
+ */
+@DisplayName("Gesture change feed test")
+public class GestureChangeFeedTest {
+
+    private final GestureChangeFeed feed = new GestureChangeFeed(4);
+
+    @Test
+    public void reads_changes_in_order() {
+        // given - changes published after a known position
+        long start = feed.getLatestSequence();
+        feed.publish(ChangeType.UPSERTED, "hello", "hi", 1);
+        feed.publish(ChangeType.DELETED, "hello", null, 0);
+        feed.publish(ChangeType.CLEARED, null, null, 0);
+
+        // when - reading two at a time
+        GestureChangePage first = feed.read(start, 2);
+        GestureChangePage second = feed.read(first.getLast(), 2);
+
+        // then - every change is returned once, in order
+        then(first.getChanges()).extracting(GestureChange::getType)
+                                .containsExactly(ChangeType.UPSERTED, ChangeType.DELETED);
+        then(first.getChanges().get(0).getGesture()).isEqualTo("hi");
+        then(second.getChanges()).extracting(GestureChange::getType).containsExactly(ChangeType.CLEARED);
+        then(feed.read(second.getLast(), 2).getChanges()).isEmpty();
+    }
+
+    @Test
+    public void poll_waits_for_next_change() throws Exception {
+        // given - a poll from now
+        CompletableFuture<GestureChangePage> poll = feed.poll(-1, 10, Duration.ofSeconds(10)).toFuture();
+        then(poll).isNotDone();
+
+        // when - a change is published
+        feed.publish(ChangeType.UPSERTED, "hello", "hi", 1);
+
+        // then - the poll returns it
+        then(poll.get(5, TimeUnit.SECONDS).getChanges()).extracting(GestureChange::getGestureType)
+                                                          .containsExactly("hello");
+
+        // and - a poll with nothing to return ends empty at its timeout
+        long latest = feed.getLatestSequence();
+        GestureChangePage empty = feed.poll(-1, 10, Duration.ofMillis(50)).block();
+        then(empty.getChanges()).isEmpty();
+        then(empty.getLast()).isEqualTo(latest);
+    }
+
+    @Test
+    public void rejects_expired_positions() {
+        // given - a position that more than capacity changes have passed
+        long start = feed.getLatestSequence();
+        for (int i=0; i<5; i++) {
+            feed.publish(ChangeType.UPSERTED, "hello", "hi-" + i, 1);
+        }
+
+        // then - reading, polling or following from it is rejected
+        then(catchThrowable(() -> feed.read(start, 10))).isInstanceOf(GoneException.class);
+        then(catchThrowable(() -> feed.poll(start, 10, Duration.ZERO))).isInstanceOf(GoneException.class);
+        then(catchThrowable(() -> feed.follow(start))).isInstanceOf(GoneException.class);
+        // as is a position from before this feed was created
+        then(catchThrowable(() -> feed.read(1, 10))).isInstanceOf(GoneException.class);
+        // but one change later is still retained
+        then(feed.read(start + 1, 10).getChanges()).hasSize(4);
+    }
+
+    @Test
+    public void follow_sends_only_what_is_requested_and_evicts_when_lapped() throws Exception {
+        // given - a subscriber that requests a single change
+        List<GestureChange> received = new CopyOnWriteArrayList<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        feed.follow(-1).subscribe(new BaseSubscriber<GestureChange>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+            @Override
+            protected void hookOnNext(GestureChange change) {
+                received.add(change);
+            }
+            @Override
+            protected void hookOnError(Throwable throwable) {
+                error.set(throwable);
+                done.complete(null);
+            }
+        });
+
+        // when - more changes are published than it has requested
+        feed.publish(ChangeType.UPSERTED, "hello", "hi", 1);
+        feed.publish(ChangeType.UPSERTED, "smile", "face", 1);
+
+        // then - it is sent only the one change it asked for
+        Thread.sleep(100);
+        then(received).extracting(GestureChange::getGestureType).containsExactly("hello");
+        then(error.get()).isNull();
+
+        // when - it falls further behind than the feed holds
+        for (int i=0; i<4; i++) {
+            feed.publish(ChangeType.UPSERTED, "wave", "hand-" + i, 1);
+        }
+
+        // then - it is evicted
+        done.get(5, TimeUnit.SECONDS);
+        then(error.get()).isInstanceOf(GoneException.class);
+        then(received).hasSize(1);
+    }
+}
@@ -0,0 +1,145 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import info.ejava.examples.app.svc.ConcurrentGestureStore;
+import info.ejava.examples.app.svc.GestureDictionary;
+
+/*
+ * This class is an example unit test of the concurrent store interning
+ * its values in a GestureDictionary.
+ */
+@DisplayName("Gesture dictionary test")
+public class GestureDictionaryTest {
+
+    @Test
+    public void interned_store_matches_hash_map() {
+        // given - an interning store and the map it should behave like
+        GestureDictionary dictionary = new GestureDictionary();
+        ConcurrentGestureStore store = new ConcurrentGestureStore(16, dictionary);
+        Map<String, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // when - applying the same random changes to both
+        for (int i=0; i<50_000; i++) {
+            String gestureType = "gesture-" + random.nextInt(2_000);
+            String gesture = "value-" + random.nextInt(100);
+            switch (random.nextInt(6)) {
+                case 0:
+                    then(store.remove(gestureType)).isEqualTo(expected.remove(gestureType));
+                    break;
+                case 1:
+                    long version = store.getVersion(gestureType);
+                    then(store.remove(gestureType, version)).isEqualTo(version != 0);
+                    expected.remove(gestureType);
+                    break;
+                case 2:
+                    then(store.putIfAbsent(gestureType, gesture)).isEqualTo(expected.putIfAbsent(gestureType, gesture));
+                    break;
+                case 3:
+                    String current = "value-" + random.nextInt(100);
+                    then(store.replace(gestureType, current, gesture)).isEqualTo(expected.replace(gestureType, current, gesture));
+                    break;
+                default:
+                    then(store.put(gestureType, gesture)).isEqualTo(expected.put(gestureType, gesture));
+            }
+            then(store.get(gestureType)).isEqualTo(expected.get(gestureType));
+        }
+
+        // then - the store holds the same gestures, and the dictionary only the values among them
+        Map<String, String> contents = new HashMap<>();
+        store.forEach(contents::put);
+        then(contents).isEqualTo(expected);
+        then(dictionary.size()).isEqualTo(expected.values().stream().distinct().count());
+    }
+
+    @Test
+    public void gestureTypes_share_values() {
+        // given
+        GestureDictionary dictionary = new GestureDictionary();
+        ConcurrentGestureStore store = new ConcurrentGestureStore(16, dictionary);
+
+        // when - putting equal values from distinct Strings
+        store.put("hello", new String("wave"));
+        store.put("goodbye", new String("wave"));
+
+        // then
+        then(store.get("hello")).isSameAs(store.get("goodbye"));
+        then(dictionary.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void values_are_released_by_deletes() {
+        // given
+        GestureDictionary dictionary = new GestureDictionary();
+        ConcurrentGestureStore store = new ConcurrentGestureStore(16, dictionary);
+        for (int i=0; i<1_000; i++) {
+            store.put("gesture-" + i, "value-" + (i % 10));
+        }
+        then(dictionary.size()).isEqualTo(10);
+
+        // when - deleting every gestureType holding value-0, and then all
+        for (int i=0; i<1_000; i+=10) {
+            store.remove("gesture-" + i);
+        }
+        int afterDeletes = dictionary.size();
+        store.clear();
+
+        // then
+        then(afterDeletes).isEqualTo(9);
+        then(dictionary.size()).isZero();
+        then(store.put("gesture-1", "value-1")).isNull();
+        then(dictionary.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrent_changes_leave_no_values_held() throws Exception {
+        // given - threads changing and deleting the same gestureTypes
+        GestureDictionary dictionary = new GestureDictionary();
+        ConcurrentGestureStore store = new ConcurrentGestureStore(16, dictionary);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] results = new Future<?>[4];
+            for (int t=0; t<results.length; t++) {
+                long seed = t;
+                results[t] = threads.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i=0; i<100_000; i++) {
+                        String gestureType = "gesture-" + random.nextInt(100);
+                        String gesture = "value-" + random.nextInt(5);
+                        switch (random.nextInt(3)) {
+                            case 0: store.remove(gestureType); break;
+                            case 1: store.replace(gestureType, store.getVersion(gestureType), gesture); break;
+                            default: store.put(gestureType, gesture);
+                        }
+                    }
+                });
+            }
+            for (Future<?> result: results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        // when - deleting what remains, one at a time
+        for (int i=0; i<100; i++) {
+            store.remove("gesture-" + i);
+        }
+
+        // then - no value is still counted as held
+        then(store.size()).isZero();
+        then(dictionary.size()).isZero();
+    }
+}
@@ -0,0 +1,85 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import info.ejava.examples.app.svc.ConcurrentGestureStore;
+import info.ejava.examples.app.svc.GestureChangeFeed;
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+import info.ejava.examples.app.svc.GestureStore;
+import info.ejava.examples.app.svc.SortedGestureStore;
+
+/*
+ * This class is an example unit test of paging and searching the
+ * gestures, both through a GestureTypeIndex and by scanning stores that
+ * do and do not keep gestureType order.
+ */
+@DisplayName("Gesture paging test")
+public class GesturePagingTest {
+
+    static Stream<Arguments> services() {
+        return Stream.of(
+            Arguments.of("concurrent scan", (Supplier<GestureStore>) ConcurrentGestureStore::new, false),
+            Arguments.of("sorted scan", (Supplier<GestureStore>) SortedGestureStore::new, false),
+            Arguments.of("concurrent indexed", (Supplier<GestureStore>) ConcurrentGestureStore::new, true));
+    }
+
+    // every gestureType, following the continuation through pages of limit
+    private static List<String> pages(GestureService gestures, String prefix, String glob, int limit) {
+        List<String> gestureTypes = new ArrayList<>();
+        String continuation = null;
+        do {
+            GestureService.GesturePage page = prefix == null && glob == null ?
+                    gestures.getGesturePage(continuation, limit) :
+                    gestures.searchGestures(prefix, glob, continuation, limit);
+            then(page.getGestures().size()).isLessThanOrEqualTo(limit);
+            page.getGestures().forEach(entry -> {
+                // each listed with the version it is at
+                then(entry.getVersion()).isEqualTo(gestures.getGestureVersion(entry.getGestureType())).isNotZero();
+                gestureTypes.add(entry.getGestureType());
+            });
+            continuation = page.getNext();
+        } while (continuation != null);
+        return gestureTypes;
+    }
+
+    @ParameterizedTest(name="{0}")
+    @MethodSource("services")
+    public void pages_and_searches_in_order(String name, Supplier<GestureStore> storeFactory, boolean indexed) {
+        // given - gestures already in the store, and more added through the service
+        GestureStore store = storeFactory.get();
+        store.put("wave", "hand");
+        store.put("greet.formal.en", "good day");
+        GestureService gestures = new GestureServiceImpl(store, new GestureChangeFeed(16), indexed);
+        for (String gestureType: List.of("greet.formal.fr", "greet.casual.en", "greeting", "greet", "a+b")) {
+            gestures.upsertGesture(gestureType, "hi");
+        }
+        gestures.deleteGesture("greeting");
+
+        // then - pages visit every gestureType once, in order
+        then(pages(gestures, null, null, 2))
+                .containsExactly("a+b", "greet", "greet.casual.en", "greet.formal.en", "greet.formal.fr", "wave");
+
+        // and - searches visit only those under the prefix or matching the glob
+        then(pages(gestures, "greet.", null, 1)).containsExactly("greet.casual.en", "greet.formal.en", "greet.formal.fr");
+        then(pages(gestures, null, "greet.*.en", 1)).containsExactly("greet.casual.en", "greet.formal.en");
+        then(pages(gestures, null, "a+?", 10)).containsExactly("a+b");
+        then(pages(gestures, "x", null, 10)).isEmpty();
+
+        // when - cleared
+        gestures.deleteAllGesture();
+
+        // then
+        then(pages(gestures, null, null, 10)).isEmpty();
+    }
+}
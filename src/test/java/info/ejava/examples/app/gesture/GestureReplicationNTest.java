@@ -0,0 +1,212 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.HttpClientErrorException;
+
+import info.ejava.examples.app.GuesturesApplication;
+import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.api.GestureApiClient;
+import info.ejava.examples.app.common.web.HttpClientFactory;
+import info.ejava.examples.app.common.web.ServerConfig;
+
+/*
+ * This class is an example of a multi-node test, running three replicating
+ * instances of the application on localhost and checking that a change
+ * made through any one of them reaches the others.
+ */
+@Tag("springboot")
+@DisplayName("Gesture replication test")
+public class GestureReplicationNTest {
+
+    private static final int NODES = 3;
+    private static final long WAIT_MILLIS = 15_000;
+
+    private final int[] ports = new int[NODES];
+    private final ConfigurableApplicationContext[] nodes = new ConfigurableApplicationContext[NODES];
+    private final List<HttpClientFactory> clients = new ArrayList<>();
+    private final GestureApi[] gestureApis = new GestureApi[NODES];
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        for (int i=0; i<NODES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                ports[i] = socket.getLocalPort();
+            }
+        }
+        for (int i=0; i<NODES; i++) {
+            startNode(i);
+            HttpClientFactory factory = new HttpClientFactory(new ServerConfig().withPort(ports[i]).build());
+            clients.add(factory);
+            gestureApis[i] = new GestureApiClient(factory);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (ConfigurableApplicationContext node: nodes) {
+            if (node != null) {
+                node.close();
+            }
+        }
+        clients.forEach(HttpClientFactory::close);
+    }
+
+    private void startNode(int node, String... extraArgs) {
+        // passed as arguments, to override application.properties
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=" + ports[node],
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--gestures.replication.enabled=true",
+                "--gestures.replication.poll-timeout=2s",
+                "--gestures.replication.retry-delay=100ms"));
+        int peer = 0;
+        for (int i=0; i<NODES; i++) {
+            if (i != node) {
+                args.add("--gestures.replication.peers[" + peer++ + "].port=" + ports[i]);
+            }
+        }
+        args.addAll(List.of(extraArgs));
+        nodes[node] = new SpringApplicationBuilder(GuesturesApplication.class)
+                .profiles("test")
+                .run(args.toArray(String[]::new));
+    }
+
+    private String read(int node, String gestureType) {
+        try {
+            return gestureApis[node].getGesture(gestureType, null).getBody();
+        } catch (HttpClientErrorException.NotFound ex) {
+            return null;
+        }
+    }
+
+    private String eTag(int node, String gestureType) {
+        return gestureApis[node].getGesture(gestureType, null).getHeaders().getETag();
+    }
+
+    private void awaitEveryNode(String gestureType, String gesture) {
+        for (int i=0; i<NODES; i++) {
+            int node = i;
+            await(() -> Objects.equals(read(node, gestureType), gesture));
+            then(read(node, gestureType)).as("node %d %s", node, gestureType).isEqualTo(gesture);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Test
+    public void changes_on_any_node_reach_every_node() {
+        // when - gestures are added through different nodes
+        gestureApis[0].upsertGesture("hello", "hi");
+        gestureApis[1].upsertGesture("smile", "face");
+
+        // then - every node has both
+        awaitEveryNode("hello", "hi");
+        awaitEveryNode("smile", "face");
+
+        // when - one is deleted through a third node
+        gestureApis[2].deleteGesture("hello");
+
+        // then - it is deleted everywhere
+        awaitEveryNode("hello", null);
+        awaitEveryNode("smile", "face");
+
+        // when - a gesture is changed many times in a row
+        for (int i=0; i<100; i++) {
+            gestureApis[1].upsertGesture("count", Integer.toString(i));
+        }
+
+        // then - every node ends with the last change, applied in order, at the version it was made with
+        awaitEveryNode("count", "99");
+        then(eTag(0, "count")).isEqualTo(eTag(1, "count")).isEqualTo(eTag(2, "count"));
+
+        // when - two nodes change the same gesture at about the same time
+        gestureApis[0].upsertGesture("race", "first");
+        gestureApis[2].upsertGesture("race", "second");
+
+        // then - every node settles on the later of the two
+        awaitEveryNode("race", "second");
+
+        // when - all are deleted
+        gestureApis[0].deleteAllGesture();
+
+        // then - every node is empty
+        awaitEveryNode("smile", null);
+        awaitEveryNode("count", null);
+    }
+
+    @Test
+    public void restarted_node_catches_up() {
+        // given - a gesture every node has
+        gestureApis[0].upsertGesture("hello", "hi");
+        awaitEveryNode("hello", "hi");
+
+        // when - a node is down while gestures are added and changed
+        nodes[2].close();
+        gestureApis[0].upsertGesture("wave", "hand");
+        gestureApis[1].upsertGesture("hello", "howdy");
+
+        // and - it is started again, with nothing stored
+        startNode(2);
+
+        // then - it catches up with the others
+        awaitEveryNode("wave", "hand");
+        awaitEveryNode("hello", "howdy");
+
+        // and - changes made through it reach the others again
+        gestureApis[2].upsertGesture("smile", "face");
+        awaitEveryNode("smile", "face");
+    }
+
+    @Test
+    public void restarted_node_catches_up_with_deletes(@TempDir Path dir) {
+        // given - a node keeping its gestures across restarts, and gestures every node has
+        String[] durable = {"--gestures.store=durable", "--gestures.durable.dir=" + dir};
+        nodes[2].close();
+        startNode(2, durable);
+        gestureApis[0].upsertGesture("hello", "hi");
+        gestureApis[0].upsertGesture("wave", "hand");
+        awaitEveryNode("hello", "hi");
+        awaitEveryNode("wave", "hand");
+
+        // when - the node is down while one is deleted and the other changed
+        nodes[2].close();
+        gestureApis[0].deleteGesture("hello");
+        gestureApis[1].upsertGesture("wave", "goodbye");
+
+        // and - it is started again, recovering both as they were
+        startNode(2, durable);
+
+        // then - the delete and the change reach it, and every node settles on them
+        awaitEveryNode("hello", null);
+        awaitEveryNode("wave", "goodbye");
+        then(eTag(0, "wave")).isEqualTo(eTag(1, "wave")).isEqualTo(eTag(2, "wave"));
+    }
+}
@@ -0,0 +1,160 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import info.ejava.examples.app.svc.ConcurrentGestureStore;
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+import info.ejava.examples.app.svc.GestureStore;
+import info.ejava.examples.app.svc.OffHeapGestureStore;
+import info.ejava.examples.app.svc.SynchronizedGestureStore;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * This class is an example of a multi-threaded stress test of the business
+ * service. Many threads upsert unique values into a small set of gestureTypes
+ * and the returned created/previousValue results are checked to form a single
+ * linear history per gestureType -- no update lost and none reported twice.
+ */
+@Slf4j
+@DisplayName("Gesture service concurrency test")
+public class GestureServiceConcurrencyTest {
+
+    private static final int THREADS = 64;
+    private static final int KEYS = 16;
+    private static final int UPSERTS_PER_THREAD = 20_000;
+
+    private static final int INCREMENTS_PER_THREAD = 500;
+
+    private record Upsert(String gestureType, String gesture, GestureService.UpsertResult result) {}
+
+    static Stream<Arguments> stores() {
+        return Stream.of(
+            Arguments.of("concurrent", (Supplier<GestureStore>) ConcurrentGestureStore::new),
+            Arguments.of("synchronized", (Supplier<GestureStore>) SynchronizedGestureStore::new),
+            Arguments.of("offheap", (Supplier<GestureStore>) OffHeapGestureStore::new));
+    }
+
+    @ParameterizedTest(name="{0}")
+    @MethodSource("stores")
+    public void upserts_are_linearizable(String name, Supplier<GestureStore> storeFactory) throws Exception {
+        // given - a service backed by the store under test
+        GestureService gestures = new GestureServiceImpl(storeFactory.get());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<List<Upsert>> history = new ConcurrentLinkedQueue<>();
+
+        // when - every thread races to upsert unique values into the same keys
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t=0; t<THREADS; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                List<Upsert> upserts = new ArrayList<>(UPSERTS_PER_THREAD);
+                start.await();
+                for (int i=0; i<UPSERTS_PER_THREAD; i++) {
+                    String gestureType = "gesture-" + ((thread + i) % KEYS);
+                    String gesture = thread + ":" + i;
+                    upserts.add(new Upsert(gestureType, gesture, gestures.upsertGesture(gestureType, gesture)));
+                }
+                history.add(upserts);
+                return null;
+            }));
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future: futures) {
+            future.get();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        executor.shutdown();
+
+        long totalOps = (long)THREADS * UPSERTS_PER_THREAD;
+        log.info("{} store: {} threads, {} upserts in {} ms ({} ops/sec)", name, THREADS, totalOps,
+                elapsedNanos / 1_000_000, totalOps * 1_000_000_000L / elapsedNanos);
+
+        // then - each key was created exactly once and every other write replaced a distinct value
+        Map<String, Integer> created = new ConcurrentHashMap<>();
+        Map<String, Set<String>> replaced = new ConcurrentHashMap<>();
+        Map<String, Integer> writes = new ConcurrentHashMap<>();
+        history.stream().flatMap(List::stream).forEach(upsert -> {
+            writes.merge(upsert.gestureType(), 1, Integer::sum);
+            if (upsert.result().isCreated()) {
+                then(upsert.result().getPreviousValue()).isNull();
+                created.merge(upsert.gestureType(), 1, Integer::sum);
+            } else {
+                then(upsert.result().getPreviousValue()).isNotNull();
+                boolean first = replaced.computeIfAbsent(upsert.gestureType(), k -> new HashSet<>())
+                                        .add(upsert.result().getPreviousValue());
+                then(first).as("%s replaced twice", upsert.result().getPreviousValue()).isTrue();
+            }
+        });
+        then(created).hasSize(KEYS);
+        then(created.values()).containsOnly(1);
+        for (String gestureType: writes.keySet()) {
+            then(replaced.get(gestureType)).hasSize(writes.get(gestureType) - 1);
+            // and - the surviving value is the one write nobody replaced
+            then(replaced.get(gestureType)).doesNotContain(gestures.getGesture(gestureType, null));
+        }
+    }
+
+    @ParameterizedTest(name="{0}")
+    @MethodSource("stores")
+    public void versioned_replaces_lose_no_updates(String name, Supplier<GestureStore> storeFactory) throws Exception {
+        // given - a counter held as a gesture
+        GestureStore store = storeFactory.get();
+        store.put("counter", "0");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicLong conflicts = new AtomicLong();
+
+        // when - every thread increments it by reading a version and replacing only that version
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t=0; t<THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i=0; i<INCREMENTS_PER_THREAD; i++) {
+                    while (true) {
+                        GestureStore.EncodedGesture current = store.getEncoded("counter");
+                        long count = Long.parseLong(new String(current.getGesture(), StandardCharsets.UTF_8));
+                        if (store.replace("counter", current.getVersion(), Long.toString(count + 1)) != 0) {
+                            break;
+                        }
+                        conflicts.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future: futures) {
+            future.get();
+        }
+        executor.shutdown();
+        log.info("{} store: {} increments with {} version conflicts", name,
+                THREADS * INCREMENTS_PER_THREAD, conflicts.get());
+
+        // then - every increment that succeeded is reflected exactly once
+        then(store.get("counter")).isEqualTo(Long.toString((long)THREADS * INCREMENTS_PER_THREAD));
+    }
+}
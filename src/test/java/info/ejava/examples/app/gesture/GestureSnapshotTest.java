@@ -0,0 +1,68 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import info.ejava.examples.app.svc.GestureSnapshot;
+
+/*
+ * This class is an example unit test of the mapped snapshot format. Each
+ * test writes a file and checks what is read back through the mapping.
+ */
+@DisplayName("Gesture snapshot test")
+public class GestureSnapshotTest {
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    public void looks_up_every_entry() throws IOException {
+        // given - a snapshot including keys whose hash codes collide
+        Map<String, String> gestures = new LinkedHashMap<>();
+        for (int i=0; i<10_000; i++) {
+            gestures.put("gesture-" + i, "value-" + i);
+        }
+        gestures.put("Aa", "first");
+        gestures.put("BB", "second");
+        gestures.put("héllo", "bonjour ☺");
+        Path file = dir.resolve("snapshot.dat");
+        GestureSnapshot.write(file, action -> gestures.forEach(
+                (gestureType, gesture) -> action.accept(gestureType, gesture, gesture.length())));
+
+        try (GestureSnapshot snapshot = GestureSnapshot.open(file)) {
+            // then - each entry is found and unknown keys are not
+            then(snapshot.size()).isEqualTo(gestures.size());
+            gestures.forEach((gestureType, gesture) -> {
+                then(snapshot.get(gestureType)).isEqualTo(gesture);
+                then(snapshot.getVersion(gestureType)).isEqualTo(gesture.length());
+            });
+            then(snapshot.get("unknown")).isNull();
+            then(snapshot.maxVersion()).isEqualTo(10);
+
+            // and - visiting returns the entries in the order written
+            Map<String, String> visited = new LinkedHashMap<>();
+            snapshot.forEach((gestureType, gesture, version) -> visited.put(gestureType, gesture));
+            then(visited).containsExactlyEntriesOf(gestures);
+        }
+    }
+
+    @Test
+    public void empty_snapshot() throws IOException {
+        Path file = dir.resolve("snapshot.dat");
+        GestureSnapshot.write(file, action -> { });
+
+        try (GestureSnapshot snapshot = GestureSnapshot.open(file)) {
+            then(snapshot.size()).isZero();
+            then(snapshot.get("hello")).isNull();
+            then(snapshot.maxVersion()).isZero();
+        }
+    }
+}
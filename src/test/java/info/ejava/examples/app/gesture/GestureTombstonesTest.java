@@ -0,0 +1,131 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.tuple;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import info.ejava.examples.app.svc.ConcurrentGestureStore;
+import info.ejava.examples.app.svc.GestureChangeFeed;
+import info.ejava.examples.app.svc.GestureService;
+import info.ejava.examples.app.svc.GestureService.ChangeType;
+import info.ejava.examples.app.svc.GestureService.GestureChange;
+import info.ejava.examples.app.svc.GestureService.GestureEntry;
+import info.ejava.examples.app.svc.GestureServiceImpl;
+import info.ejava.examples.app.svc.GestureTombstones;
+import info.ejava.examples.app.svc.GestureVersion;
+
+/*
+ * This class is an example unit test of versioned deletes. Changes from
+ * two peers are applied to a service as the GestureReplicator would, and
+ * the tombstones it keeps are checked.
+ */
+@DisplayName("Gesture tombstones test")
+public class GestureTombstonesTest {
+
+    private static final String PEER_A = "http://a:8080";
+    private static final String PEER_B = "http://b:8080";
+
+    private final GestureChangeFeed feed = new GestureChangeFeed(16);
+    private final GestureTombstones tombstones = new GestureTombstones(List.of(PEER_A, PEER_B));
+    private final GestureService gestures = new GestureServiceImpl(new ConcurrentGestureStore(), feed, tombstones, false);
+
+    private void replicate(String origin, ChangeType type, String gestureType, String gesture, long version) {
+        gestures.applyChanges(origin, List.of(new GestureChange(0, type, gestureType, gesture, version, origin)));
+    }
+
+    @Test
+    public void delete_wins_over_earlier_upsert() {
+        // given - a gesture upserted on a peer, then deleted here
+        long upserted = GestureVersion.next();
+        replicate(PEER_A, ChangeType.UPSERTED, "hello", "hi", upserted);
+        long start = feed.getLatestSequence();
+        gestures.deleteGesture("hello");
+
+        // then - the delete is published at the version of its tombstone
+        GestureChange delete = feed.read(start, 10).getChanges().get(0);
+        then(delete.getType()).isEqualTo(ChangeType.DELETED);
+        then(delete.getVersion()).isGreaterThan(upserted).isEqualTo(tombstones.getVersion("hello"));
+
+        // when - an upsert made on the other peer before the delete arrives late
+        replicate(PEER_B, ChangeType.UPSERTED, "hello", "howdy", delete.getVersion() - 1);
+
+        // then - it does not revive the gesture
+        then(gestures.getGestureVersion("hello")).isZero();
+
+        // when - an upsert made after the delete arrives
+        replicate(PEER_B, ChangeType.UPSERTED, "hello", "hey", delete.getVersion() + 1);
+
+        // then - it is applied, replacing the tombstone
+        then(gestures.getGesture("hello", null)).isEqualTo("hey");
+        then(tombstones.getVersion("hello")).isZero();
+    }
+
+    @Test
+    public void delete_loses_to_later_upsert() {
+        // given - a gesture upserted here
+        gestures.upsertGesture("hello", "hi");
+        long version = gestures.getGestureVersion("hello");
+
+        // when - a delete made on a peer before the upsert arrives
+        replicate(PEER_A, ChangeType.DELETED, "hello", null, version - 1);
+
+        // then - the gesture is kept
+        then(gestures.getGesture("hello", null)).isEqualTo("hi");
+
+        // when - a delete made after it arrives
+        long start = feed.getLatestSequence();
+        replicate(PEER_A, ChangeType.DELETED, "hello", null, version + 1);
+
+        // then - the gesture is deleted, leaving a tombstone at the peer's version
+        then(gestures.getGestureVersion("hello")).isZero();
+        then(tombstones.getVersion("hello")).isEqualTo(version + 1);
+
+        // and - a delete of a gesture this node never had is still recorded and republished
+        replicate(PEER_A, ChangeType.DELETED, "unknown", null, version + 2);
+        then(tombstones.getVersion("unknown")).isEqualTo(version + 2);
+        then(feed.read(start, 10).getChanges()).extracting(GestureChange::getGestureType)
+                                               .containsExactly("hello", "unknown");
+    }
+
+    @Test
+    public void tombstone_kept_until_every_peer_passed_it() {
+        // given - a delete made here
+        gestures.upsertGesture("hello", "hi");
+        gestures.deleteGesture("hello");
+        long version = tombstones.getVersion("hello");
+
+        // when - one peer passes it, and the other is seen only at an earlier version
+        tombstones.passed(PEER_A, "hello", version);
+        tombstones.passed(PEER_B, "hello", version - 1);
+
+        // then - it is kept, and listed
+        then(tombstones.getVersion("hello")).isEqualTo(version);
+        then(tombstones.page(null, 10).getGestures()).extracting(GestureEntry::getGestureType, GestureEntry::getVersion)
+                                                    .containsExactly(tuple("hello", version));
+
+        // when - the other peer passes it
+        tombstones.passed(PEER_B, "hello", version);
+
+        // then - it is dropped
+        then(tombstones.getVersion("hello")).isZero();
+        then(tombstones.size()).isZero();
+    }
+
+    @Test
+    public void nothing_recorded_without_peers() {
+        // given - a service not replicating
+        GestureTombstones none = new GestureTombstones(List.of());
+        GestureService local = new GestureServiceImpl(new ConcurrentGestureStore(), feed, none, false);
+
+        // when
+        local.upsertGesture("hello", "hi");
+        local.deleteGesture("hello");
+
+        // then
+        then(none.size()).isZero();
+    }
+}
@@ -0,0 +1,166 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import info.ejava.examples.app.svc.GestureTypeIndex;
+
+/*
+ * This class is an example unit test of the gestureType index, checked
+ * against a TreeSet holding the same gestureTypes.
+ */
+@DisplayName("Gesture type index test")
+public class GestureTypeIndexTest {
+
+    private final GestureTypeIndex index = new GestureTypeIndex();
+
+    private List<String> visit(String prefix, String after, int limit) {
+        List<String> visited = new ArrayList<>();
+        index.visit(prefix, after, gestureType -> visited.add(gestureType) && visited.size() < limit);
+        return visited;
+    }
+
+    private List<String> match(String glob) {
+        List<String> visited = new ArrayList<>();
+        index.visitMatching(glob, null, visited::add);
+        return visited;
+    }
+
+    @Test
+    public void adds_and_removes_gestureTypes() {
+        // when - gestureTypes sharing prefixes are added
+        then(index.add("greet.formal.en")).isTrue();
+        then(index.add("greet.formal.fr")).isTrue();
+        then(index.add("greet")).isTrue();
+        then(index.add("greet.casual")).isTrue();
+        then(index.add("greet.formal.en")).isFalse();
+
+        // then - each is found once, in order
+        then(index.size()).isEqualTo(4);
+        then(visit(null, null, 10)).containsExactly("greet", "greet.casual", "greet.formal.en", "greet.formal.fr");
+
+        // when - removing them leaves the others in place
+        then(index.remove("greet.formal")).isFalse();
+        then(index.remove("greet.formal.en")).isTrue();
+        then(index.remove("greet")).isTrue();
+        then(index.remove("greet")).isFalse();
+
+        // then
+        then(index.size()).isEqualTo(2);
+        then(visit(null, null, 10)).containsExactly("greet.casual", "greet.formal.fr");
+        then(visit("greet.f", null, 10)).containsExactly("greet.formal.fr");
+
+        // when - cleared
+        index.clear();
+
+        // then
+        then(index.size()).isZero();
+        then(visit(null, null, 10)).isEmpty();
+    }
+
+    @Test
+    public void visits_prefix_after_position() {
+        // given
+        for (String gestureType: List.of("wave", "greet.formal.en", "greet.formal.fr", "greet.casual.en", "greeting", "greet")) {
+            index.add(gestureType);
+        }
+
+        // then - only the prefix is visited, from after the position, until stopped
+        then(visit("greet.", null, 10)).containsExactly("greet.casual.en", "greet.formal.en", "greet.formal.fr");
+        then(visit("greet", "greet.casual.en", 10)).containsExactly("greet.formal.en", "greet.formal.fr", "greeting");
+        then(visit("greet", "greet.c", 10)).containsExactly("greet.casual.en", "greet.formal.en", "greet.formal.fr", "greeting");
+        then(visit("greet", "greet", 2)).containsExactly("greet.casual.en", "greet.formal.en");
+        then(visit("greet.formal.e", null, 10)).containsExactly("greet.formal.en");
+        then(visit("greet.x", null, 10)).isEmpty();
+        then(visit("greeting.", null, 10)).isEmpty();
+    }
+
+    @Test
+    public void visits_matching_glob() {
+        // given
+        for (String gestureType: List.of("greet.formal.en", "greet.formal.fr", "greet.casual.en", "greet.en", "wave.en", "a+b")) {
+            index.add(gestureType);
+        }
+
+        // then
+        then(match("greet.*.en")).containsExactly("greet.casual.en", "greet.formal.en");
+        then(match("*.en")).containsExactly("greet.casual.en", "greet.en", "greet.formal.en", "wave.en");
+        then(match("greet.formal.?r")).containsExactly("greet.formal.fr");
+        then(match("greet.en")).containsExactly("greet.en");
+        then(match("greet")).isEmpty();
+        then(match("a+b")).containsExactly("a+b");
+        then(match("a+*")).containsExactly("a+b");
+    }
+
+    @Test
+    public void matches_sorted_set() {
+        // given - random changes applied to both the index and a TreeSet
+        TreeSet<String> expected = new TreeSet<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i=0; i<20_000; i++) {
+            String gestureType = Integer.toString(random.nextInt(3000), 7);
+            if (random.nextInt(3) == 0) {
+                then(index.remove(gestureType)).isEqualTo(expected.remove(gestureType));
+            } else {
+                then(index.add(gestureType)).isEqualTo(expected.add(gestureType));
+            }
+        }
+
+        // then - both hold and order the same gestureTypes
+        then(index.size()).isEqualTo(expected.size());
+        then(visit(null, null, Integer.MAX_VALUE)).containsExactlyElementsOf(expected);
+        then(visit("12", "123", Integer.MAX_VALUE))
+                .containsExactlyElementsOf(expected.subSet("12", true, "13", false).tailSet("123", false));
+    }
+
+    @Test
+    public void readers_see_stable_gestureTypes_during_changes() throws Exception {
+        // given - gestureTypes that are never removed, among others that come and go
+        List<String> stable = new ArrayList<>();
+        for (int i=0; i<500; i++) {
+            stable.add("stable." + i);
+            index.add("stable." + i);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!done.get()) {
+                String gestureType = "stable." + random.nextInt(500) + "." + random.nextInt(5);
+                if (!index.add(gestureType)) {
+                    index.remove(gestureType);
+                }
+                index.remove("stable." + random.nextInt(500) + "x");
+            }
+        });
+        writer.start();
+
+        // when - reading while the others are changed
+        try {
+            for (int i=0; i<200; i++) {
+                List<String> visited = new ArrayList<>();
+                index.visit("stable.", null, gestureType -> {
+                    if (!visited.isEmpty() && visited.get(visited.size()-1).compareTo(gestureType) >= 0) {
+                        failure.set(new AssertionError(gestureType + " visited out of order"));
+                    }
+                    return visited.add(gestureType);
+                });
+                // then - every stable gestureType is seen, in order
+                then(visited).containsAll(stable);
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+        then(failure.get()).isNull();
+    }
+}
@@ -1,6 +1,13 @@
 package info.ejava.examples.app.gesture;
 
+import java.io.ByteArrayInputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.hamcrest.Matchers.containsString;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -8,18 +15,33 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import org.springframework.web.util.UriComponentsBuilder;
 
 import info.ejava.examples.app.api.GestureApi;
+import info.ejava.examples.app.api.GestureBinary;
 import info.ejava.examples.app.common.web.ServerConfig;
 import info.ejava.examples.app.gesture.client.ClientTestBaseConfiguration;
+import com.jayway.jsonpath.JsonPath;
 import lombok.extern.slf4j.Slf4j;
 
 /*
@@ -34,6 +56,8 @@ import lombok.extern.slf4j.Slf4j;
 @DisplayName("Gestures MockMvc Integration Test ")
 @Slf4j
 @AutoConfigureMockMvc
+// publish to the Prometheus registry, which tests otherwise leave out
+@AutoConfigureObservability(tracing=false)
 public class GesturesMockMvcNTest {
 
     //private static final String[] GESTURES_PATH="api/gestures".split("/");
@@ -61,8 +85,394 @@ public class GesturesMockMvcNTest {
     public void add_new_gesture() throws Exception     {
         
     }
-    
 
+    private void upsert(String gestureType, String gesture) throws Exception {
+        mockMvc.perform(put("/"+GestureApi.GESTURE_PATH, gestureType)
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content(gesture))
+               .andExpect(status().is2xxSuccessful());
+    }
+
+    @Test
+    public void get_gesture_with_target_as_bytes() throws Exception {
+        // given - a gesture with characters outside of ASCII
+        upsert("hello", "grüß dich");
+
+        // when - requesting it with a target
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello")
+                            .queryParam(GestureApi.target, "José")
+                            .accept(MediaType.TEXT_PLAIN))
+        // then - the value and target are written as UTF-8 with an exact length
+               .andExpect(status().isOk())
+               .andExpect(content().contentType("text/plain;charset=UTF-8"))
+               .andExpect(content().string("grüß dich, José"))
+               .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH,
+                        "grüß dich, José".getBytes(StandardCharsets.UTF_8).length));
+
+        // and - unknown gestures are still reported as not found
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "unknown")
+                            .accept(MediaType.TEXT_PLAIN))
+               .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void get_gesture_if_none_match() throws Exception {
+        // given - a gesture and its ETag
+        upsert("hello", "hi");
+        MvcResult result = mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello"))
+               .andExpect(status().isOk())
+               .andExpect(header().exists(HttpHeaders.ETAG))
+               .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+               .andReturn();
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+
+        // when - polling with the ETag while the gesture is unchanged
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello")
+                            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+        // then - it is not sent again
+               .andExpect(status().isNotModified())
+               .andExpect(header().string(HttpHeaders.ETAG, eTag))
+               .andExpect(content().string(""));
+
+        // when - polling after it changes
+        upsert("hello", "howdy");
+        result = mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello")
+                            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+        // then - the new value is sent with a new ETag
+               .andExpect(status().isOk())
+               .andExpect(content().string("howdy"))
+               .andReturn();
+        then(result.getResponse().getHeader(HttpHeaders.ETAG)).isNotEqualTo(eTag);
+    }
+
+    @Test
+    public void replace_and_delete_if_match() throws Exception {
+        // given - a gesture and its ETag
+        upsert("hello", "hi");
+        String eTag = mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello"))
+               .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // when - replacing it at that ETag
+        MvcResult result = mockMvc.perform(put("/"+GestureApi.GESTURE_PATH, "hello")
+                            .header(HttpHeaders.IF_MATCH, eTag)
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content("howdy"))
+        // then - it is replaced and the new ETag returned
+               .andExpect(status().isNoContent())
+               .andExpect(header().exists(HttpHeaders.ETAG))
+               .andReturn();
+        String newETag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        then(newETag).isNotEqualTo(eTag);
+
+        // when - another client replaces or deletes using the old ETag
+        mockMvc.perform(put("/"+GestureApi.GESTURE_PATH, "hello")
+                            .header(HttpHeaders.IF_MATCH, eTag)
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content("hey"))
+        // then - the change is rejected
+               .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(delete("/"+GestureApi.GESTURE_PATH, "hello")
+                            .header(HttpHeaders.IF_MATCH, eTag))
+               .andExpect(status().isPreconditionFailed());
+
+        // when - deleting at the current ETag
+        mockMvc.perform(delete("/"+GestureApi.GESTURE_PATH, "hello")
+                            .header(HttpHeaders.IF_MATCH, newETag))
+               .andExpect(status().isNoContent());
+        // then - it is gone, and If-Match no longer matches anything
+        mockMvc.perform(put("/"+GestureApi.GESTURE_PATH, "hello")
+                            .header(HttpHeaders.IF_MATCH, "*")
+                            .contentType(MediaType.TEXT_PLAIN)
+                            .content("hey"))
+               .andExpect(status().isPreconditionFailed());
+    }
+
+    private String pollChanges(String after, String timeout) throws Exception {
+        MockHttpServletRequestBuilder request = get("/"+GestureApi.GESTURE_CHANGES_PATH)
+                                    .queryParam(GestureApi.timeout, timeout)
+                                    .accept(MediaType.APPLICATION_JSON);
+        if (after != null) {
+            request.queryParam(GestureApi.after, after);
+        }
+        MvcResult result = mockMvc.perform(request)
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+        return mockMvc.perform(asyncDispatch(result))
+                      .andExpect(status().isOk())
+                      .andReturn().getResponse().getContentAsString();
+    }
+
+    @Test
+    public void long_poll_changes() throws Exception {
+        // given - the current position in the change feed
+        String empty = pollChanges(null, "0");
+        then((List<?>)JsonPath.read(empty, "$.changes")).isEmpty();
+        String position = JsonPath.read(empty, "$.last").toString();
+
+        // when - gestures change and the feed is polled from that position
+        upsert("hello", "hi");
+        mockMvc.perform(delete("/"+GestureApi.GESTURE_PATH, "hello"))
+               .andExpect(status().isNoContent());
+        String json = pollChanges(position, "5");
+
+        // then - each change is returned, in order
+        then((List<String>)JsonPath.read(json, "$.changes[*].type")).containsExactly("UPSERTED", "DELETED");
+        then((List<String>)JsonPath.read(json, "$.changes[*].gestureType")).containsExactly("hello", "hello");
+        then((String)JsonPath.read(json, "$.changes[0].gesture")).isEqualTo("hi");
+
+        // and - a position that is not in the feed is reported as gone
+        mockMvc.perform(get("/"+GestureApi.GESTURE_CHANGES_PATH)
+                            .queryParam(GestureApi.after, "1")
+                            .accept(MediaType.APPLICATION_JSON))
+               .andExpect(status().isGone());
+    }
+
+    @Test
+    public void page_through_gestures() throws Exception {
+        // given - gestures added out of order
+        for (String gestureType: List.of("wave", "bow", "smile", "hello", "nod")) {
+            upsert(gestureType, gestureType + "-value");
+        }
+
+        // when - walking the pages two at a time
+        List<String> gestureTypes = new ArrayList<>();
+        String next = null;
+        int pages = 0;
+        do {
+            MockHttpServletRequestBuilder request = get("/"+GestureApi.GESTURES_PATH)
+                                        .queryParam(GestureApi.limit, "2")
+                                        .accept(MediaType.APPLICATION_JSON);
+            if (next != null) {
+                request.queryParam(GestureApi.continuation, next);
+            }
+            MvcResult result = mockMvc.perform(request)
+                                      .andExpect(status().isOk())
+                                      .andReturn();
+            String json = result.getResponse().getContentAsString();
+            gestureTypes.addAll(JsonPath.read(json, "$.gestures[*].gestureType"));
+            next = JsonPath.read(json, "$.next");
+            pages += 1;
+        } while (next != null);
+
+        // then - every gesture is returned once, in gestureType order
+        then(pages).isEqualTo(3);
+        then(gestureTypes).containsExactly("bow", "hello", "nod", "smile", "wave");
+    }
+
+    @Test
+    public void search_gestures_by_prefix_and_match() throws Exception {
+        // given - hierarchical gestureTypes
+        for (String gestureType: List.of("greet.formal.en", "greet.formal.fr", "greet.casual.en", "greeting", "wave")) {
+            upsert(gestureType, gestureType + "-value");
+        }
+
+        // when - searching by prefix, one at a time
+        MvcResult first = mockMvc.perform(get("/"+GestureApi.GESTURES_PATH)
+                                        .queryParam(GestureApi.prefix, "greet.")
+                                        .queryParam(GestureApi.limit, "1")
+                                        .accept(MediaType.APPLICATION_JSON))
+                                 .andExpect(status().isOk())
+                                 .andReturn();
+        String next = JsonPath.read(first.getResponse().getContentAsString(), "$.next");
+        MvcResult rest = mockMvc.perform(get("/"+GestureApi.GESTURES_PATH)
+                                        .queryParam(GestureApi.prefix, "greet.")
+                                        .queryParam(GestureApi.continuation, next)
+                                        .accept(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andReturn();
+
+        // then - only those under the prefix are returned, in order
+        then(JsonPath.<List<String>>read(first.getResponse().getContentAsString(), "$.gestures[*].gestureType"))
+                .containsExactly("greet.casual.en");
+        then(JsonPath.<List<String>>read(rest.getResponse().getContentAsString(), "$.gestures[*].gestureType"))
+                .containsExactly("greet.formal.en", "greet.formal.fr");
+        then(JsonPath.<String>read(rest.getResponse().getContentAsString(), "$.next")).isNull();
+
+        // when - searching by glob
+        String matched = mockMvc.perform(get("/"+GestureApi.GESTURES_PATH)
+                                        .queryParam(GestureApi.match, "greet.*.en")
+                                        .accept(MediaType.APPLICATION_JSON))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.gestures[0].gesture").value("greet.casual.en-value"))
+                                .andReturn().getResponse().getContentAsString();
+
+        // then - only matching gestureTypes are returned
+        then(JsonPath.<List<String>>read(matched, "$.gestures[*].gestureType"))
+                .containsExactly("greet.casual.en", "greet.formal.en");
+
+        // prefix and match are not combined
+        mockMvc.perform(get("/"+GestureApi.GESTURES_PATH)
+                            .queryParam(GestureApi.prefix, "greet.")
+                            .queryParam(GestureApi.match, "*.en")
+                            .accept(MediaType.APPLICATION_JSON))
+               .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    public void get_gestures_as_binary() throws Exception {
+        // given
+        upsert("hello", "hi");
+        upsert("smile", "façade");
+
+        // when - a single gesture is asked for in binary
+        MvcResult single = mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello")
+                                        .queryParam(GestureApi.target, "jim")
+                                        .accept(GestureBinary.GESTURES))
+                                  .andExpect(status().isOk())
+                                  .andExpect(content().contentType(GestureBinary.GESTURES))
+                                  .andReturn();
+
+        // then - it is one length-prefixed gesture
+        byte[] body = single.getResponse().getContentAsByteArray();
+        then(body).containsExactly(7, 'h', 'i', ',', ' ', 'j', 'i', 'm');
+        then(single.getResponse().getContentLength()).isEqualTo(body.length);
+
+        // when - all gestures are asked for in binary
+        MvcResult all = mockMvc.perform(get("/"+GestureApi.GESTURES_PATH+"/all")
+                                        .accept(GestureBinary.GESTURES))
+                               .andExpect(status().isOk())
+                               .andReturn();
+
+        // then - each is decoded in turn
+        then(GestureBinary.readAll(new ByteArrayInputStream(all.getResponse().getContentAsByteArray())))
+                .containsExactlyInAnyOrder("hi", "façade");
+
+        // and - each representation has its own ETag, varying by Accept
+        String textETag = mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello")
+                                        .accept(MediaType.TEXT_PLAIN))
+                                 .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)))
+                                 .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String binaryETag = single.getResponse().getHeader(HttpHeaders.ETAG);
+        then(single.getResponse().getHeaders(HttpHeaders.VARY)).contains(HttpHeaders.ACCEPT);
+        then(binaryETag).isNotEqualTo(textETag);
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello")
+                            .accept(GestureBinary.GESTURES)
+                            .header(HttpHeaders.IF_NONE_MATCH, textETag))
+               .andExpect(status().isOk());
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello")
+                            .accept(GestureBinary.GESTURES)
+                            .header(HttpHeaders.IF_NONE_MATCH, binaryETag))
+               .andExpect(status().isNotModified())
+               .andExpect(header().string(HttpHeaders.ETAG, binaryETag))
+               .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT)));
+
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello")
+                            .header(HttpHeaders.ACCEPT, "text/plain;q=0.5, " + GestureBinary.GESTURES_VALUE))
+               .andExpect(content().contentType(GestureBinary.GESTURES))
+               .andExpect(header().string(HttpHeaders.ETAG, binaryETag));
+
+        // and - an unknown gesture is still reported as text
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "unknown")
+                            .accept(GestureBinary.GESTURES))
+               .andExpect(status().isNotFound())
+               .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN));
+    }
+
+    @Test
+    public void reject_invalid_page_limit() throws Exception {
+        mockMvc.perform(get("/"+GestureApi.GESTURES_PATH)
+                            .queryParam(GestureApi.limit, "0")
+                            .accept(MediaType.APPLICATION_JSON))
+               .andExpect(status().isUnprocessableEntity());
+    }
 
+    @Test
+    public void batch_upsert_get_delete() throws Exception {
+        // given - one existing gesture
+        upsert("hello", "hi");
 
+        // when - upserting a batch that both creates and replaces
+        mockMvc.perform(put("/"+GestureApi.GESTURES_BATCH_PATH)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"hello\":\"howdy\", \"smile\":\"face\"}"))
+        // then - each item reports its own outcome
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$[0].gestureType").value("hello"))
+               .andExpect(jsonPath("$[0].status").value("REPLACED"))
+               .andExpect(jsonPath("$[0].value").value("hi"))
+               .andExpect(jsonPath("$[1].gestureType").value("smile"))
+               .andExpect(jsonPath("$[1].status").value("CREATED"));
+
+        // when - getting a batch that includes an unknown gesture
+        mockMvc.perform(post("/"+GestureApi.GESTURES_BATCH_PATH+"/get")
+                            .queryParam(GestureApi.target, "jim")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("[\"smile\", \"unknown\"]"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$[0].status").value("FOUND"))
+               .andExpect(jsonPath("$[0].value").value("face, jim"))
+               .andExpect(jsonPath("$[1].status").value("NOT_FOUND"));
+
+        // when - deleting a batch
+        mockMvc.perform(post("/"+GestureApi.GESTURES_BATCH_PATH+"/delete")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("[\"hello\", \"unknown\"]"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$[0].status").value("DELETED"))
+               .andExpect(jsonPath("$[0].value").value("howdy"))
+               .andExpect(jsonPath("$[1].status").value("NOT_FOUND"));
+    }
+
+    @Test
+    public void reject_batches_holding_null() throws Exception {
+        // when - a batch holding a null gesture or gestureType
+        mockMvc.perform(put("/"+GestureApi.GESTURES_BATCH_PATH)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"hello\":\"hi\", \"smile\":null}"))
+               .andExpect(status().isUnprocessableEntity());
+        mockMvc.perform(post("/"+GestureApi.GESTURES_BATCH_PATH+"/get")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("[\"hello\", null]"))
+               .andExpect(status().isUnprocessableEntity());
+        mockMvc.perform(post("/"+GestureApi.GESTURES_BATCH_PATH+"/delete")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("[null]"))
+               .andExpect(status().isUnprocessableEntity());
+
+        // then - nothing in the batch was stored
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello"))
+               .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void stream_gestures_as_ndjson() throws Exception {
+        // given
+        upsert("hello", "hi");
+        upsert("smile", "face");
+
+        // when - requesting the gestures as a stream
+        MvcResult result = mockMvc.perform(get("/"+GestureApi.GESTURES_PATH)
+                                        .accept(MediaType.APPLICATION_NDJSON))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+
+        // then - one JSON object per line, including the keys
+        mockMvc.perform(asyncDispatch(result))
+               .andExpect(status().isOk())
+               .andExpect(content().contentType(MediaType.APPLICATION_NDJSON));
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        then(lines).containsExactlyInAnyOrder(
+                "{\"gestureType\":\"hello\",\"gesture\":\"hi\"}",
+                "{\"gestureType\":\"smile\",\"gesture\":\"face\"}");
+    }
+
+    @Test
+    public void metrics_scraped_by_prometheus() throws Exception {
+        // given - a found and an unknown gesture requested
+        upsert("hello", "hi");
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "hello")).andExpect(status().isOk());
+        mockMvc.perform(get("/"+GestureApi.GESTURE_PATH, "unknown")).andExpect(status().isNotFound());
+
+        // when - scraping the metrics
+        String scrape = mockMvc.perform(get("/actuator/prometheus"))
+                               .andExpect(status().isOk())
+                               .andReturn().getResponse().getContentAsString();
+
+        // then - service timings, lookups, errors and the store size are published
+        then(scrape).contains("gestures_service_seconds_bucket{method=\"getGestureBody\"")
+                    .contains("gestures_service_seconds_count{method=\"upsertGesture\"")
+                    .contains("gestures_lookups_total{result=\"miss\"}")
+                    .contains("gestures_errors_total{exception=\"NotFoundException\",status=\"404\"}")
+                    .contains("gestures_store_size 1.0");
+    }
 }
@@ -1,16 +1,20 @@
 package info.ejava.examples.app.gesture;
 
+import java.util.Optional;
+
 import static org.assertj.core.api.BDDAssertions.and;
 import static org.assertj.core.api.BDDAssertions.catchThrowableOfType;
 import static org.assertj.core.api.BDDAssertions.then;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import org.mockito.BDDMockito;
 import static org.mockito.BDDMockito.given;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -115,6 +119,34 @@ public class GesturesMockMvcTest {
         then(response.getHeaders().getFirst(HttpHeaders.CONTENT_LOCATION)).isNull();
     }
 
+    @Test
+    public void get_unknown_gesture_body_without_exception(){
+        // given - a gesture does not exist
+        given(gestureService.getGestureVersion("unknown")).willReturn(0L);
+        given(gestureService.findGestureBody("unknown", null)).willReturn(Optional.empty());
+
+        // when - requesting it as a gesture body
+        ResponseEntity<?> response = gestureController.getGestureBody("unknown", null, new HttpHeaders());
+
+        // then - not found is returned without the service throwing
+        then(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        then(response.getBody().toString()).contains("unknown");
+        BDDMockito.then(gestureService).should(never()).getGestureBody(anyString(), any());
+    }
+
+    @Test
+    public void stackless_exception_formats_when_asked(){
+        // when - creating a stackless exception
+        NotFoundException ex = NotFoundException.stackless("gesture type [%s] not found", "unknown");
+
+        // then - no stack trace is captured and the message is still reported
+        then(ex.getStackTrace()).isEmpty();
+        then(ex.getMessage()).isEqualTo("gesture type [unknown] not found");
+        then(ex.toString()).endsWith(": gesture type [unknown] not found");
+        // and - the default form still captures where it was thrown
+        then(new NotFoundException("gesture type [%s] not found", "unknown").getStackTrace()).isNotEmpty();
+    }
+
     @Test
     public void get_gesture_without_target(){
         // given - when we have a known gesture present
@@ -0,0 +1,97 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import info.ejava.examples.app.svc.OffHeapGestureStore;
+
+/*
+ * This class is an example unit test of the off-heap store. A long run
+ * of random changes is applied to the store and to a HashMap, using small
+ * slabs and few segments so that index growth, deletion and compaction
+ * all happen many times, and the two are compared along the way.
+ */
+@DisplayName("Off-heap gesture store test")
+public class OffHeapGestureStoreTest {
+
+    private static Map<String, String> contents(OffHeapGestureStore store) {
+        Map<String, String> contents = new HashMap<>();
+        store.forEach(contents::put);
+        return contents;
+    }
+
+    @Test
+    public void matches_hash_map() {
+        // given - a store and the map it should behave like
+        OffHeapGestureStore store = new OffHeapGestureStore(2, 256, 0);
+        Map<String, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // when - applying the same random changes to both
+        for (int i=0; i<200_000; i++) {
+            String gestureType = "gesture-" + random.nextInt(2_000);
+            String gesture = "value-" + random.nextInt(1 << random.nextInt(16));
+            switch (random.nextInt(5)) {
+                case 0:
+                    then(store.remove(gestureType)).isEqualTo(expected.remove(gestureType));
+                    break;
+                case 1:
+                    then(store.putIfAbsent(gestureType, gesture)).isEqualTo(expected.putIfAbsent(gestureType, gesture));
+                    break;
+                case 2:
+                    String current = expected.get(gestureType);
+                    then(store.replace(gestureType, current == null ? "none" : current, gesture))
+                            .isEqualTo(current != null);
+                    if (current != null) {
+                        expected.put(gestureType, gesture);
+                    }
+                    break;
+                default:
+                    then(store.put(gestureType, gesture)).isEqualTo(expected.put(gestureType, gesture));
+            }
+            then(store.get(gestureType)).isEqualTo(expected.get(gestureType));
+            if (i % 20_000 == 0) {
+                then(contents(store)).isEqualTo(expected);
+            }
+        }
+
+        // then - both hold the same gestures
+        then(store.size()).isEqualTo(expected.size());
+        then(contents(store)).isEqualTo(expected);
+    }
+
+    @Test
+    public void stores_multi_byte_and_large_values() {
+        OffHeapGestureStore store = new OffHeapGestureStore(1, 64, 0);
+        String large = "x".repeat(1_000);
+
+        store.put("héllo", "bonjour ☺");
+        store.put("large", large);
+
+        then(store.get("héllo")).isEqualTo("bonjour ☺");
+        then(store.get("large")).isEqualTo(large);
+        then(store.replace("héllo", "bonjour ☺", "salut")).isTrue();
+        then(store.get("héllo")).isEqualTo("salut");
+    }
+
+    @Test
+    public void clear_removes_everything() {
+        OffHeapGestureStore store = new OffHeapGestureStore();
+        for (int i=0; i<1_000; i++) {
+            store.put("gesture-" + i, "value-" + i);
+        }
+
+        store.clear();
+
+        then(store.size()).isZero();
+        then(store.get("gesture-1")).isNull();
+        then(contents(store)).isEmpty();
+        then(store.put("gesture-1", "again")).isNull();
+    }
+}
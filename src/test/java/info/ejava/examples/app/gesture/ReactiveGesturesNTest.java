@@ -0,0 +1,183 @@
+package info.ejava.examples.app.gesture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import info.ejava.examples.app.api.GestureApi;
+import com.jayway.jsonpath.JsonPath;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * This class is an example of an integration test of the WebFlux form of
+ * the API. The application is started on Reactor Netty using the reactive
+ * profile and called over HTTP through a WebTestClient.
+ */
+@SpringBootTest(webEnvironment=SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"test", "reactive"})
+@Tag("springboot")
+@DisplayName("Reactive gestures integration test")
+@Slf4j
+public class ReactiveGesturesNTest {
+
+    @Autowired
+    private WebTestClient webClient;
+
+    @BeforeEach
+    public void setUp() {
+        webClient.delete().uri("/"+GestureApi.GESTURES_PATH)
+                 .exchange()
+                 .expectStatus().isNoContent();
+    }
+
+    private WebTestClient.ResponseSpec upsert(String gestureType, String gesture) {
+        return webClient.put().uri("/"+GestureApi.GESTURE_PATH, gestureType)
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .bodyValue(gesture)
+                        .exchange();
+    }
+
+    @Test
+    public void add_and_replace_gesture() {
+        // when - adding a new gesture
+        upsert("hello", "hi")
+        // then - it is created and nothing returned
+                .expectStatus().isCreated()
+                .expectHeader().exists(HttpHeaders.LOCATION)
+                .expectBody().isEmpty();
+
+        // when - replacing it
+        upsert("hello", "howdy")
+        // then - the previous value is returned
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("hi");
+    }
+
+    @Test
+    public void get_gesture_with_target() {
+        // given
+        upsert("hello", "howdy").expectStatus().isCreated();
+
+        // when - requesting a known gesture with a target
+        webClient.get().uri(uri -> uri.path("/"+GestureApi.GESTURE_PATH)
+                                      .queryParam(GestureApi.target, "jim")
+                                      .build("hello"))
+                 .accept(MediaType.TEXT_PLAIN)
+                 .exchange()
+        // then - the target is added to the gesture
+                 .expectStatus().isOk()
+                 .expectHeader().exists(HttpHeaders.CONTENT_LOCATION)
+                 .expectBody(String.class).isEqualTo("howdy, jim");
+    }
+
+    @Test
+    public void get_unknown_gesture() {
+        webClient.get().uri("/"+GestureApi.GESTURE_PATH, "unknown")
+                 .accept(MediaType.TEXT_PLAIN)
+                 .exchange()
+                 .expectStatus().isEqualTo(HttpStatus.NOT_FOUND)
+                 .expectBody(String.class).value(body -> body.contains("unknown"));
+    }
+
+    @Test
+    public void delete_known_gesture() {
+        // given
+        upsert("hello", "hi").expectStatus().isCreated();
+
+        // when - deleting it
+        webClient.delete().uri("/"+GestureApi.GESTURE_PATH, "hello")
+                 .exchange()
+                 .expectStatus().isNoContent();
+
+        // then - it is no longer found
+        webClient.get().uri("/"+GestureApi.GESTURE_PATH, "hello")
+                 .exchange()
+                 .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void conditional_get_and_replace() {
+        // given - a gesture and its ETag
+        upsert("hello", "hi").expectStatus().isCreated();
+        String eTag = webClient.get().uri("/"+GestureApi.GESTURE_PATH, "hello")
+                 .exchange()
+                 .expectStatus().isOk()
+                 .expectHeader().exists(HttpHeaders.LAST_MODIFIED)
+                 .returnResult(String.class).getResponseHeaders().getETag();
+
+        // when - polling with the ETag while the gesture is unchanged
+        webClient.get().uri("/"+GestureApi.GESTURE_PATH, "hello")
+                 .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                 .exchange()
+        // then - it is not sent again
+                 .expectStatus().isNotModified()
+                 .expectHeader().valueEquals(HttpHeaders.ETAG, eTag);
+
+        // when - replacing it at that ETag, then again at the same, now stale, ETag
+        webClient.put().uri("/"+GestureApi.GESTURE_PATH, "hello")
+                 .header(HttpHeaders.IF_MATCH, eTag)
+                 .contentType(MediaType.TEXT_PLAIN)
+                 .bodyValue("howdy")
+                 .exchange()
+                 .expectStatus().isNoContent();
+        webClient.put().uri("/"+GestureApi.GESTURE_PATH, "hello")
+                 .header(HttpHeaders.IF_MATCH, eTag)
+                 .contentType(MediaType.TEXT_PLAIN)
+                 .bodyValue("hey")
+                 .exchange()
+        // then - only the first is applied
+                 .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+        webClient.get().uri("/"+GestureApi.GESTURE_PATH, "hello")
+                 .exchange()
+                 .expectBody(String.class).isEqualTo("howdy");
+    }
+
+    @Test
+    public void follow_changes_as_server_sent_events() {
+        // given - the current position in the change feed
+        String page = webClient.get().uri(uri -> uri.path("/"+GestureApi.GESTURE_CHANGES_PATH)
+                                                    .queryParam(GestureApi.timeout, 0)
+                                                    .build())
+                 .accept(MediaType.APPLICATION_JSON)
+                 .exchange()
+                 .expectStatus().isOk()
+                 .expectBody(String.class).returnResult().getResponseBody();
+        long position = ((Number)JsonPath.read(page, "$.last")).longValue();
+
+        // when - gestures change and the feed is followed from that position
+        upsert("hello", "hi").expectStatus().isCreated();
+        webClient.delete().uri("/"+GestureApi.GESTURES_PATH).exchange().expectStatus().isNoContent();
+        List<ServerSentEvent<String>> events = webClient.get()
+                 .uri(uri -> uri.path("/"+GestureApi.GESTURE_CHANGES_PATH)
+                                .queryParam(GestureApi.after, position)
+                                .build())
+                 .accept(MediaType.TEXT_EVENT_STREAM)
+                 .exchange()
+                 .expectStatus().isOk()
+                 .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+                 .getResponseBody()
+                 .take(2)
+                 .collectList()
+                 .block(Duration.ofSeconds(10));
+
+        // then - each change arrives as an event named for its type, with its sequence as id
+        then(events).extracting(ServerSentEvent::event).containsExactly("UPSERTED", "CLEARED");
+        then(events.get(0).data()).contains("\"gestureType\":\"hello\"");
+        then(Long.parseLong(events.get(1).id())).isEqualTo(Long.parseLong(events.get(0).id()) + 1);
+    }
+}
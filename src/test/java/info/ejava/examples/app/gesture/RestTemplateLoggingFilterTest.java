@@ -0,0 +1,86 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import info.ejava.examples.app.common.web.RestTemplateLoggingFilter;
+
+/*
+ * This class is an example unit test of the client logging interceptor,
+ * with the exchanges it logs collected instead.
+ */
+@DisplayName("RestTemplate logging filter test")
+public class RestTemplateLoggingFilterTest {
+
+    private final List<String> written = new ArrayList<>();
+    private final RestTemplateLoggingFilter filter = new RestTemplateLoggingFilter(8) {
+        @Override
+        protected boolean isLogging() {
+            return true;
+        }
+        @Override
+        protected void write(String message) {
+            written.add(message);
+        }
+    };
+
+    private ClientHttpResponse exchange(String responseBody) throws Exception {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.PUT, URI.create("http://localhost/api/gestures/hello"));
+        return filter.intercept(request, "hi".getBytes(StandardCharsets.UTF_8),
+                (req, body) -> new MockClientHttpResponse(responseBody.getBytes(StandardCharsets.UTF_8), HttpStatus.OK));
+    }
+
+    @Test
+    public void caller_reads_whole_body_while_prefix_is_logged() throws Exception {
+        // given - a response longer than the logged prefix
+        String longBody = "0123456789abcdef";
+
+        // when - the caller reads it
+        String received;
+        try (ClientHttpResponse response = exchange(longBody)) {
+            received = StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+            // then - the exchange is logged once the body has been read
+            then(written).hasSize(1);
+        }
+
+        // then - the caller received the whole body
+        then(received).isEqualTo(longBody);
+        // and - the log holds the request and a bounded prefix of the response
+        then(written).hasSize(1);
+        then(written.get(0)).contains("PUT http://localhost/api/gestures/hello, returned 200")
+                            .contains("hi")
+                            .contains("01234567... (16 bytes)")
+                            .doesNotContain("89abcdef");
+    }
+
+    @Test
+    public void unread_body_is_left_for_the_caller() throws Exception {
+        // when - the response is closed without its body being read
+        exchange("howdy").close();
+
+        // then - it is logged without reading it
+        then(written).hasSize(1);
+        then(written.get(0)).contains("(body not read)");
+
+        // and - a body read after logging is not copied into the log
+        try (ClientHttpResponse response = exchange("howdy")) {
+            response.getBody().read();
+            then(written).hasSize(1);
+            then(StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8)).isEqualTo("owdy");
+        }
+        then(written.get(1)).contains("howdy");
+    }
+}
@@ -0,0 +1,109 @@
+package info.ejava.examples.app.gesture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import info.ejava.examples.app.svc.ConsistentHashRing;
+import info.ejava.examples.app.svc.ShardedGestureStore;
+
+/*
+ * This class is an example unit test of the sharded store and the hash
+ * ring that places gestureTypes in its shards.
+ */
+@DisplayName("Sharded gesture store test")
+public class ShardedGestureStoreTest {
+
+    private static Map<String, String> contents(ShardedGestureStore store) {
+        Map<String, String> contents = new HashMap<>();
+        store.forEach(contents::put);
+        return contents;
+    }
+
+    @Test
+    public void matches_hash_map() {
+        // given - a store and the map it should behave like
+        ShardedGestureStore store = new ShardedGestureStore(4, 16);
+        Map<String, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        // when - applying the same random changes to both
+        for (int i=0; i<50_000; i++) {
+            String gestureType = "gesture-" + random.nextInt(2_000);
+            String gesture = "value-" + random.nextInt(100);
+            switch (random.nextInt(4)) {
+                case 0:
+                    then(store.remove(gestureType)).isEqualTo(expected.remove(gestureType));
+                    break;
+                case 1:
+                    long version = store.getVersion(gestureType);
+                    then(store.replace(gestureType, version, gesture) != 0).isEqualTo(version != 0);
+                    if (version != 0) {
+                        expected.put(gestureType, gesture);
+                    }
+                    break;
+                default:
+                    then(store.put(gestureType, gesture)).isEqualTo(expected.put(gestureType, gesture));
+            }
+            then(store.get(gestureType)).isEqualTo(expected.get(gestureType));
+        }
+
+        // then - both hold the same gestures, whichever way they are read
+        then(store.size()).isEqualTo(expected.size());
+        then(contents(store)).isEqualTo(expected);
+        then(store.values()).containsExactlyInAnyOrderElementsOf(expected.values());
+    }
+
+    @Test
+    public void clear_swaps_every_shard() {
+        // given
+        ShardedGestureStore store = new ShardedGestureStore(8, 1024);
+        for (int i=0; i<1_000; i++) {
+            store.put("gesture-" + i, "value-" + i);
+        }
+
+        // when
+        store.clear();
+
+        // then
+        then(store.size()).isZero();
+        then(store.get("gesture-1")).isNull();
+        then(store.values()).isEmpty();
+        then(store.put("gesture-1", "again")).isNull();
+        then(store.values()).containsExactly("again");
+    }
+
+    @Test
+    public void ring_spreads_and_moves_few_gestureTypes() {
+        // given - rings before and after adding a node
+        ConsistentHashRing ring = new ConsistentHashRing(8, ShardedGestureStore.POINTS_PER_SHARD);
+        ConsistentHashRing grown = new ConsistentHashRing(9, ShardedGestureStore.POINTS_PER_SHARD);
+        int[] counts = new int[8];
+        int moved = 0;
+        int gestureTypes = 100_000;
+
+        // when - placing gestureTypes on both
+        for (int i=0; i<gestureTypes; i++) {
+            String gestureType = "gesture-" + i;
+            int node = ring.nodeOf(gestureType);
+            int grownNode = grown.nodeOf(gestureType);
+            counts[node] += 1;
+            if (grownNode != node) {
+                // then - only to the new node
+                then(grownNode).isEqualTo(8);
+                moved += 1;
+            }
+        }
+
+        // then - each node holds near its share, and about 1/9 moved
+        for (int count: counts) {
+            then(count).isBetween(gestureTypes / 8 * 3 / 4, gestureTypes / 8 * 5 / 4);
+        }
+        then(moved).isBetween(gestureTypes / 9 / 2, gestureTypes / 9 * 3 / 2);
+    }
+}